@@ -25,6 +25,11 @@ public class D2HtmlPreviewRenderer implements HtmlPreviewRenderer {
    public void dispose() {
    }
 
+   @Override
+   public String getSettingsFingerprint() {
+      return PluginPreferences.getD2NativeExe();
+   }
+
    @Override
    public void renderToHtml(final ContentSource source, final Appendable out) throws IOException {
 
@@ -15,6 +15,8 @@
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.d2.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
 import de.sebthom.eclipse.previewer.util.StringUtils;
 import net.sf.jstuff.core.SystemUtils;
 import net.sf.jstuff.core.io.Processes;
@@ -41,6 +43,9 @@ public boolean isAvailable() {
    public void d2ToHTML(final ContentSource source, final Appendable out) throws IOException {
       final var exe = PluginPreferences.getD2NativeExe();
 
+      final var event = new RenderEvents.ExternalProcess();
+      event.begin();
+      final long startedAt = System.currentTimeMillis();
       final var sb = new StringBuilder();
       final var proc = Processes.builder(exe).withArgs("--bundle", "--no-xml-tag", "-") //
          .withRedirectOutput(sb) //
@@ -49,7 +54,7 @@ public void d2ToHTML(final ContentSource source, final Appendable out) throws IO
 
       try (var raw = source.contentAsInputStream();
            var dotStdIn = proc.getStdIn()) {
-         IOUtils.copy(raw, dotStdIn);
+         event.inputBytes = IOUtils.copyLarge(raw, dotStdIn);
       }
 
       try {
@@ -59,6 +64,13 @@ public void d2ToHTML(final ContentSource source, final Appendable out) throws IO
          throw new IOException(ex);
       } finally {
          proc.terminate();
+         RenderMetrics.recordExternalProcess(exe, System.currentTimeMillis() - startedAt);
+         event.end();
+         if (event.shouldCommit()) {
+            event.command = exe;
+            event.outputChars = sb.length();
+            event.commit();
+         }
       }
 
       out.append(StringUtils.htmlSvgWithHoverDownloadButton("<svg width='100%'" + sb.substring(sb.indexOf(" viewBox"), sb.length())));
@@ -27,6 +27,11 @@ public class GraphvizHtmlPreviewRenderer implements HtmlPreviewRenderer {
    public void dispose() {
    }
 
+   @Override
+   public String getSettingsFingerprint() {
+      return GraphvizRendering.getSettingsFingerprint();
+   }
+
    @Override
    public void renderToHtml(final ContentSource source, final Appendable out) throws IOException {
 
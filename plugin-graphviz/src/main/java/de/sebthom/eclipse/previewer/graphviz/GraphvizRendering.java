@@ -19,6 +19,7 @@
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.graphviz.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.graphviz.renderer.GraphvizEmbeddedRenderer;
 
 /**
  * Renders DOT source through the configured Graphviz renderer.
@@ -77,6 +78,21 @@ public Path path() {
       }
    }
 
+   /**
+    * @return a fingerprint of the settings affecting the output of {@link #renderToHtmlFragment(String, ContentSource)}
+    */
+   public static String getSettingsFingerprint() {
+      return PluginPreferences.getGraphvizRenderer().getClass().getSimpleName() + ":" + PluginPreferences.getGraphvizNativeExe();
+   }
+
+   /**
+    * @return true if {@link #renderToHtmlFragment(String, ContentSource)} only embeds the DOT source, which is laid out by
+    *         the browser, i.e. the fragment contains element IDs unique to the current session
+    */
+   public static boolean isLaidOutByBrowser() {
+      return PluginPreferences.getGraphvizRenderer() == GraphvizEmbeddedRenderer.INSTANCE;
+   }
+
    public static String renderToHtmlFragment(final String dotSource, final ContentSource source) throws IOException {
       final var html = new StringBuilder();
       renderToHtmlFragment(dotSource, source, html);
@@ -6,9 +6,8 @@
  */
 package de.sebthom.eclipse.previewer.graphviz.renderer;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.concurrent.atomic.AtomicLong;
@@ -16,6 +15,7 @@
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.graphviz.Constants;
 import de.sebthom.eclipse.previewer.graphviz.Plugin;
+import de.sebthom.eclipse.previewer.util.AssetStore;
 
 /**
  * @author Sebastian Thomschke
@@ -26,22 +26,13 @@ public enum GraphvizEmbeddedRenderer implements GraphvizRenderer {
 
    private static final AtomicLong PLACEHOLDER_IDS = new AtomicLong();
 
-   private final File vizJS;
-
-   GraphvizEmbeddedRenderer() {
-      try {
-         vizJS = Plugin.resources().extract(Constants.VIZ_JS);
-      } catch (final IOException ex) {
-         throw new UncheckedIOException(ex);
-      }
-   }
-
    @Override
    public void dotToHTML(final ContentSource source, final Appendable out) throws IOException {
       final String id = "previewer_graphviz_" + PLACEHOLDER_IDS.incrementAndGet();
       final String buttonId = id + "_download";
       final String innerId = id + "_inner";
       final String unsupportedId = id + "_unsupported";
+      final URI vizJS = AssetStore.getUri(Plugin.get().getBundle(), Constants.VIZ_JS);
       final String encodedDot = Base64.getEncoder().encodeToString(source.contentAsString().getBytes(StandardCharsets.UTF_8));
 
       out.append("""
@@ -149,7 +140,7 @@ public void dotToHTML(final ContentSource source, final Appendable out) throws I
            }
          })();
          </script>
-         """.replace("${VIZ_JS}", vizJS.toURI().toString()) //
+         """.replace("${VIZ_JS}", vizJS.toString()) //
          .replace("${ID}", id) //
          .replace("${BUTTON_ID}", buttonId) //
          .replace("${INNER_ID}", innerId) //
@@ -15,6 +15,8 @@
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.graphviz.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
 import de.sebthom.eclipse.previewer.util.StringUtils;
 import net.sf.jstuff.core.SystemUtils;
 import net.sf.jstuff.core.io.Processes;
@@ -43,6 +45,9 @@ public boolean isAvailable() {
    public void dotToHTML(final ContentSource source, final Appendable out) throws IOException {
       final var exe = PluginPreferences.getGraphvizNativeExe();
 
+      final var event = new RenderEvents.ExternalProcess();
+      event.begin();
+      final long startedAt = System.currentTimeMillis();
       final var sb = new StringBuilder();
       final var proc = Processes.builder(exe).withArg("-Tsvg") //
          .withRedirectOutput(sb) //
@@ -51,7 +56,7 @@ public void dotToHTML(final ContentSource source, final Appendable out) throws I
 
       try (var raw = source.contentAsInputStream();
            var dotStdIn = proc.getStdIn()) {
-         IOUtils.copy(raw, dotStdIn);
+         event.inputBytes = IOUtils.copyLarge(raw, dotStdIn);
       }
 
       try {
@@ -61,6 +66,13 @@ public void dotToHTML(final ContentSource source, final Appendable out) throws I
          throw new IOException(ex);
       } finally {
          proc.terminate();
+         RenderMetrics.recordExternalProcess(exe, System.currentTimeMillis() - startedAt);
+         event.end();
+         if (event.shouldCommit()) {
+            event.command = exe;
+            event.outputChars = sb.length();
+            event.commit();
+         }
       }
 
       final String svg = sb.toString();
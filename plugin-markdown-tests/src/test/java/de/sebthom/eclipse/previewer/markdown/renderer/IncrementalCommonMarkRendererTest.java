@@ -0,0 +1,237 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.markdown.renderer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.commonmark.Extension;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Applies edit scripts to Markdown documents and compares the incremental render after every edit with a full render.
+ *
+ * @author Sebastian Thomschke
+ */
+class IncrementalCommonMarkRendererTest {
+
+   /**
+    * An edit applied to the first occurrence of {@link #anchor} in the document, either at once or character by character
+    * as if typed.
+    */
+   private record Edit(Kind kind, String anchor, String text) {
+
+      enum Kind {
+         /** replaces the anchor with the text */
+         REPLACE,
+         /** types the text after the anchor */
+         TYPE,
+         /** erases the anchor with backspace */
+         ERASE
+      }
+   }
+
+   private static final Path DOCUMENT = Path.of("test.md");
+   private static final List<Extension> EXTENSIONS = CommonMarkRenderer.createExtensions();
+
+   private static Edit replace(final String anchor, final String replacement) {
+      return new Edit(Edit.Kind.REPLACE, anchor, replacement);
+   }
+
+   private static Edit type(final String anchor, final String typed) {
+      return new Edit(Edit.Kind.TYPE, anchor, typed);
+   }
+
+   private static Edit erase(final String anchor) {
+      return new Edit(Edit.Kind.ERASE, anchor, "");
+   }
+
+   private final Parser parser = Parser.builder().extensions(EXTENSIONS).build();
+   private final HtmlRenderer renderer = HtmlRenderer.builder().extensions(EXTENSIONS).build();
+
+   private void assertRendersLikeFullRender(final IncrementalCommonMarkRenderer incremental, final String text) throws IOException {
+      final var html = new StringBuilder();
+      incremental.render(DOCUMENT, text, html);
+      assertFalse(incremental.isDisabled(), () -> "Incremental render differs from full render of:\n" + text);
+      assertEquals(renderer.render(parser.parse(text)), html.toString(), () -> "Render differs for:\n" + text);
+   }
+
+   /**
+    * Renders the given document and then the document after each edit, and after each typed or erased character.
+    */
+   private void assertEditScript(final String document, final Edit... edits) throws IOException {
+      final var incremental = new IncrementalCommonMarkRenderer(EXTENSIONS, 1);
+      var text = document;
+      assertRendersLikeFullRender(incremental, text);
+
+      for (final Edit edit : edits) {
+         final int anchorOffset = text.indexOf(edit.anchor);
+         assertTrue(anchorOffset > -1, () -> "Anchor [" + edit.anchor + "] not found in:\n" + document);
+         switch (edit.kind) {
+            case REPLACE -> {
+               text = text.substring(0, anchorOffset) + edit.text + text.substring(anchorOffset + edit.anchor.length());
+               assertRendersLikeFullRender(incremental, text);
+            }
+            case TYPE -> {
+               final int insertOffset = anchorOffset + edit.anchor.length();
+               for (int i = 0; i < edit.text.length(); i++) {
+                  text = text.substring(0, insertOffset + i) + edit.text.charAt(i) + text.substring(insertOffset + i);
+                  assertRendersLikeFullRender(incremental, text);
+               }
+            }
+            case ERASE -> {
+               for (int i = edit.anchor.length() - 1; i >= 0; i--) {
+                  text = text.substring(0, anchorOffset + i) + text.substring(anchorOffset + i + 1);
+                  assertRendersLikeFullRender(incremental, text);
+               }
+            }
+         }
+      }
+   }
+
+   @Test
+   void testBlockQuotes() throws IOException {
+      assertEditScript("""
+         # Quotes
+
+         > quoted
+         > text
+
+         lazy
+
+         end
+         """, //
+         replace("> text\n\n", "> text\n"), // lazy continuation line
+         type("lazy\n", "> "), //
+         erase("> quoted\n"), //
+         type("# Quotes\n\n", "> new\n"));
+   }
+
+   @Test
+   void testFencedCodeBlocks() throws IOException {
+      assertEditScript("""
+         # Fences
+
+         text
+
+         ```java
+         int a;
+         ```
+
+         more text
+
+         ## After
+
+         last
+         """, //
+         type("text\n\n", "```\n"), // unclosed fence swallowing the following blocks
+         erase("```\n"), //
+         replace("int a;\n```\n", "int a;\n"), //
+         replace("int a;\n", "int a;\n```\n"), //
+         type("more text\n", "~~~\n"), //
+         type("~~~\n", "~~~\n"));
+   }
+
+   @Test
+   void testFrontMatter() throws IOException {
+      assertEditScript("""
+         # Doc
+
+         intro
+
+         ---
+         title: x
+         ---
+
+         body
+         """, //
+         replace("title: x\n", "title: y\n"), // the thematic break preceding the change must not become front matter
+         type("title: y\n", "tags: a\n"), //
+         type("body\n", "more\n"), //
+         replace("# Doc\n", "---\nlayout: post\n---\n# Doc\n"), // front matter at the start of the document
+         type("layout: post\n", "draft: true\n"), //
+         erase("---\nlayout: post\n"), //
+         type("intro\n", "\n---\n"));
+   }
+
+   @Test
+   void testHtmlBlocks() throws IOException {
+      assertEditScript("""
+         # HTML
+
+         <div>
+         content
+         </div>
+
+         text
+
+         <!-- note -->
+
+         end
+         """, //
+         replace("</div>\n", ""), //
+         replace("content\n", "content\n</div>\n"), //
+         type("<div>\ncontent\n", "\n"), // blank line ending the HTML block
+         type("text\n\n", "<div>\n"), //
+         replace("<!-- note -->", "<!-- note"), // unclosed comment swallowing the following blocks
+         type("<!-- note", " -->"), //
+         replace("text\n", "<pre>\ntext\n"), // unclosed pre swallowing the following blocks
+         type("<pre>\ntext\n", "</pre>\n"));
+   }
+
+   @Test
+   void testLists() throws IOException {
+      assertEditScript("""
+         # Lists
+
+         intro
+
+         - one
+         - two
+
+         para
+
+         1. first
+         2. second
+
+         end
+         """, //
+         type("- two\n", "- three\n"), //
+         replace("- two\n", "- two\n\n"), // tight list becoming loose
+         replace("intro\n", "intro\n- joined\n"), // list interrupting a paragraph
+         replace("\npara\n", "\n  para\n"), // paragraph becoming part of the last list item
+         erase("1. first\n"), //
+         type("2. second\n", "3. third\n"), //
+         replace("- one\n", "* one\n"));
+   }
+
+   @Test
+   void testSetextHeadings() throws IOException {
+      assertEditScript("""
+         # Setext
+
+         Title
+
+         body
+
+         ---
+
+         tail
+         """, //
+         type("Title\n", "===\n"), //
+         erase("===\n"), //
+         replace("body\n\n---", "body\n---"), // thematic break becoming a setext underline
+         type("tail\n", "-\n"), //
+         replace("body\n---", "body\n\n---"), //
+         type("# Setext\n\n", "Sub\n"));
+   }
+}
@@ -6,20 +6,24 @@
  */
 package de.sebthom.eclipse.previewer.markdown;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
 
 import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.ui.texteditor.AbstractDecoratedTextEditorPreferenceConstants;
 
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer;
+import de.sebthom.eclipse.previewer.graphviz.GraphvizRendering;
 import de.sebthom.eclipse.previewer.markdown.prefs.PluginPreferences;
 import de.sebthom.eclipse.previewer.markdown.preprocessor.MarkdownDiagramPreprocessor;
 import de.sebthom.eclipse.previewer.markdown.preprocessor.MarkdownPreprocessingResult;
 import de.sebthom.eclipse.previewer.markdown.renderer.CommonMarkRenderer;
 import de.sebthom.eclipse.previewer.markdown.renderer.GitHubMarkdownRenderer;
+import de.sebthom.eclipse.previewer.plantuml.PlantUmlRendering;
+import de.sebthom.eclipse.previewer.util.AssetStore;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
 import de.sebthom.eclipse.previewer.util.StringUtils;
 
@@ -28,21 +32,25 @@
  */
 public class MarkdownHtmlPreviewRenderer implements HtmlPreviewRenderer {
 
-   private File cssDark;
-   private File cssLight;
-   private File mermaidJS;
-
    private static final String MERMAID_INIT_SCRIPT = """
       <script>
       (function(){
-        try {
+        function querySelectorAllIncludingRoot(root, selector) {
+          const nodes = Array.from(root.querySelectorAll(selector));
+          if (root.matches && root.matches(selector)) nodes.push(root);
+          return nodes;
+        }
+
+        function renderMermaidBlocks(root) {
           // Collect potential mermaid blocks from both CommonMark and GitHub API output
           const targets = new Set();
-          document.querySelectorAll('pre > code.language-mermaid, pre.language-mermaid > code, code.language-mermaid, pre.language-mermaid')
+          querySelectorAllIncludingRoot(root,
+              'pre > code.language-mermaid, pre.language-mermaid > code, code.language-mermaid, pre.language-mermaid')
             .forEach(n => targets.add(n.closest('pre') || n));
-          document.querySelectorAll("[class*='source-mermaid']")
+          querySelectorAllIncludingRoot(root, "[class*='source-mermaid']")
             .forEach(n => targets.add(n.closest('div.highlight, figure.highlight, pre') || n));
 
+          const diagrams = [];
           targets.forEach(function(container){
             const pre = container.matches('pre')
                           ? container
@@ -53,32 +61,81 @@ public class MarkdownHtmlPreviewRenderer implements HtmlPreviewRenderer {
             div.textContent = txt.trim();
             container.parentNode.insertBefore(div, container);
             container.parentNode.removeChild(container);
+            diagrams.push(div);
           });
 
-          if (document.querySelector('.mermaid')) {
-              mermaid.initialize({ startOnLoad: false, theme: '$$THEME$$' });
-              mermaid.run({ querySelector: '.mermaid' }).catch(function(err) {
-                 if (typeof console !== 'undefined' && console.error) console.error(err);
-              });
-             }
-           } catch (e) {
-             if (typeof console !== 'undefined' && console.error) console.error(e);
-           }
-         })();
-         </script>
-         """;
-
-   public MarkdownHtmlPreviewRenderer() throws IOException {
-      cssDark = Plugin.resources().extract(Constants.MARKDOWN_CSS_DARK);
-      cssLight = Plugin.resources().extract(Constants.MARKDOWN_CSS_LIGHT);
-      mermaidJS = de.sebthom.eclipse.previewer.mermaid.Plugin.resources().extract(
-         de.sebthom.eclipse.previewer.mermaid.Constants.MERMAID_JS);
-   }
+          if (diagrams.length > 0) {
+            mermaid.run({ nodes: diagrams }).catch(function(err) {
+              if (typeof console !== 'undefined' && console.error) console.error(err);
+            });
+          }
+        }
+
+        try {
+          mermaid.initialize({ startOnLoad: false, theme: '$$THEME$$' });
+          renderMermaidBlocks(document);
+
+          // render diagrams of blocks hot-swapped into the displayed page by the previewer
+          document.addEventListener('previewer:patched', function(event) {
+            event.detail.nodes.forEach(function(node) {
+              try {
+                renderMermaidBlocks(node);
+              } catch (e) {
+                if (typeof console !== 'undefined' && console.error) console.error(e);
+              }
+            });
+          });
+        } catch (e) {
+          if (typeof console !== 'undefined' && console.error) console.error(e);
+        }
+      })();
+      </script>
+      """;
 
    @Override
    public void dispose() {
    }
 
+   /**
+    * Rendering via the GitHub Markdown API is bounded by the network, rendering via CommonMark including the embedded
+    * diagrams happens in the JVM.
+    */
+   @Override
+   public @Nullable String getCostClass() {
+      return PluginPreferences.getMarkdownRenderer() instanceof GitHubMarkdownRenderer ? "network" : "in-process";
+   }
+
+   @Override
+   public String getSettingsFingerprint() {
+      final var fingerprint = new StringBuilder();
+      fingerprint.append(MiscUtils.isDarkEclipseTheme() ? "dark" : "light");
+      fingerprint.append(':').append(getPreferredTabSize());
+
+      final var renderer = PluginPreferences.getMarkdownRenderer();
+      fingerprint.append(':').append(renderer.getClass().getSimpleName());
+      if (renderer instanceof GitHubMarkdownRenderer) {
+         fingerprint.append(':').append(PluginPreferences.getGithubApiUrl());
+         fingerprint.append(':').append(PluginPreferences.getGithubApiMarkdownRenderMode());
+         fingerprint.append(':').append(PluginPreferences.isGithubApiFallbackToCommonMark());
+      }
+
+      fingerprint.append(":mermaid=").append(PluginPreferences.isRenderMermaidDiagrams());
+      if (PluginPreferences.isRenderPlantUmlAndGraphvizDiagrams()) {
+         fingerprint.append(":graphviz=").append(GraphvizRendering.getSettingsFingerprint());
+         fingerprint.append(":plantuml=").append(PlantUmlRendering.getSettingsFingerprint());
+      }
+      return fingerprint.toString();
+   }
+
+   /**
+    * The CommonMark renderer writes the HTML while traversing the document. Only if diagrams are embedded the HTML body is
+    * buffered to replace their placeholders.
+    */
+   @Override
+   public boolean isProgressive() {
+      return true;
+   }
+
    private int getPreferredTabSize() {
       return InstanceScope.INSTANCE.getNode("org.eclipse.ui.editors") //
          .getInt(AbstractDecoratedTextEditorPreferenceConstants.EDITOR_TAB_WIDTH, 4);
@@ -86,27 +143,52 @@ private int getPreferredTabSize() {
 
    @Override
    public void renderToHtml(final ContentSource source, final Appendable out) throws IOException {
+      renderToHtml(source, out, new CancellationToken());
+   }
+
+   @Override
+   public void renderToHtml(final ContentSource source, final Appendable out, final CancellationToken cancellation) throws IOException {
       var renderer = PluginPreferences.getMarkdownRenderer();
       final var preprocessedMarkdown = PluginPreferences.isRenderPlantUmlAndGraphvizDiagrams() //
-            ? MarkdownDiagramPreprocessor.preprocess(source)
+            ? MarkdownDiagramPreprocessor.preprocess(source, cancellation)
             : MarkdownPreprocessingResult.unchanged(source);
+      cancellation.throwIfCancelled();
 
-      final var htmlBody = new StringBuilder();
+      final var useDarkTheme = MiscUtils.isDarkEclipseTheme();
+      out.append("<!DOCTYPE html>"); // https://github.com/sindresorhus/github-markdown-css#troubleshooting
+      out.append("<html>");
+      out.append("<head>");
+      out.append("<meta http-equiv='Content-Type' content='text/html; charset=UTF-8'>");
+      out.append("<link rel='stylesheet' href='" + AssetStore.getUri(Plugin.get().getBundle(), useDarkTheme
+            ? Constants.MARKDOWN_CSS_DARK
+            : Constants.MARKDOWN_CSS_LIGHT) + "'>");
+      out.append("<style>* { tab-size: " + getPreferredTabSize() + " !important}</style>");
+      if (PluginPreferences.isRenderMermaidDiagrams()) {
+         out.append("<script src='" + AssetStore.getUri(de.sebthom.eclipse.previewer.mermaid.Plugin.get().getBundle(),
+            de.sebthom.eclipse.previewer.mermaid.Constants.MERMAID_JS) + "'></script>");
+      }
+      out.append("</head>");
+      out.append("<body class='markdown-body' style='padding:5px'>\n\n");
+
+      // the rendered HTML is only buffered if placeholders of the preprocessor must be replaced
+      final Appendable htmlBody = preprocessedMarkdown.htmlReplacements().isEmpty() ? out : new StringBuilder();
 
       boolean isCommonMarkFallback = false;
       try {
          renderer.markdownToHTML(preprocessedMarkdown.source(), htmlBody);
       } catch (final ConnectException ex) {
+         // the GitHub renderer only writes output after a successful response, so nothing was written yet
          if (renderer instanceof GitHubMarkdownRenderer && PluginPreferences.isGithubApiFallbackToCommonMark()) {
             Plugin.log().debug(ex);
-            htmlBody.setLength(0);
             renderer = CommonMarkRenderer.INSTANCE;
             renderer.markdownToHTML(preprocessedMarkdown.source(), htmlBody);
             isCommonMarkFallback = true;
          } else
             throw ex;
       }
-      preprocessedMarkdown.applyHtmlReplacements(htmlBody);
+      if (htmlBody instanceof final StringBuilder bufferedHtmlBody) {
+         preprocessedMarkdown.applyHtmlReplacements(bufferedHtmlBody, out);
+      }
 
       final var rendererName = isCommonMarkFallback //
             ? "CommonMark, GitHub Markdown API unavailable"
@@ -116,19 +198,6 @@ public void renderToHtml(final ContentSource source, final Appendable out) throw
                         ? "GitHub Markdown API"
                         : renderer.getClass().getSimpleName();
 
-      final var useDarkTheme = MiscUtils.isDarkEclipseTheme();
-      out.append("<!DOCTYPE html>"); // https://github.com/sindresorhus/github-markdown-css#troubleshooting
-      out.append("<html>");
-      out.append("<head>");
-      out.append("<meta http-equiv='Content-Type' content='text/html; charset=UTF-8'>");
-      out.append("<link rel='stylesheet' href='" + (useDarkTheme ? cssDark : cssLight).toURI() + "'>");
-      out.append("<style>* { tab-size: " + getPreferredTabSize() + " !important}</style>");
-      if (PluginPreferences.isRenderMermaidDiagrams()) {
-         out.append("<script src='" + mermaidJS.toURI() + "'></script>");
-      }
-      out.append("</head>");
-      out.append("<body class='markdown-body' style='padding:5px'>\n\n");
-      out.append(htmlBody);
       if (PluginPreferences.isRenderMermaidDiagrams()) {
          out.append(MERMAID_INIT_SCRIPT.replace("$$THEME$$", useDarkTheme ? "dark" : "default"));
       }
@@ -16,6 +16,7 @@
 import de.sebthom.eclipse.commons.BundleResources;
 import de.sebthom.eclipse.commons.logging.PluginLogger;
 import de.sebthom.eclipse.commons.logging.StatusFactory;
+import de.sebthom.eclipse.previewer.util.AssetStore;
 import net.sf.jstuff.core.reflection.Fields;
 
 /**
@@ -78,6 +79,7 @@ protected void initializeImageRegistry(final ImageRegistry registry) {
    public void start(final BundleContext context) throws Exception {
       super.start(context);
       instance = this;
+      AssetStore.prefetch(context.getBundle(), Constants.MARKDOWN_CSS_DARK, Constants.MARKDOWN_CSS_LIGHT);
    }
 
    @Override
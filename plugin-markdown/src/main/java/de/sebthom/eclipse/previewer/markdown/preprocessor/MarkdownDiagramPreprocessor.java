@@ -17,6 +17,7 @@
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -32,13 +33,21 @@
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.api.ContentSource;
+import de.sebthom.eclipse.previewer.cache.RenderCaches;
+import de.sebthom.eclipse.previewer.cache.RenderFragmentCache;
 import de.sebthom.eclipse.previewer.graphviz.GraphvizRendering;
 import de.sebthom.eclipse.previewer.markdown.Plugin;
 import de.sebthom.eclipse.previewer.plantuml.PlantUmlRendering;
+import de.sebthom.eclipse.previewer.util.ContentFingerprints;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
 
 /**
  * Replaces supported diagram fenced code blocks in Markdown with rendered HTML placeholders.
+ * <p>
+ * Rendered diagrams are cached by diagram type, renderer version and settings and the hash of the fenced source, so
+ * editing the text of a document does not lay out its diagrams again and documents embedding the same diagram share it.
  *
  * @author Sebastian Thomschke
  */
@@ -49,12 +58,32 @@ private record Candidate(int start, int end, @NonNull String indentation, @NonNu
 
    private enum DiagramType {
       GRAPHVIZ(Set.of("dot", "graphviz")) {
+         @Override
+         @Nullable
+         String getCacheKeyPrefix(final String source) {
+            // the embedded renderer only emits a script laying out the diagram, with element IDs unique to the session
+            if (GraphvizRendering.isLaidOutByBrowser())
+               return null;
+            return name() + "|" + de.sebthom.eclipse.previewer.graphviz.Plugin.get().getBundle().getVersion() + "|"
+                  + GraphvizRendering.getSettingsFingerprint();
+         }
+
          @Override
          String render(final String source, final ContentSource context) throws IOException {
             return GraphvizRendering.renderToHtmlFragment(source, context);
          }
       },
       PLANTUML(Set.of("plantuml", "puml", "iuml", "pu")) {
+         @Override
+         @Nullable
+         String getCacheKeyPrefix(final String source) {
+            // the content of included files is not part of the cache key
+            if (source.contains("!include") || source.contains("!import"))
+               return null;
+            return name() + "|" + de.sebthom.eclipse.previewer.plantuml.Plugin.get().getBundle().getVersion() + "|"
+                  + PlantUmlRendering.getSettingsFingerprint();
+         }
+
          @Override
          String render(final String source, final ContentSource context) throws IOException {
             return PlantUmlRendering.renderToHtmlFragment(fencedSourceToPlantUmlSource(source));
@@ -83,6 +112,12 @@ String render(final String source, final ContentSource context) throws IOExcepti
          return null;
       }
 
+      /**
+       * @return the prefix of the fragment cache key of the given diagram source covering everything but the source, or
+       *         {@code null} if the rendered diagram must not be cached
+       */
+      abstract @Nullable String getCacheKeyPrefix(String source);
+
       abstract String render(String source, ContentSource context) throws IOException;
    }
 
@@ -141,6 +176,7 @@ private record SourceRange(int start, int end) {
 
    private static final String PLACEHOLDER_PREFIX = "PREVIEWER_DIAGRAM_BLOCK_";
    private static final Parser SOURCE_SPAN_PARSER = asNonNull(Parser.builder().includeSourceSpans(IncludeSourceSpans.BLOCKS).build());
+   private static final RenderFragmentCache FRAGMENT_CACHE = RenderCaches.getFragmentCache("markdown-diagrams");
 
    private static List<Candidate> collectCandidates(final String markdown) {
       final var candidates = new ArrayList<Candidate>();
@@ -237,33 +273,68 @@ private static int nextLineStart(final String text, final int lineEnd) {
       return lineEnd + 1;
    }
 
-   public static MarkdownPreprocessingResult preprocess(final ContentSource source) throws IOException {
-      final String markdown = source.contentAsString();
-      final List<Candidate> candidates = collectCandidates(markdown);
-      if (candidates.isEmpty())
-         return MarkdownPreprocessingResult.unchanged(source);
-
-      final var placeholders = new LinkedHashMap<String, String>();
-      final var processedMarkdown = new StringBuilder(markdown);
-      candidates.sort(Comparator.comparingInt(Candidate::start).reversed());
-
-      for (int idx = 0; idx < candidates.size(); idx++) {
-         final Candidate candidate = candidates.get(idx);
-         try {
-            final String replacementHtml = candidate.type.render(candidate.source, source);
-            final String placeholder = PLACEHOLDER_PREFIX + idx + "_" + candidate.type.name().toLowerCase(Locale.ROOT) + "_" + Integer
-               .toUnsignedString(candidate.source.hashCode(), 36);
-            placeholders.put(placeholder, replacementHtml);
-            processedMarkdown.replace(candidate.start, candidate.end, candidate.indentation + placeholder);
-         } catch (final IOException | RuntimeException ex) {
-            Plugin.log().debug(ex);
+   /**
+    * @param cancellation checked before each diagram is rendered
+    * @throws java.util.concurrent.CancellationException if the render was cancelled
+    */
+   public static MarkdownPreprocessingResult preprocess(final ContentSource source, final CancellationToken cancellation)
+         throws IOException {
+      final var event = new RenderEvents.DiagramPreprocessing();
+      event.begin();
+      try {
+         final String markdown = source.contentAsString();
+         event.chars = markdown.length();
+         final List<Candidate> candidates = collectCandidates(markdown);
+         if (candidates.isEmpty())
+            return MarkdownPreprocessingResult.unchanged(source);
+
+         final var placeholders = new LinkedHashMap<String, String>();
+         final var processedMarkdown = new StringBuilder(markdown);
+         candidates.sort(Comparator.comparingInt(Candidate::start).reversed());
+         final var cacheKeys = new HashSet<String>();
+
+         for (int idx = 0; idx < candidates.size(); idx++) {
+            final Candidate candidate = candidates.get(idx);
+            cancellation.throwIfCancelled();
+            try {
+               final String replacementHtml = renderDiagram(candidate, source, cacheKeys);
+               final String placeholder = PLACEHOLDER_PREFIX + idx + "_" + candidate.type.name().toLowerCase(Locale.ROOT) + "_" + Integer
+                  .toUnsignedString(candidate.source.hashCode(), 36);
+               placeholders.put(placeholder, replacementHtml);
+               processedMarkdown.replace(candidate.start, candidate.end, candidate.indentation + placeholder);
+            } catch (final IOException | RuntimeException ex) {
+               Plugin.log().debug(ex);
+            }
          }
-      }
 
-      if (placeholders.isEmpty())
-         return MarkdownPreprocessingResult.unchanged(source);
+         event.diagrams = placeholders.size();
+         if (placeholders.isEmpty())
+            return MarkdownPreprocessingResult.unchanged(source);
+
+         return new MarkdownPreprocessingResult(new PreprocessedContentSource(source, processedMarkdown.toString()), placeholders);
+      } finally {
+         event.end();
+         if (event.shouldCommit()) {
+            event.path = source.path().toString();
+            event.commit();
+         }
+      }
+   }
 
-      return new MarkdownPreprocessingResult(new PreprocessedContentSource(source, processedMarkdown.toString()), placeholders);
+   /**
+    * @param cacheKeys the keys of the diagrams of the document rendered so far. A diagram repeated within the document is
+    *           not taken from the cache, since its rendered HTML contains element IDs that must be unique.
+    */
+   private static String renderDiagram(final Candidate candidate, final ContentSource context, final Set<String> cacheKeys)
+         throws IOException {
+      final String cacheKeyPrefix = candidate.type.getCacheKeyPrefix(candidate.source);
+      if (cacheKeyPrefix == null)
+         return candidate.type.render(candidate.source, context);
+
+      final String cacheKey = cacheKeyPrefix + "|" + ContentFingerprints.of(candidate.source);
+      if (!cacheKeys.add(cacheKey))
+         return candidate.type.render(candidate.source, context);
+      return FRAGMENT_CACHE.computeIfAbsent(cacheKey, () -> candidate.type.render(candidate.source, context));
    }
 
    private static int skipUpToThreeLeadingSpaces(final String line) {
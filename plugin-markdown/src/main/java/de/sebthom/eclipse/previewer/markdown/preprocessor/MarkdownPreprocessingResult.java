@@ -6,9 +6,10 @@
  */
 package de.sebthom.eclipse.previewer.markdown.preprocessor;
 
+import java.io.IOException;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNull;
 
@@ -25,20 +26,29 @@ public static MarkdownPreprocessingResult unchanged(final ContentSource source)
       return new MarkdownPreprocessingResult(source, Map.of());
    }
 
-   public void applyHtmlReplacements(final StringBuilder html) {
-      if (htmlReplacements.isEmpty())
+   /**
+    * Writes the given rendered HTML to {@code out} with all placeholders replaced. A placeholder that is the only content
+    * of a paragraph replaces the whole paragraph. The HTML is processed in a single pass without copying it.
+    */
+   public void applyHtmlReplacements(final CharSequence html, final Appendable out) throws IOException {
+      if (htmlReplacements.isEmpty()) {
+         out.append(html);
          return;
+      }
 
-      String replaced = html.toString();
-      for (final var entry : htmlReplacements.entrySet()) {
-         replaced = placeholderParagraphPattern(entry.getKey()).matcher(replaced).replaceAll(Matcher.quoteReplacement(entry.getValue()));
-         replaced = replaced.replace(entry.getKey(), entry.getValue());
+      final var matcher = placeholderPattern().matcher(html);
+      int pos = 0;
+      while (matcher.find()) {
+         out.append(html, pos, matcher.start());
+         final var placeholder = matcher.group(1) == null ? matcher.group(2) : matcher.group(1);
+         out.append(htmlReplacements.getOrDefault(placeholder, matcher.group()));
+         pos = matcher.end();
       }
-      html.setLength(0);
-      html.append(replaced);
+      out.append(html, pos, html.length());
    }
 
-   private static Pattern placeholderParagraphPattern(final String placeholder) {
-      return Pattern.compile("<p(?:\\s+[^>]*)?>\\s*" + Pattern.quote(placeholder) + "\\s*</p>");
+   private Pattern placeholderPattern() {
+      final var placeholders = htmlReplacements.keySet().stream().map(Pattern::quote).collect(Collectors.joining("|"));
+      return Pattern.compile("<p(?:\\s+[^>]*)?>\\s*(" + placeholders + ")\\s*</p>|(" + placeholders + ")");
    }
 }
@@ -9,6 +9,7 @@
 import java.io.IOException;
 import java.util.List;
 
+import org.commonmark.Extension;
 import org.commonmark.ext.autolink.AutolinkExtension;
 import org.commonmark.ext.footnotes.FootnotesExtension;
 import org.commonmark.ext.front.matter.YamlFrontMatterExtension;
@@ -19,8 +20,6 @@
 import org.commonmark.ext.image.attributes.ImageAttributesExtension;
 import org.commonmark.ext.ins.InsExtension;
 import org.commonmark.ext.task.list.items.TaskListItemsExtension;
-import org.commonmark.parser.Parser;
-import org.commonmark.renderer.html.HtmlRenderer;
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
 
@@ -31,12 +30,14 @@ public class CommonMarkRenderer implements MarkdownRenderer {
 
    public static final CommonMarkRenderer INSTANCE = new CommonMarkRenderer();
 
-   private final Parser parser;
-   private final HtmlRenderer renderer;
+   private final IncrementalCommonMarkRenderer renderer;
 
+   /**
+    * @return the CommonMark extensions enabled for previews
+    */
    @SuppressWarnings("null")
-   protected CommonMarkRenderer() {
-      final var extensions = List.of( //
+   static List<Extension> createExtensions() {
+      return List.of( //
          AlertsExtension.create(), //
          AutolinkExtension.create(), //
          FootnotesExtension.create(), //
@@ -47,14 +48,14 @@ protected CommonMarkRenderer() {
          TablesExtension.create(), //
          TaskListItemsExtension.create(), //
          YamlFrontMatterExtension.create());
-      parser = Parser.builder().extensions(extensions).build();
-      renderer = HtmlRenderer.builder().extensions(extensions).build();
+   }
+
+   protected CommonMarkRenderer() {
+      renderer = new IncrementalCommonMarkRenderer(createExtensions());
    }
 
    @Override
    public void markdownToHTML(final ContentSource source, final Appendable out) throws IOException {
-      try (var reader = source.contentAsReader()) {
-         renderer.render(parser.parseReader(reader), out);
-      }
+      renderer.render(source.path(), source.contentAsString(), out);
    }
 }
@@ -0,0 +1,281 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.markdown.renderer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.commonmark.Extension;
+import org.commonmark.node.Node;
+import org.commonmark.parser.IncludeSourceSpans;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.markdown.Plugin;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Renders Markdown block by block and reuses the HTML of the top-level blocks that did not change since the previous render
+ * of the same document, e.g. while the user types in a large document.
+ * <p>
+ * The changed region is determined by comparing the source with the previously rendered source of the same path. Only the
+ * lines from the block preceding the change up to the block following it are parsed again. The result is only used if the
+ * blocks preceding and following the change are parsed exactly as before, i.e. the change did not open a construct that
+ * continues beyond it, e.g. an unclosed code fence or a list, and parsing the lines as a separate document did not change
+ * their meaning, e.g. a thematic break becoming YAML front matter. Otherwise the whole document is parsed again.
+ * <p>
+ * Blocks are only rendered independently if their HTML does not depend on other blocks, i.e. the document contains neither
+ * link reference definitions nor footnotes and no two headings share an anchor ID. Otherwise the document is rendered as a
+ * whole.
+ * <p>
+ * The first render and every {@value #VERIFY_EVERY_NTH_RENDER}th render afterwards, or every render if the plugin is in
+ * debug mode, is compared with a full render. On a difference incremental rendering is disabled for the session.
+ *
+ * @author Sebastian Thomschke
+ */
+final class IncrementalCommonMarkRenderer {
+
+   /**
+    * @param type the node type of the block
+    * @param startLine first source line of the block
+    * @param endLine last source line of the block
+    */
+   private record Block(Class<? extends Node> type, int startLine, int endLine, String html) {
+
+      Block shift(final int lineDelta) {
+         return lineDelta == 0 ? this : new Block(type, startLine + lineDelta, endLine + lineDelta, html);
+      }
+
+      boolean isParsedAs(final Block other) {
+         return type == other.type && startLine == other.startLine && endLine == other.endLine;
+      }
+   }
+
+   /**
+    * @param lineStarts offsets of the lines of the text followed by the length of the text
+    */
+   private record RenderState(String text, int[] lineStarts, List<Block> blocks) {
+   }
+
+   private static final int MAX_DOCUMENTS = 8;
+   private static final int VERIFY_EVERY_NTH_RENDER = 50;
+   private static final Pattern HEADING_ID = Pattern.compile("<h[1-6] id=\"([^\"]*)\"");
+
+   /**
+    * @return the offsets of the lines of the given text, using the line terminators recognized by CommonMark, followed by the
+    *         length of the text
+    */
+   private static int[] computeLineStarts(final String text) {
+      var lineStarts = new int[64];
+      int lineCount = 0;
+      lineStarts[lineCount++] = 0;
+      for (int i = 0, len = text.length(); i < len; i++) {
+         final char ch = text.charAt(i);
+         if (ch == '\n' || ch == '\r') {
+            if (ch == '\r' && i + 1 < len && text.charAt(i + 1) == '\n') {
+               i++;
+            }
+            if (lineCount + 1 >= lineStarts.length) {
+               lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            }
+            lineStarts[lineCount++] = i + 1;
+         }
+      }
+      if (lineStarts[lineCount - 1] != text.length()) {
+         lineStarts[lineCount++] = text.length();
+      }
+      return Arrays.copyOf(lineStarts, lineCount);
+   }
+
+   private static boolean hasDuplicateHeadingIds(final List<Block> blocks) {
+      final var headingIds = new HashSet<String>();
+      for (final Block block : blocks) {
+         final var matcher = HEADING_ID.matcher(block.html);
+         while (matcher.find()) {
+            if (!headingIds.add(matcher.group(1)))
+               return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return true if the HTML of a block can depend on other blocks, i.e. the text may contain link reference definitions or
+    *         footnotes
+    */
+   private static boolean hasCrossBlockReferences(final String text) {
+      return text.contains("]:") || text.contains("[^");
+   }
+
+   /**
+    * @return the line containing the given offset
+    */
+   private static int lineOf(final int[] lineStarts, final int offset) {
+      final int index = Arrays.binarySearch(lineStarts, 0, lineStarts.length - 1, offset);
+      return index >= 0 ? index : -index - 2;
+   }
+
+   private final Parser parser;
+   private final Parser parserWithSourceSpans;
+   private final HtmlRenderer renderer;
+   private final Map<Path, RenderState> renderStates = Collections.synchronizedMap(new LRUMap<>(MAX_DOCUMENTS));
+   private final AtomicInteger renderCount = new AtomicInteger();
+   private final int verifyEveryNthRender;
+   private volatile boolean isDisabled;
+
+   IncrementalCommonMarkRenderer(final List<Extension> extensions) {
+      this(extensions, VERIFY_EVERY_NTH_RENDER);
+   }
+
+   /**
+    * @param verifyEveryNthRender e.g. 1 in tests to compare every render with a full render
+    */
+   IncrementalCommonMarkRenderer(final List<Extension> extensions, final int verifyEveryNthRender) {
+      this.verifyEveryNthRender = verifyEveryNthRender;
+      parser = Parser.builder().extensions(extensions).build();
+      renderer = HtmlRenderer.builder().extensions(extensions).build();
+      parserWithSourceSpans = Parser.builder().extensions(extensions).includeSourceSpans(IncludeSourceSpans.BLOCKS).build();
+   }
+
+   void render(final Path path, final String text, final Appendable out) throws IOException {
+      if (isDisabled || hasCrossBlockReferences(text)) {
+         renderStates.remove(path);
+         renderer.render(parser.parse(text), out);
+         return;
+      }
+
+      final var lineStarts = computeLineStarts(text);
+      final var previousState = renderStates.get(path);
+      var blocks = previousState == null ? null : renderChangedBlocks(previousState, text, lineStarts);
+      if (blocks == null) {
+         blocks = renderBlocks(parserWithSourceSpans.parse(text), 0);
+      }
+      if (blocks == null || hasDuplicateHeadingIds(blocks)) {
+         renderStates.remove(path);
+         renderer.render(parser.parse(text), out);
+         return;
+      }
+
+      if (renderCount.getAndIncrement() % verifyEveryNthRender == 0 || Plugin.get().isDebugging()) {
+         final var html = new StringBuilder();
+         for (final Block block : blocks) {
+            html.append(block.html);
+         }
+         final var expectedHtml = renderer.render(parser.parse(text));
+         if (!expectedHtml.contentEquals(html)) {
+            Plugin.log().warn("Incremental render of [" + path + "] differs from full render, incremental rendering is disabled.");
+            isDisabled = true;
+            renderStates.clear();
+            out.append(expectedHtml);
+            return;
+         }
+      }
+
+      renderStates.put(path, new RenderState(text, lineStarts, blocks));
+      for (final Block block : blocks) {
+         out.append(block.html);
+      }
+   }
+
+   /**
+    * @return true if a render differed from the full render, i.e. incremental rendering is disabled for the session
+    */
+   boolean isDisabled() {
+      return isDisabled;
+   }
+
+   /**
+    * @param lineOffset line of the given document's first line within the rendered text
+    * @return the rendered top-level blocks of the given document, or null if a block has no source position
+    */
+   private @Nullable List<Block> renderBlocks(final Node document, final int lineOffset) {
+      final var blocks = new ArrayList<Block>();
+      for (Node node = document.getFirstChild(); node != null; node = node.getNext()) {
+         final var sourceSpans = node.getSourceSpans();
+         if (sourceSpans.isEmpty())
+            return null;
+         blocks.add(new Block(node.getClass(), sourceSpans.get(0).getLineIndex() + lineOffset, //
+            sourceSpans.get(sourceSpans.size() - 1).getLineIndex() + lineOffset, //
+            renderer.render(node)));
+      }
+      return blocks;
+   }
+
+   /**
+    * @return the blocks of the given text, reusing the blocks of the previous render not affected by the change, or null if
+    *         the document must be parsed completely
+    */
+   private @Nullable List<Block> renderChangedBlocks(final RenderState previousState, final String text, final int[] lineStarts) {
+      final var previousText = previousState.text;
+      if (previousText.equals(text))
+         return previousState.blocks;
+
+      final int maxCommonLength = Math.min(previousText.length(), text.length());
+      int commonPrefix = 0;
+      while (commonPrefix < maxCommonLength && previousText.charAt(commonPrefix) == text.charAt(commonPrefix)) {
+         commonPrefix++;
+      }
+      int commonSuffix = 0;
+      while (commonSuffix < maxCommonLength - commonPrefix //
+            && previousText.charAt(previousText.length() - 1 - commonSuffix) == text.charAt(text.length() - 1 - commonSuffix)) {
+         commonSuffix++;
+      }
+
+      final var previousLineStarts = previousState.lineStarts;
+      final int changedFromLine = lineOf(previousLineStarts, commonPrefix);
+      final int changedToLine = lineOf(previousLineStarts, Math.max(commonPrefix, previousText.length() - commonSuffix - 1));
+      final int lineDelta = lineStarts.length - previousLineStarts.length;
+
+      // the unchanged block preceding the change is parsed again, since the change may join it with the following lines
+      final var previousBlocks = previousState.blocks;
+      int firstChanged = 0;
+      while (firstChanged < previousBlocks.size() && previousBlocks.get(firstChanged).endLine < changedFromLine) {
+         firstChanged++;
+      }
+      final int leading = firstChanged - 1;
+      int trailing = firstChanged;
+      while (trailing < previousBlocks.size() && previousBlocks.get(trailing).startLine <= changedToLine) {
+         trailing++;
+      }
+
+      final int regionStartLine = leading < 0 ? 0 : previousBlocks.get(leading).startLine;
+      final @Nullable Block trailingBlock = trailing < previousBlocks.size() ? previousBlocks.get(trailing).shift(lineDelta) : null;
+      final int regionEndOffset = trailingBlock == null //
+            ? text.length()
+            : lineStarts[Math.min(trailingBlock.endLine + 1, lineStarts.length - 1)];
+      final var regionBlocks = renderBlocks(parserWithSourceSpans.parse(text.substring(lineStarts[regionStartLine],
+         regionEndOffset)), regionStartLine);
+      if (regionBlocks == null)
+         return null;
+
+      // the region is parsed as a separate document, so the block preceding the change must be parsed as before, e.g. a
+      // thematic break must not become YAML front matter, which is only recognized at the start of a document
+      if (leading >= 0 && (regionBlocks.isEmpty() || !regionBlocks.get(0).isParsedAs(previousBlocks.get(leading))))
+         return null;
+
+      // the block following the change must be parsed as before, otherwise the change affects the blocks after it
+      if (trailingBlock != null && (regionBlocks.isEmpty() || !regionBlocks.get(regionBlocks.size() - 1).isParsedAs(trailingBlock)))
+         return null;
+
+      final var blocks = new ArrayList<Block>(previousBlocks.size() + regionBlocks.size());
+      blocks.addAll(previousBlocks.subList(0, Math.max(0, leading)));
+      blocks.addAll(regionBlocks);
+      for (int i = trailing + 1; i < previousBlocks.size(); i++) {
+         blocks.add(previousBlocks.get(i).shift(lineDelta));
+      }
+      return List.copyOf(blocks);
+   }
+}
@@ -6,13 +6,13 @@
  */
 package de.sebthom.eclipse.previewer.mermaid;
 
-import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.lang3.SystemUtils;
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer;
+import de.sebthom.eclipse.previewer.util.AssetStore;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
 import de.sebthom.eclipse.previewer.util.StringUtils;
 import net.sf.jstuff.core.Strings;
@@ -22,8 +22,6 @@
  */
 public class MermaidHtmlPreviewRenderer implements HtmlPreviewRenderer {
 
-   private File mermaidJS;
-
    private static final String MERMAID_INIT_SCRIPT = """
       <script>
         try {
@@ -41,12 +39,13 @@ public class MermaidHtmlPreviewRenderer implements HtmlPreviewRenderer {
       </script>
       """;
 
-   public MermaidHtmlPreviewRenderer() throws IOException {
-      mermaidJS = Plugin.resources().extract(Constants.MERMAID_JS);
+   @Override
+   public void dispose() {
    }
 
    @Override
-   public void dispose() {
+   public String getSettingsFingerprint() {
+      return MiscUtils.isDarkEclipseTheme() ? "dark" : "light";
    }
 
    @Override
@@ -82,7 +81,7 @@ public void renderToHtml(final ContentSource source, final Appendable out) throw
                """);
       }
 
-      out.append("<script src='" + mermaidJS.toURI() + "'></script>");
+      out.append("<script src='" + AssetStore.getUri(Plugin.get().getBundle(), Constants.MERMAID_JS) + "'></script>");
       out.append(StringUtils.htmlSvgWithHoverDownloadButton("<span id='placeholder'></span>"));
       out.append("""
          <pre id="mermaid" style="width:100%">
@@ -8,6 +8,7 @@
 
 import java.io.IOException;
 
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
@@ -22,9 +23,18 @@ public class PlantUmlHtmlPreviewRenderer implements HtmlPreviewRenderer {
    public void dispose() {
    }
 
+   @Override
+   public String getSettingsFingerprint() {
+      return PlantUmlRendering.getSettingsFingerprint();
+   }
+
    @Override
    public void renderToHtml(final ContentSource source, final Appendable out) throws IOException {
+      renderToHtml(source, out, new CancellationToken());
+   }
 
+   @Override
+   public void renderToHtml(final ContentSource source, final Appendable out, final CancellationToken cancellation) throws IOException {
       out.append("""
          <!DOCTYPE html>
          <html>
@@ -34,7 +44,7 @@ public void renderToHtml(final ContentSource source, final Appendable out) throw
          <body>
          """);
 
-      PlantUmlRendering.renderToHtmlFragment(source.contentAsString(), out);
+      PlantUmlRendering.renderToHtmlFragment(source.contentAsString(), out, cancellation);
       out.append(StringUtils.htmlInfoBox(source.shortDisplayPath() + " " + MiscUtils.getCurrentTime()));
       out.append("</body></html>");
    }
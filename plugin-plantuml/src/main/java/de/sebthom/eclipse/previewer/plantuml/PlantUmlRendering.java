@@ -9,6 +9,7 @@
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.plantuml.prefs.PluginPreferences;
 import de.sebthom.eclipse.previewer.util.StringUtils;
 import net.sf.jstuff.core.io.stream.FastByteArrayOutputStream;
@@ -29,6 +30,13 @@ public final class PlantUmlRendering {
    @SuppressWarnings("null")
    private static final FileFormatOption SVG_FORMAT = new FileFormatOption(FileFormat.SVG).withUseRedForError();
 
+   /**
+    * @return a fingerprint of the settings affecting the output of {@link #renderToHtmlFragment(String)}
+    */
+   public static String getSettingsFingerprint() {
+      return PluginPreferences.getPlantUmlLayoutEngine() + ":" + PluginPreferences.getGraphvizDotExe();
+   }
+
    public static String renderToHtmlFragment(final String source) throws IOException {
       final var html = new StringBuilder();
       renderToHtmlFragment(source, html);
@@ -36,6 +44,15 @@ public static String renderToHtmlFragment(final String source) throws IOExceptio
    }
 
    public static void renderToHtmlFragment(final String source, final Appendable out) throws IOException {
+      renderToHtmlFragment(source, out, new CancellationToken());
+   }
+
+   /**
+    * @param cancellation checked before each diagram of the source is laid out
+    * @throws java.util.concurrent.CancellationException if the render was cancelled
+    */
+   public static void renderToHtmlFragment(final String source, final Appendable out, final CancellationToken cancellation)
+         throws IOException {
       final var reader = new SourceStringReader(source);
       TitledDiagram.FORCE_SMETANA = "smetana".equals(PluginPreferences.getPlantUmlLayoutEngine());
       try (var baos = new FastByteArrayOutputStream()) {
@@ -48,6 +65,7 @@ public static void renderToHtmlFragment(final String source, final Appendable ou
                final Diagram system = block.getDiagram();
                final int imageCount = system.getNbImages();
                for (int j = 0; j < imageCount; j++) {
+                  cancellation.throwIfCancelled();
                   baos.reset();
                   system.exportDiagram(baos, j, SVG_FORMAT);
                   out.append(StringUtils.htmlSvgWithHoverDownloadButton(new String(baos.toByteArray(), StandardCharsets.UTF_8)));
@@ -169,9 +169,10 @@ public void dispose() {
       }
       zoomedFont = null;
 
-      final var st = viewer.getTextWidget();
-      if (!st.isDisposed()) {
-         st.removePaintListener(placeholderPainter);
+      // the viewer is only created if the renderer was initialized
+      final @Nullable SourceViewer viewer = this.viewer;
+      if (viewer != null && !viewer.getTextWidget().isDisposed()) {
+         viewer.getTextWidget().removePaintListener(placeholderPainter);
       }
    }
 
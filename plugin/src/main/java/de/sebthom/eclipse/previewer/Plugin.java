@@ -18,6 +18,9 @@
 import de.sebthom.eclipse.commons.BundleResources;
 import de.sebthom.eclipse.commons.logging.PluginLogger;
 import de.sebthom.eclipse.commons.logging.StatusFactory;
+import de.sebthom.eclipse.previewer.cache.RenderCaches;
+import de.sebthom.eclipse.previewer.renderer.RenderScheduler;
+import de.sebthom.eclipse.previewer.renderer.html.PreviewContentServer;
 import net.sf.jstuff.core.reflection.Fields;
 
 /**
@@ -88,6 +91,9 @@ public void start(final BundleContext context) throws Exception {
 
    @Override
    public void stop(final BundleContext context) throws Exception {
+      RenderScheduler.shutdown();
+      PreviewContentServer.shutdown();
+      RenderCaches.dispose();
       instance = null;
       super.stop(context);
    }
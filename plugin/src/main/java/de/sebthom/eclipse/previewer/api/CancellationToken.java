@@ -0,0 +1,92 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import de.sebthom.eclipse.previewer.Plugin;
+
+/**
+ * Signals that a render is no longer needed, e.g. because it was superseded by a newer render of the same preview, and
+ * should stop as soon as possible. The output of a cancelled render is discarded.
+ * <p>
+ * Renderers check {@link #isCancelled()} or call {@link #throwIfCancelled()} between expensive steps. Blocking work, e.g.
+ * waiting for a native process, can be aborted by a callback registered via {@link #onCancel(Runnable)}.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class CancellationToken {
+
+   /**
+    * Handle of a callback registered via {@link CancellationToken#onCancel(Runnable)}.
+    */
+   @FunctionalInterface
+   public interface Registration extends AutoCloseable {
+
+      /**
+       * Unregisters the callback, e.g. once the work it aborts completed.
+       */
+      @Override
+      void close();
+   }
+
+   private final List<Runnable> callbacks = new ArrayList<>(2);
+   private volatile boolean isCancelled;
+
+   /**
+    * Cancels the render and invokes the registered callbacks. Subsequent invocations have no effect.
+    */
+   public void cancel() {
+      final List<Runnable> callbacks;
+      synchronized (this.callbacks) {
+         if (isCancelled)
+            return;
+         isCancelled = true;
+         callbacks = List.copyOf(this.callbacks);
+         this.callbacks.clear();
+      }
+      for (final Runnable callback : callbacks) {
+         try {
+            callback.run();
+         } catch (final RuntimeException ex) {
+            Plugin.log().error(ex);
+         }
+      }
+   }
+
+   public boolean isCancelled() {
+      return isCancelled;
+   }
+
+   /**
+    * Registers a callback invoked on cancellation, or invokes it immediately if the render is already cancelled.
+    */
+   public Registration onCancel(final Runnable callback) {
+      synchronized (callbacks) {
+         if (!isCancelled) {
+            callbacks.add(callback);
+            return () -> {
+               synchronized (callbacks) {
+                  callbacks.remove(callback);
+               }
+            };
+         }
+      }
+      callback.run();
+      return () -> { /* nothing to unregister */ };
+   }
+
+   /**
+    * @throws CancellationException if the render was cancelled
+    */
+   public void throwIfCancelled() {
+      if (isCancelled)
+         throw new CancellationException("Render was cancelled.");
+   }
+}
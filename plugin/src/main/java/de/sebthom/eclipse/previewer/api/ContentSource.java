@@ -14,6 +14,7 @@
 
 import org.eclipse.core.runtime.content.IContentType;
 
+import de.sebthom.eclipse.previewer.util.ContentFingerprints;
 import de.sebthom.eclipse.previewer.util.ContentSources.ContentSourceSnapshot;
 
 /**
@@ -27,6 +28,15 @@ public interface ContentSource {
 
    String contentAsString() throws IOException;
 
+   /**
+    * @return a versioned 128-bit fingerprint of the current content, see {@link ContentFingerprints}. Snapshots compute it
+    *         at most once, other sources compute it on every invocation, so callers that need both the content and its
+    *         fingerprint should work on a {@link #snapshot()}.
+    */
+   default String contentFingerprint() throws IOException {
+      return ContentFingerprints.of(contentAsString());
+   }
+
    List<IContentType> contentTypes();
 
    boolean isSnapshot();
@@ -60,11 +70,13 @@ default String shortDisplayPath() {
    }
 
    /**
-    * @return an immutable source snapshot, or this source itself when it is already a snapshot.
+    * @return an immutable source snapshot, or this source itself when it is already a snapshot. Reading the content is
+    *         recorded by {@link #contentAsString()}.
     */
    default ContentSource snapshot() throws IOException {
-      return isSnapshot() //
-            ? this
-            : new ContentSourceSnapshot(path(), contentAsString(), lastModified(), contentTypes());
+      if (isSnapshot())
+         return this;
+      // the content types are only resolved if the snapshot is dispatched to a renderer by content type
+      return new ContentSourceSnapshot(path(), contentAsString(), lastModified(), this::contentTypes);
    }
 }
@@ -8,6 +8,7 @@
 
 import java.io.IOException;
 
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.ui.services.IDisposable;
 
 /**
@@ -16,5 +17,45 @@
  * @author Sebastian Thomschke
  */
 public interface HtmlPreviewRenderer extends IDisposable {
+
+   /**
+    * @return a value that changes whenever a setting affecting the rendered HTML changes, e.g. a preference or the active
+    *         Eclipse theme. It is part of the render cache key, so switching back to a previously used configuration is a
+    *         cache hit. Invoked before every cache lookup, therefore it must be cheap to compute.
+    */
+   default String getSettingsFingerprint() {
+      return "";
+   }
+
+   /**
+    * @return the ID of the cost class to execute renders in if it depends on the settings of the renderer, e.g.
+    *         {@code network} if it is configured to call a web service, or null to use the {@code cost-class} declared in
+    *         the {@code plugin.xml}. Invoked before every render, therefore it must be cheap to compute.
+    */
+   default @Nullable String getCostClass() {
+      return null;
+   }
+
+   /**
+    * @return true if {@link #renderToHtml(ContentSource, Appendable)} writes the document progressively while rendering, i.e.
+    *         it does not buffer the whole output before writing it. The preview then streams the output to the browser, so
+    *         the beginning of a large document is displayed before the render completed.
+    */
+   default boolean isProgressive() {
+      return false;
+   }
+
    void renderToHtml(ContentSource source, Appendable out) throws IOException;
+
+   /**
+    * Renders the given source like {@link #renderToHtml(ContentSource, Appendable)} but stops as soon as possible once the
+    * given token is cancelled, e.g. because the render was superseded by a newer render of the same preview. Renderers
+    * performing several expensive steps should override this method. The default implementation ignores the token.
+    *
+    * @throws java.util.concurrent.CancellationException if the render was cancelled
+    */
+   default void renderToHtml(final ContentSource source, final Appendable out, final CancellationToken cancellation)
+         throws IOException {
+      renderToHtml(source, out);
+   }
 }
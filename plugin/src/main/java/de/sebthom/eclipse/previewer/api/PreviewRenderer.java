@@ -29,6 +29,17 @@ public interface PreviewRenderer extends IDisposable {
     */
    boolean render(ContentSource source, boolean forceCacheUpdate) throws IOException;
 
+   /**
+    * Renders the given source like {@link #render(ContentSource, boolean)} but stops as soon as possible and does not update
+    * the UI once the given token is cancelled. The default implementation ignores the token.
+    *
+    * @throws java.util.concurrent.CancellationException if the render was cancelled
+    */
+   default boolean render(final ContentSource source, final boolean forceCacheUpdate, final CancellationToken cancellation)
+         throws IOException {
+      return render(source, forceCacheUpdate);
+   }
+
    float getZoom();
 
    /**
@@ -7,26 +7,60 @@
 package de.sebthom.eclipse.previewer.cache;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.SystemUtils;
+import org.eclipse.jdt.annotation.Nullable;
 
 import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import de.sebthom.eclipse.previewer.util.ContentFingerprints;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
 import net.sf.jstuff.core.security.Hash;
 
 /**
+ * Cache entries are stored below a source dir derived from the source path. Each render variant, e.g. the renderer with its
+ * current settings, gets its own entry dir below the source dir, so switching between variants never invalidates entries
+ * of the other variants:
+ *
+ * <pre>
+ * cacheRoot/&lt;sha256(sourcePath)&gt;/source_path
+ * cacheRoot/&lt;sha256(sourcePath)&gt;/&lt;hash(renderVariant)&gt;/rendered_content.html
+ * </pre>
+ *
+ * Entries of the empty render variant are stored directly in the source dir.
+ *
  * @author Sebastian Thomschke
  */
 abstract class AbstractRenderCache implements RenderCache {
 
+   @FunctionalInterface
+   interface ContentWriter {
+
+      /**
+       * @return false if no content was written, in which case the already written content is discarded
+       */
+      boolean writeTo(Writer out) throws IOException;
+   }
+
    static final Path SOURCE_PATH_FILE = Path.of("source_path");
 
    final Path cacheRoot;
+   final RenderCacheIndex index;
+   private final RenderCacheEvictor evictor;
+   private final Function<ContentSource, String> renderVariantProvider;
 
-   AbstractRenderCache(final String cacheFolderName) {
-      cacheRoot = SystemUtils.getJavaIoTmpDir().toPath().resolve(Plugin.PLUGIN_ID).resolve(cacheFolderName);
+   AbstractRenderCache(final String cacheFolderName, final Function<ContentSource, String> renderVariantProvider) {
+      this.renderVariantProvider = renderVariantProvider;
+      cacheRoot = RenderCaches.CACHE_ROOT.resolve(cacheFolderName);
+      index = RenderCaches.getIndex(cacheRoot);
+      evictor = RenderCaches.getEvictor(cacheRoot, index);
       Plugin.log().info("Initializing render cache folder [{0}]...", cacheRoot);
       try {
          if (Files.isRegularFile(cacheRoot)) {
@@ -38,32 +72,132 @@ abstract class AbstractRenderCache implements RenderCache {
          Plugin.log().error(ex);
       }
 
-      removeStaleCacheEntries();
+      // stale entries are removed in the background, see RenderCacheJanitor
+      RenderCaches.getJanitor(cacheRoot, index);
+      evictor.scheduleCheck();
+   }
+
+   static Path getCacheEntryDir(final Path cacheRoot, final Path sourcePath, final String renderVariant) {
+      final var sourceDir = getSourceDir(cacheRoot, sourcePath);
+      if (renderVariant.isEmpty())
+         return sourceDir;
+      final var renderVariantHash = ContentFingerprints.of(renderVariant);
+      // 64 bits are plenty to tell apart the few variants of a single source and keep paths short on Windows
+      return sourceDir.resolve(renderVariantHash.substring(renderVariantHash.length() - 16));
    }
 
-   Path getCacheEntryDir(final Path sourcePath) {
+   static Path getSourceDir(final Path cacheRoot, final Path sourcePath) {
       return cacheRoot.resolve(Hash.SHA256.hash(sourcePath.toString()));
    }
 
-   private void removeStaleCacheEntries() {
-      try (var cacheEntryDirs = Files.newDirectoryStream(cacheRoot)) {
-         for (final Path cacheEntryDir : cacheEntryDirs) {
-            try {
-               final var sourcePathFile = cacheEntryDir.resolve(SOURCE_PATH_FILE);
-               if (Files.exists(sourcePathFile)) {
-                  final var sourcePath = Path.of(Files.readString(sourcePathFile));
-                  if (Files.exists(sourcePath)) {
-                     continue;
-                  }
-               }
-               Plugin.log().info("Deleting stale cache dir [{0}]...", cacheEntryDir);
-               FileUtils.deleteDirectory(cacheEntryDir.toFile());
-            } catch (final IOException ex) {
-               Plugin.log().error(ex);
-            }
+   /**
+    * Must be called on every cache hit so the entry is not evicted as least recently used.
+    */
+   void entryAccessed(final Path cacheEntryDir) {
+      index.recordAccess(getSourceDir(cacheEntryDir));
+   }
+
+   /**
+    * Must be called after an entry was (re-)written so the cache is trimmed if it exceeds its budget.
+    */
+   void entryWritten(final Path cacheEntryDir) {
+      index.recordAccess(getSourceDir(cacheEntryDir));
+      evictor.scheduleCheck();
+   }
+
+   Path getCacheEntryDir(final Path sourcePath, final String renderVariant) {
+      final var entry = index.get(sourcePath);
+      if (entry != null && entry.renderVariant().equals(renderVariant))
+         return entry.entryDir();
+      return getCacheEntryDir(cacheRoot, sourcePath, renderVariant);
+   }
+
+   /**
+    * @return the key identifying a render in the {@link RenderCoordinator}
+    */
+   String getRenderKey(final Path sourcePath, final String renderVariant, final Object sourceVersion, final String fileExtension) {
+      return cacheRoot + "|" + sourcePath + "|" + renderVariant + "|" + sourceVersion + "|" + fileExtension;
+   }
+
+   String getRenderVariant(final ContentSource source) {
+      return renderVariantProvider.apply(source);
+   }
+
+   /**
+    * @return the source dir the given entry dir belongs to, which holds the {@link #SOURCE_PATH_FILE}
+    */
+   Path getSourceDir(final Path cacheEntryDir) {
+      return cacheRoot.equals(cacheEntryDir.getParent()) ? cacheEntryDir : cacheEntryDir.getParent();
+   }
+
+   @Override
+   public Statistics getStatistics() {
+      return index.getStatistics();
+   }
+
+   /**
+    * Removes the given entry dir and the index entry of the given source.
+    */
+   void remove(final Path sourcePath, final Path cacheDir) throws IOException {
+      index.remove(sourcePath);
+      if (Files.exists(cacheDir)) {
+         FileUtils.deleteDirectory(cacheDir.toFile());
+      }
+   }
+
+   /**
+    * Writes the given content to a temp file in the target's directory and moves it into place, so that concurrent readers
+    * either see the previous or the new content but never a partially written file.
+    *
+    * @param lastModified if not {@code null} the last modified time to apply to the file before it is moved into place
+    */
+   static void writeAtomically(final Path target, final CharSequence content, final @Nullable FileTime lastModified)
+         throws IOException {
+      writeAtomically(target, out -> {
+         out.append(content);
+         return true;
+      }, lastModified);
+   }
+
+   /**
+    * Streams the given content into a temp file in the target's directory and moves it into place, so that concurrent
+    * readers either see the previous or the new content but never a partially written file. The content is encoded while
+    * it is written, i.e. it is never held in memory as a whole.
+    *
+    * @param lastModified if not {@code null} the last modified time to apply to the file before it is moved into place
+    * @return false if the content writer did not write the content, in which case the target is left untouched
+    */
+   static boolean writeAtomically(final Path target, final ContentWriter content, final @Nullable FileTime lastModified)
+         throws IOException {
+      // the leading dot prevents temp files from matching the rendered_content* globs
+      final Path tmpFile = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+      final var event = new RenderEvents.RenderCacheWrite();
+      event.begin();
+      try {
+         try (var out = Files.newBufferedWriter(tmpFile)) {
+            if (!content.writeTo(out))
+               return false;
+         }
+         event.written = true;
+         if (event.shouldCommit()) {
+            event.bytes = RenderEvents.sizeOf(tmpFile);
+         }
+         if (lastModified != null) {
+            Files.setLastModifiedTime(tmpFile, lastModified);
+         }
+         try {
+            Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+         } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+         }
+         return true;
+      } finally {
+         Files.deleteIfExists(tmpFile);
+         event.end();
+         if (event.shouldCommit()) {
+            event.target = target.toString();
+            event.commit();
          }
-      } catch (final IOException ex) {
-         Plugin.log().error(ex);
       }
    }
 }
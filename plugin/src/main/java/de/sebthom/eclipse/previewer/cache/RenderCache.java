@@ -7,28 +7,60 @@
 package de.sebthom.eclipse.previewer.cache;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import de.sebthom.eclipse.previewer.api.ContentSource;
-import net.sf.jstuff.core.functional.ThrowingFunction;
 
 /**
  * @author Sebastian Thomschke
  */
 public interface RenderCache {
 
+   /**
+    * Renders a source by writing the rendered content to the given writer, which encodes it directly into the cache
+    * storage, so no intermediate copy of the whole rendered content is required.
+    */
+   @FunctionalInterface
+   interface ContentRenderer {
+
+      /**
+       * @return false if the source cannot be rendered, in which case the already written content is discarded
+       */
+      boolean render(ContentSource source, Writer out) throws IOException;
+
+      /**
+       * @return true if nobody waits for the rendered content yet, e.g. when prefetching linked documents, in which case
+       *         a concurrent interactive render of the same entry does not wait for this render but renders itself
+       */
+      default boolean isSpeculative() {
+         return false;
+      }
+   }
+
+   /**
+    * Lookup counters of a render cache. Every lookup is counted exactly once: either it was answered from the in-memory
+    * index, from the disk, or it missed.
+    */
+   record Statistics(long memoryHits, long diskHits, long misses) {
+
+      public long lookups() {
+         return memoryHits + diskHits + misses;
+      }
+   }
+
    @Nullable
-   Path computeIfAbsent(ContentSource source, ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer,
-         String fileExtension) throws IOException;
+   Path computeIfAbsent(ContentSource source, ContentRenderer renderer, String fileExtension) throws IOException;
 
    @Nullable
-   Path replace(ContentSource source, ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, String fileExtension)
-         throws IOException;
+   Path replace(ContentSource source, ContentRenderer renderer, String fileExtension) throws IOException;
 
    @Nullable
    Path get(ContentSource source, String fileExtension);
 
+   Statistics getStatistics();
+
    Path put(ContentSource source, CharSequence renderedContent, String fileExtension) throws IOException;
 }
@@ -6,17 +6,19 @@
  */
 package de.sebthom.eclipse.previewer.cache;
 
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.asNonNull;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.function.Function;
 
-import org.apache.commons.io.FileUtils;
 import org.eclipse.jdt.annotation.Nullable;
 
 import de.sebthom.eclipse.previewer.Plugin;
 import de.sebthom.eclipse.previewer.api.ContentSource;
-import net.sf.jstuff.core.functional.ThrowingFunction;
 
 /**
  * @author Sebastian Thomschke
@@ -24,34 +26,74 @@
 public final class RenderCacheByLastModified extends AbstractRenderCache {
 
    public RenderCacheByLastModified(final String cacheFolderName) {
-      super(cacheFolderName);
+      this(cacheFolderName, source -> "");
+   }
+
+   /**
+    * @param renderVariantProvider determines the render variant of a source, e.g. the renderer and its settings, see
+    *           {@link de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer#getSettingsFingerprint()}
+    */
+   public RenderCacheByLastModified(final String cacheFolderName, final Function<ContentSource, String> renderVariantProvider) {
+      super(cacheFolderName, renderVariantProvider);
    }
 
    @Override
-   public @Nullable Path computeIfAbsent(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path computeIfAbsent(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      final Path renderedContentPath = get(source, fileExtension);
+      final var renderVariant = getRenderVariant(source);
+      final Path renderedContentPath = get(source, renderVariant, fileExtension, true);
       if (renderedContentPath != null)
          return renderedContentPath;
-      final CharSequence renderedContent = renderer.apply(source);
-      return renderedContent == null //
-            ? null
-            : put(source, renderedContent, fileExtension);
+      return RenderCoordinator.renderOnce(getRenderKey(source.path(), renderVariant, source.lastModified(), fileExtension), //
+         renderer.isSpeculative(), () -> get(source, renderVariant, fileExtension, false), //
+         () -> put(source, renderVariant, out -> renderer.render(source, out), fileExtension));
    }
 
    @Override
    public @Nullable Path get(final ContentSource source, final String fileExtension) {
-      final Path cacheDir = getCacheEntryDir(source.path());
-      if (!Files.exists(cacheDir))
-         return null;
+      return get(source, getRenderVariant(source), fileExtension, true);
+   }
 
+   /**
+    * @param recordStatistics false if the lookup re-checks a previously counted miss, see {@link RenderCoordinator}
+    */
+   private @Nullable Path get(final ContentSource source, final String renderVariant, final String fileExtension,
+         final boolean recordStatistics) {
+      final Path sourcePath = source.path();
+      final long sourceLastModified;
       try {
-         final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
-         if (renderedContentPath.toFile().lastModified() == source.lastModified())
-            return renderedContentPath;
+         sourceLastModified = source.lastModified();
       } catch (final IOException ex) {
          Plugin.log().error(ex);
+         return null;
+      }
+
+      final var entry = index.get(sourcePath);
+      if (entry != null && entry.hasFileExtension(fileExtension) && entry.renderVariant().equals(renderVariant) && entry
+         .renderedContentLastModified() == sourceLastModified) {
+         if (recordStatistics) {
+            index.recordMemoryHit();
+         }
+         entryAccessed(entry.entryDir());
+         return entry.renderedContentPath();
+      }
+
+      final Path cacheDir = getCacheEntryDir(sourcePath, renderVariant);
+      final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
+      final File renderedContentFile = renderedContentPath.toFile();
+      // File#lastModified() returns 0 for non-existing files, which saves a separate Files.exists() call
+      final long renderedContentLastModified = renderedContentFile.lastModified();
+      if (renderedContentLastModified != 0 && renderedContentLastModified == sourceLastModified) {
+         index.put(sourcePath, new RenderCacheIndex.Entry(cacheDir, renderVariant, renderedContentPath, null,
+            renderedContentLastModified, renderedContentFile.length()));
+         if (recordStatistics) {
+            index.recordDiskHit();
+         }
+         entryAccessed(cacheDir);
+         return renderedContentPath;
+      }
+      if (recordStatistics) {
+         index.recordMiss();
       }
       return null;
    }
@@ -62,33 +104,52 @@ private Path getRenderedContentFilePath(final Path cacheDir, final String fileEx
 
    @Override
    public Path put(final ContentSource source, final CharSequence renderedContent, final String fileExtension) throws IOException {
-      final var cacheDir = getCacheEntryDir(source.path());
+      return asNonNull(put(source, getRenderVariant(source), out -> {
+         out.append(renderedContent);
+         return true;
+      }, fileExtension));
+   }
+
+   /**
+    * @return null if no content was written, in which case the entry is removed
+    */
+   private @Nullable Path put(final ContentSource source, final String renderVariant, final ContentWriter renderedContent,
+         final String fileExtension) throws IOException {
+      final Path sourcePath = source.path();
+      final var cacheDir = getCacheEntryDir(sourcePath, renderVariant);
+      final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
+      final long sourceLastModified = source.lastModified();
       try {
          Files.createDirectories(cacheDir);
+      } catch (final IOException ex) {
+         remove(sourcePath, cacheDir);
+         throw ex;
+      }
 
-         final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
-         Files.writeString(cacheDir.resolve(SOURCE_PATH_FILE), source.path().toString());
-         Files.writeString(renderedContentPath, renderedContent);
-         Files.setLastModifiedTime(renderedContentPath, FileTime.fromMillis(source.lastModified()));
+      // if rendering fails the current entry is left untouched
+      if (!writeAtomically(renderedContentPath, renderedContent, FileTime.fromMillis(sourceLastModified))) {
+         remove(sourcePath, cacheDir);
+         return null;
+      }
+
+      try {
+         writeAtomically(getSourceDir(cacheDir).resolve(SOURCE_PATH_FILE), sourcePath.toString(), null);
+         index.put(sourcePath, new RenderCacheIndex.Entry(cacheDir, renderVariant, renderedContentPath, null, sourceLastModified,
+            Files.size(renderedContentPath)));
+         entryWritten(cacheDir);
          return renderedContentPath;
       } catch (final IOException ex) {
-         FileUtils.deleteDirectory(cacheDir.toFile());
+         remove(sourcePath, cacheDir);
          throw ex;
       }
    }
 
    @Override
-   public @Nullable Path replace(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path replace(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      final CharSequence renderedContent = renderer.apply(source);
-      if (renderedContent == null) {
-         final Path cacheDir = getCacheEntryDir(source.path());
-         if (Files.exists(cacheDir)) {
-            FileUtils.deleteDirectory(cacheDir.toFile());
-         }
-         return null;
-      }
-      return put(source, renderedContent, fileExtension);
+      final var renderVariant = getRenderVariant(source);
+      return RenderCoordinator.renderOnce(getRenderKey(source.path(), renderVariant, source.lastModified(), fileExtension), //
+         renderer.isSpeculative(), //
+         () -> put(source, renderVariant, out -> renderer.render(source, out), fileExtension));
    }
 }
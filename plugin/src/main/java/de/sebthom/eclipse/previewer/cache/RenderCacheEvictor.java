@@ -0,0 +1,113 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+
+/**
+ * Background job that trims the least recently used entries of a render cache folder once the configured entry or byte
+ * budget is exceeded. The last modified time of a cache entry dir is used as its access time, see
+ * {@link RenderCacheIndex#recordAccess(Path)}.
+ *
+ * @author Sebastian Thomschke
+ */
+final class RenderCacheEvictor extends Job {
+
+   private record CacheEntryDir(Path path, long lastAccessed, long size) {
+   }
+
+   private static final long SCHEDULE_DELAY_MS = 5_000;
+
+   private final Path cacheRoot;
+   private final RenderCacheIndex index;
+
+   RenderCacheEvictor(final Path cacheRoot, final RenderCacheIndex index) {
+      super("Trimming render cache " + cacheRoot.getFileName());
+      this.cacheRoot = cacheRoot;
+      this.index = index;
+      setSystem(true);
+      setPriority(Job.DECORATE);
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      final long maxEntries = PluginPreferences.getRenderCacheMaxEntries();
+      final long maxBytes = PluginPreferences.getRenderCacheMaxBytes();
+      if (maxEntries <= 0 && maxBytes <= 0)
+         return Status.OK_STATUS;
+
+      final var entryDirs = new ArrayList<CacheEntryDir>();
+      long totalBytes = 0;
+      try (var cacheEntryDirs = Files.newDirectoryStream(cacheRoot, Files::isDirectory)) {
+         for (final Path cacheEntryDir : cacheEntryDirs) {
+            if (monitor.isCanceled())
+               return Status.CANCEL_STATUS;
+            try {
+               final long size = RenderCaches.getSize(cacheEntryDir);
+               entryDirs.add(new CacheEntryDir(cacheEntryDir, Files.getLastModifiedTime(cacheEntryDir).toMillis(), size));
+               totalBytes += size;
+            } catch (final NoSuchFileException ex) {
+               // entry was deleted concurrently
+            }
+         }
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+         return Status.OK_STATUS;
+      }
+
+      long totalEntries = entryDirs.size();
+      if (!isOverBudget(totalEntries, totalBytes, maxEntries, maxBytes))
+         return Status.OK_STATUS;
+
+      entryDirs.sort(Comparator.comparingLong(CacheEntryDir::lastAccessed));
+      for (final var entryDir : entryDirs) {
+         if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
+         if (!isOverBudget(totalEntries, totalBytes, maxEntries, maxBytes)) {
+            break;
+         }
+         Plugin.log().debug("Evicting render cache dir [{0}]...", entryDir.path);
+         try {
+            index.removeEntryDir(entryDir.path);
+            FileUtils.deleteDirectory(entryDir.path.toFile());
+            totalEntries--;
+            totalBytes -= entryDir.size;
+         } catch (final IOException ex) {
+            Plugin.log().error(ex);
+         }
+      }
+      return Status.OK_STATUS;
+   }
+
+   private static boolean isOverBudget(final long entries, final long bytes, final long maxEntries, final long maxBytes) {
+      return maxEntries > 0 && entries > maxEntries || maxBytes > 0 && bytes > maxBytes;
+   }
+
+   /**
+    * Schedules a budget check. Repeated invocations within the schedule delay are coalesced into a single run.
+    */
+   void scheduleCheck() {
+      final int state = getState();
+      if (state != Job.SLEEPING && state != Job.WAITING) {
+         schedule(SCHEDULE_DELAY_MS);
+      }
+   }
+}
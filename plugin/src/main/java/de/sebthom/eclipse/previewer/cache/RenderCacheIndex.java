@@ -0,0 +1,204 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.cache.RenderCache.Statistics;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Bounded in-memory metadata tier in front of an on-disk render cache folder, keyed by source path.
+ * <p>
+ * Entries are softly referenced so the JVM can drop them under memory pressure. A dropped entry only means the next lookup
+ * falls back to the disk. Lookups never touch the disk. Entries are dropped by the code paths deleting cache entry dirs,
+ * and lazily if persisting the access time of an entry dir reveals that it was deleted otherwise, e.g. manually.
+ *
+ * @author Sebastian Thomschke
+ */
+final class RenderCacheIndex {
+
+   record Entry(Path entryDir, String renderVariant, Path renderedContentPath, @Nullable String sourceContentHash,
+         long renderedContentLastModified, long renderedContentSize) {
+
+      boolean hasFileExtension(final String fileExtension) {
+         final String fileName = renderedContentPath.getFileName().toString();
+         return fileName.length() > fileExtension.length() //
+               && fileName.endsWith(fileExtension) //
+               && fileName.charAt(fileName.length() - fileExtension.length() - 1) == '.';
+      }
+   }
+
+   /**
+    * The rendered content files of the versions of an entry dir, least recently used first.
+    */
+   private static final class Versions extends LinkedHashMap<String, Path> {
+      private static final long serialVersionUID = 1L;
+
+      final Path entryDir;
+
+      Versions(final Path entryDir) {
+         super(16, 0.75f, true);
+         this.entryDir = entryDir;
+      }
+   }
+
+   private static final int MAX_ENTRIES = 2_000;
+
+   /**
+    * the access time of a cache entry dir is persisted at most once per interval to avoid a disk write on every cache hit
+    */
+   private static final long ACCESS_TIME_RESOLUTION_MS = 60_000;
+
+   private final Map<Path, SoftReference<Entry>> entries = Collections.synchronizedMap(new LRUMap<>(MAX_ENTRIES));
+   private final Map<Path, Long> accessTimesPersisted = Collections.synchronizedMap(new LRUMap<>(MAX_ENTRIES));
+   private final Map<Path, Versions> versions = Collections.synchronizedMap(new LRUMap<>(MAX_ENTRIES));
+
+   private final LongAdder memoryHits = new LongAdder();
+   private final LongAdder diskHits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   void clear() {
+      entries.clear();
+      accessTimesPersisted.clear();
+      versions.clear();
+   }
+
+   @Nullable
+   Entry get(final Path sourcePath) {
+      final var ref = entries.get(sourcePath);
+      if (ref == null)
+         return null;
+      final var entry = ref.get();
+      if (entry == null) {
+         entries.remove(sourcePath, ref);
+      }
+      return entry;
+   }
+
+   /**
+    * @return the rendered content file of the given version or {@code null} if the version is not known
+    */
+   @Nullable
+   Path getVersion(final Path sourcePath, final Path entryDir, final String versionFileName) {
+      synchronized (versions) {
+         final var versionsOfSource = versions.get(sourcePath);
+         return versionsOfSource == null || !versionsOfSource.entryDir.equals(entryDir) ? null : versionsOfSource.get(versionFileName);
+      }
+   }
+
+   /**
+    * @return true if the versions of the given entry dir are tracked, i.e. were registered via
+    *         {@link #putVersion(Path, Path, Path, int)} since the last invalidation
+    */
+   boolean hasVersions(final Path sourcePath, final Path entryDir) {
+      final var versionsOfSource = versions.get(sourcePath);
+      return versionsOfSource != null && versionsOfSource.entryDir.equals(entryDir);
+   }
+
+   /**
+    * Registers the given rendered content file as the most recently used version of the given entry dir. Tracking another
+    * entry dir of the same source, e.g. after the render variant changed, discards the versions tracked so far.
+    *
+    * @return the files of the least recently used versions exceeding the given max, which must be deleted by the caller
+    */
+   List<Path> putVersion(final Path sourcePath, final Path entryDir, final Path versionFile, final int maxVersions) {
+      synchronized (versions) {
+         var versionsOfSource = versions.get(sourcePath);
+         if (versionsOfSource == null || !versionsOfSource.entryDir.equals(entryDir)) {
+            versionsOfSource = new Versions(entryDir);
+            versions.put(sourcePath, versionsOfSource);
+         }
+         versionsOfSource.put(versionFile.getFileName().toString(), versionFile);
+         if (versionsOfSource.size() <= maxVersions)
+            return Collections.emptyList();
+
+         final var evicted = new ArrayList<Path>(versionsOfSource.size() - maxVersions);
+         for (final var it = versionsOfSource.values().iterator(); versionsOfSource.size() > maxVersions;) {
+            evicted.add(it.next());
+            it.remove();
+         }
+         return evicted;
+      }
+   }
+
+   Statistics getStatistics() {
+      return new Statistics(memoryHits.sum(), diskHits.sum(), misses.sum());
+   }
+
+   void put(final Path sourcePath, final Entry entry) {
+      entries.put(sourcePath, new SoftReference<>(entry));
+   }
+
+   /**
+    * Persists the access time of the given cache entry dir as its last modified time, which is used by the
+    * {@link RenderCacheEvictor} to determine the least recently used entries.
+    */
+   void recordAccess(final Path cacheEntryDir) {
+      final long now = System.currentTimeMillis();
+      final Long persistedAt = accessTimesPersisted.get(cacheEntryDir);
+      if (persistedAt != null && now - persistedAt < ACCESS_TIME_RESOLUTION_MS)
+         return;
+      accessTimesPersisted.put(cacheEntryDir, now);
+      try {
+         Files.setLastModifiedTime(cacheEntryDir, FileTime.fromMillis(now));
+      } catch (final NoSuchFileException ex) {
+         // entry was deleted concurrently or externally
+         removeEntryDir(cacheEntryDir);
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   void recordDiskHit() {
+      diskHits.increment();
+   }
+
+   void recordMemoryHit() {
+      memoryHits.increment();
+   }
+
+   void recordMiss() {
+      misses.increment();
+   }
+
+   void remove(final Path sourcePath) {
+      entries.remove(sourcePath);
+      versions.remove(sourcePath);
+   }
+
+   /**
+    * Drops the entries and versions stored in the given cache entry dir or its render variant sub dirs, e.g. because it is
+    * deleted.
+    */
+   void removeEntryDir(final Path cacheEntryDir) {
+      accessTimesPersisted.remove(cacheEntryDir);
+      synchronized (entries) {
+         entries.values().removeIf(ref -> {
+            final var entry = ref.get();
+            return entry == null || entry.entryDir().startsWith(cacheEntryDir);
+         });
+      }
+      synchronized (versions) {
+         versions.values().removeIf(versionsOfSource -> versionsOfSource.entryDir.startsWith(cacheEntryDir));
+      }
+   }
+}
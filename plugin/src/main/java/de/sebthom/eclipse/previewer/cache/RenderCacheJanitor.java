@@ -0,0 +1,140 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.sebthom.eclipse.previewer.Plugin;
+
+/**
+ * Background job that removes cache entries of a render cache folder whose source file no longer exists.
+ * <p>
+ * Deleted workspace files are reported via {@link #sourceRemoved(Path)} and invalidated incrementally. A full scan of the
+ * folder is only performed once per session, in parallel batches.
+ *
+ * @author Sebastian Thomschke
+ */
+final class RenderCacheJanitor extends Job {
+
+   private static final int BATCH_SIZE = 256;
+   private static final long FULL_SCAN_DELAY_MS = 10_000;
+   private static final long SOURCE_REMOVED_DELAY_MS = 500;
+
+   /**
+    * entries modified more recently may still be written to and are never considered stale
+    */
+   private static final long MIN_ENTRY_AGE_MS = 60_000;
+
+   private final Path cacheRoot;
+   private final RenderCacheIndex index;
+   private final Queue<Path> removedSourcePaths = new ConcurrentLinkedQueue<>();
+   private volatile boolean isFullScanPending;
+
+   RenderCacheJanitor(final Path cacheRoot, final RenderCacheIndex index) {
+      super("Removing stale entries of render cache " + cacheRoot.getFileName());
+      this.cacheRoot = cacheRoot;
+      this.index = index;
+      setSystem(true);
+      setPriority(Job.DECORATE);
+   }
+
+   private void deleteCacheEntryDir(final Path cacheEntryDir) {
+      Plugin.log().info("Deleting stale cache dir [{0}]...", cacheEntryDir);
+      index.removeEntryDir(cacheEntryDir);
+      try {
+         FileUtils.deleteDirectory(cacheEntryDir.toFile());
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   private void removeIfStale(final Path cacheEntryDir) {
+      try {
+         if (System.currentTimeMillis() - Files.getLastModifiedTime(cacheEntryDir).toMillis() < MIN_ENTRY_AGE_MS)
+            return;
+
+         final var sourcePathFile = cacheEntryDir.resolve(AbstractRenderCache.SOURCE_PATH_FILE);
+         if (Files.exists(sourcePathFile)) {
+            final var sourcePath = Path.of(Files.readString(sourcePathFile));
+            if (Files.exists(sourcePath))
+               return;
+            index.remove(sourcePath);
+         }
+         deleteCacheEntryDir(cacheEntryDir);
+      } catch (final NoSuchFileException ex) {
+         // entry was deleted concurrently
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   private IStatus removeStaleCacheEntries(final IProgressMonitor monitor) {
+      final List<Path> batch = new ArrayList<>(BATCH_SIZE);
+      try (var cacheEntryDirs = Files.newDirectoryStream(cacheRoot, Files::isDirectory)) {
+         for (final Path cacheEntryDir : cacheEntryDirs) {
+            if (monitor.isCanceled())
+               return Status.CANCEL_STATUS;
+            batch.add(cacheEntryDir);
+            if (batch.size() == BATCH_SIZE) {
+               batch.parallelStream().forEach(this::removeIfStale);
+               batch.clear();
+            }
+         }
+         batch.parallelStream().forEach(this::removeIfStale);
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      return Status.OK_STATUS;
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      Path sourcePath;
+      while ((sourcePath = removedSourcePaths.poll()) != null) {
+         if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
+         index.remove(sourcePath);
+         // removes the entries of all render variants
+         final var sourceDir = AbstractRenderCache.getSourceDir(cacheRoot, sourcePath);
+         if (Files.isDirectory(sourceDir)) {
+            deleteCacheEntryDir(sourceDir);
+         }
+      }
+
+      if (isFullScanPending) {
+         isFullScanPending = false;
+         return removeStaleCacheEntries(monitor);
+      }
+      return Status.OK_STATUS;
+   }
+
+   void scheduleFullScan() {
+      isFullScanPending = true;
+      schedule(FULL_SCAN_DELAY_MS);
+   }
+
+   /**
+    * Invalidates the cache entry of the given deleted source file.
+    */
+   void sourceRemoved(final Path sourcePath) {
+      removedSourcePaths.add(sourcePath);
+      schedule(SOURCE_REMOVED_DELAY_MS);
+   }
+}
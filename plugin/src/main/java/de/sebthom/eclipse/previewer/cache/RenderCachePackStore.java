@@ -0,0 +1,786 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.asNonNull;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
+import net.sf.jstuff.core.security.Hash;
+
+/**
+ * Storage of a pack file based render cache folder. Instead of a directory with several small files per entry, rendered
+ * contents are appended to a few large segment files and their locations to a single index file:
+ *
+ * <pre>
+ * cacheRoot/index.dat
+ * cacheRoot/segment-&lt;n&gt;.dat
+ * cacheRoot/materialized/&lt;sha256(slot)&gt;.html
+ * </pre>
+ *
+ * Each entry occupies a slot, e.g. a source path with a render variant, and is identified by a key which additionally
+ * contains the source version. Writing a new key to a slot turns the previous entry of that slot into garbage, which is
+ * reclaimed by a background compaction once it outweighs the live data. Individual files are only materialized for the
+ * entries a browser navigates to, one file per slot.
+ * <p>
+ * The index file is an append-only log that is read into the heap and replayed when the store is opened. A truncated
+ * trailing record, e.g. after a crash, is discarded.
+ * <p>
+ * The compaction copies the live entries into new segment files without holding the store's lock, so the cache remains
+ * usable meanwhile. The new segments and a rewritten index replace the old ones only once complete, if the compaction
+ * fails the old ones are kept.
+ *
+ * @author Sebastian Thomschke
+ */
+final class RenderCachePackStore {
+
+   /**
+    * Encoded content whose bytes are appended to a segment file without copying them into another array.
+    */
+   private static final class EncodedContent extends ByteArrayOutputStream {
+
+      EncodedContent() {
+         super(8_192);
+      }
+
+      ByteBuffer asByteBuffer() {
+         return ByteBuffer.wrap(buf, 0, count);
+      }
+   }
+
+   private record Location(String slot, int segment, long offset, int length, long lastAccessed) {
+
+      Location accessed() {
+         return new Location(slot, segment, offset, length, System.currentTimeMillis());
+      }
+   }
+
+   static final String MATERIALIZED_DIR = "materialized";
+
+   private static final String INDEX_FILE = "index.dat";
+   private static final String SEGMENT_FILE_PREFIX = "segment-";
+   private static final String SEGMENT_FILE_SUFFIX = ".dat";
+   /** segment files written by a running compaction, renamed to segment files once it completed */
+   private static final String COMPACTED_FILE_PREFIX = "compacted-";
+
+   private static final byte RECORD_PUT = 1;
+   private static final byte RECORD_REMOVE = 2;
+
+   private static final long MAX_SEGMENT_SIZE = 16 * FileUtils.ONE_MB;
+   private static final long MIN_GARBAGE_FOR_COMPACTION = 8 * FileUtils.ONE_MB;
+   private static final long COMPACTION_DELAY_MS = 10_000;
+
+   private final Path cacheRoot;
+   private final Path materializedDir;
+   private final Job compactionJob;
+
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+   private final LongAdder memoryHits = new LongAdder();
+   private final LongAdder diskHits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   /* all fields below are guarded by the lock */
+   private final Map<String, Location> locationsByKey = new HashMap<>();
+   private final Map<String, String> keysBySlot = new HashMap<>();
+   private final Map<Integer, FileChannel> segmentReaders = new HashMap<>();
+   private final Map<Path, String> materializedKeys = new HashMap<>();
+   private @Nullable FileChannel indexWriter;
+   private @Nullable FileChannel segmentWriter;
+   private int segmentNo;
+   private long liveBytes;
+   private long garbageBytes;
+   /** incremented whenever all entries are discarded, so a running compaction does not restore them */
+   private long generation;
+
+   RenderCachePackStore(final Path cacheRoot) {
+      this.cacheRoot = cacheRoot;
+      materializedDir = cacheRoot.resolve(MATERIALIZED_DIR);
+      compactionJob = new Job("Compacting render cache " + cacheRoot.getFileName()) {
+         @Override
+         protected IStatus run(final IProgressMonitor monitor) {
+            compact(monitor);
+            return Status.OK_STATUS;
+         }
+      };
+      compactionJob.setSystem(true);
+      compactionJob.setPriority(Job.DECORATE);
+
+      Plugin.log().info("Initializing render cache folder [{0}]...", cacheRoot);
+      lock.writeLock().lock();
+      try {
+         if (Files.isRegularFile(cacheRoot)) {
+            Files.delete(cacheRoot);
+         }
+         Files.createDirectories(materializedDir);
+         // files materialized in a previous session are not tracked and are rewritten on demand
+         FileUtils.cleanDirectory(materializedDir.toFile());
+         load();
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+         clearInternal();
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Discards all entries.
+    */
+   void clear() {
+      lock.writeLock().lock();
+      try {
+         clearInternal();
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private void clearInternal() {
+      generation++;
+      closeChannels();
+      locationsByKey.clear();
+      keysBySlot.clear();
+      materializedKeys.clear();
+      liveBytes = 0;
+      garbageBytes = 0;
+      segmentNo = 0;
+      try {
+         FileUtils.cleanDirectory(cacheRoot.toFile());
+         Files.createDirectories(materializedDir);
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   private void closeChannels() {
+      try {
+         for (final var reader : segmentReaders.values()) {
+            reader.close();
+         }
+         segmentReaders.clear();
+         final var indexWriter = this.indexWriter;
+         if (indexWriter != null) {
+            indexWriter.close();
+            this.indexWriter = null;
+         }
+         final var segmentWriter = this.segmentWriter;
+         if (segmentWriter != null) {
+            segmentWriter.close();
+            this.segmentWriter = null;
+         }
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   /**
+    * Closes all open files. The store is re-opened lazily on the next write.
+    */
+   void dispose() {
+      compactionJob.cancel();
+      lock.writeLock().lock();
+      try {
+         closeChannels();
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Rewrites the live entries into new segments and drops the least recently used entries that exceed the configured
+    * cache budget, see {@link PluginPreferences#getRenderCacheMaxEntries()} and
+    * {@link PluginPreferences#getRenderCacheMaxBytes()}.
+    * <p>
+    * The lock is only held to select the entries to keep and to swap in the new segments and index. Entries written
+    * meanwhile are appended to a new segment and kept as they are, entries replaced or removed meanwhile are dropped.
+    */
+   private void compact(final IProgressMonitor monitor) {
+      final var keptLocations = new ArrayList<Map.Entry<String, Location>>();
+      final List<Integer> oldSegmentNos;
+      final long generation;
+      lock.writeLock().lock();
+      try {
+         Plugin.log().debug("Compacting render cache folder [{0}]: {1} live bytes, {2} garbage bytes...", cacheRoot, liveBytes,
+            garbageBytes);
+
+         // keep the most recently used entries within budget
+         final long maxEntries = PluginPreferences.getRenderCacheMaxEntries();
+         final long maxBytes = PluginPreferences.getRenderCacheMaxBytes();
+         final var locations = new ArrayList<Map.Entry<String, Location>>(locationsByKey.size());
+         locationsByKey.forEach((key, location) -> locations.add(Map.entry(key, location)));
+         locations.sort(Comparator.comparingLong(e -> -e.getValue().lastAccessed));
+         long keptBytes = 0;
+         for (final var entry : locations) {
+            final var location = entry.getValue();
+            if (maxEntries > 0 && keptLocations.size() >= maxEntries || maxBytes > 0 && keptBytes + location.length > maxBytes) {
+               continue;
+            }
+            keptLocations.add(entry);
+            keptBytes += location.length;
+         }
+
+         // entries written during the compaction are appended to a new segment, which is kept
+         oldSegmentNos = getSegmentNos();
+         closeSegmentWriter();
+         segmentNo = oldSegmentNos.isEmpty() ? segmentNo : oldSegmentNos.get(oldSegmentNos.size() - 1) + 1;
+         generation = this.generation;
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+         return;
+      } finally {
+         lock.writeLock().unlock();
+      }
+
+      final var compactedFiles = new ArrayList<Path>();
+      try {
+         final var compactedLocations = copyToCompactedFiles(keptLocations, compactedFiles, monitor);
+         if (compactedLocations == null || !swapInCompactedFiles(keptLocations, compactedLocations, compactedFiles, oldSegmentNos,
+            generation)) {
+            Plugin.log().debug("Compaction of render cache folder [{0}] was aborted.", cacheRoot);
+         }
+      } catch (final IOException ex) {
+         Plugin.log().warn(ex, "Cannot compact render cache folder [" + cacheRoot + "], keeping the current segments.");
+      } finally {
+         for (final var compactedFile : compactedFiles) {
+            try {
+               Files.deleteIfExists(compactedFile);
+            } catch (final IOException ex) {
+               Plugin.log().error(ex);
+            }
+         }
+      }
+   }
+
+   /**
+    * Copies the content of the given entries to new files, which are added to the given list.
+    *
+    * @return the locations of the copied entries by key, where the segment is the index of the file in the given list, or
+    *         null if the compaction was cancelled
+    */
+   private @Nullable Map<String, Location> copyToCompactedFiles(final List<Map.Entry<String, Location>> locations,
+         final List<Path> compactedFiles, final IProgressMonitor monitor) throws IOException {
+      final var compactedLocations = new HashMap<String, Location>();
+      // the readers of the store are guarded by the lock, so the old segments are read via separate channels
+      final var readers = new HashMap<Integer, FileChannel>();
+      @Nullable
+      FileChannel writer = null;
+      try {
+         // least recently used entries first, so the replay order of the index reflects the access order
+         for (int i = locations.size() - 1; i >= 0; i--) {
+            if (monitor.isCanceled())
+               return null;
+            final var key = locations.get(i).getKey();
+            final var location = locations.get(i).getValue();
+            if (writer == null || writer.size() >= MAX_SEGMENT_SIZE) {
+               if (writer != null) {
+                  writer.close();
+               }
+               final var compactedFile = cacheRoot.resolve(COMPACTED_FILE_PREFIX + compactedFiles.size() + SEGMENT_FILE_SUFFIX);
+               compactedFiles.add(compactedFile);
+               writer = FileChannel.open(compactedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                  StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            final long offset = writer.size();
+            final var content = ByteBuffer.wrap(read(readers, location));
+            while (content.hasRemaining()) {
+               writer.write(content);
+            }
+            compactedLocations.put(key, new Location(location.slot, compactedFiles.size() - 1, offset, location.length,
+               location.lastAccessed));
+         }
+         return compactedLocations;
+      } finally {
+         if (writer != null) {
+            writer.close();
+         }
+         for (final var reader : readers.values()) {
+            reader.close();
+         }
+      }
+   }
+
+   /**
+    * Replaces the given old segments by the given compacted files and rewrites the index.
+    *
+    * @param keptLocations the locations of the compacted entries at the time the compaction started
+    * @param compactedLocations the locations of the compacted entries within the compacted files
+    * @return false if the store was cleared meanwhile
+    */
+   private boolean swapInCompactedFiles(final List<Map.Entry<String, Location>> keptLocations,
+         final Map<String, Location> compactedLocations, final List<Path> compactedFiles, final List<Integer> oldSegmentNos,
+         final long generation) throws IOException {
+      lock.writeLock().lock();
+      try {
+         if (generation != this.generation)
+            return false;
+
+         final int firstCompactedSegmentNo = segmentNo + 1;
+         final var newLocationsByKey = new HashMap<String, Location>();
+         // compacted entries that were neither replaced nor removed meanwhile
+         for (final var kept : keptLocations) {
+            final var location = locationsByKey.get(kept.getKey());
+            final var keptLocation = kept.getValue();
+            if (location != null && location.segment == keptLocation.segment && location.offset == keptLocation.offset) {
+               final var compacted = asNonNull(compactedLocations.get(kept.getKey()));
+               newLocationsByKey.put(kept.getKey(), new Location(location.slot, firstCompactedSegmentNo + compacted.segment,
+                  compacted.offset, compacted.length, location.lastAccessed));
+            }
+         }
+         // entries written meanwhile
+         locationsByKey.forEach((key, location) -> {
+            if (!oldSegmentNos.contains(location.segment)) {
+               newLocationsByKey.put(key, location);
+            }
+         });
+
+         final var newIndexRecords = new ArrayList<>(newLocationsByKey.entrySet());
+         newIndexRecords.sort(Comparator.comparingLong(e -> e.getValue().lastAccessed));
+         final Path tmpIndexFile = cacheRoot.resolve(INDEX_FILE + ".tmp");
+         int renamedFiles = 0;
+         try {
+            for (; renamedFiles < compactedFiles.size(); renamedFiles++) {
+               moveAtomically(compactedFiles.get(renamedFiles), getSegmentFile(firstCompactedSegmentNo + renamedFiles));
+            }
+            try (var tmpIndexWriter = FileChannel.open(tmpIndexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+               for (final var record : newIndexRecords) {
+                  writeRecord(tmpIndexWriter, RECORD_PUT, record.getKey(), record.getValue());
+               }
+            }
+            final var indexWriter = this.indexWriter;
+            if (indexWriter != null) {
+               indexWriter.close();
+               this.indexWriter = null;
+            }
+            moveAtomically(tmpIndexFile, cacheRoot.resolve(INDEX_FILE));
+         } catch (final IOException ex) {
+            // the old index and segments are still complete, so only the files written by the compaction are removed
+            Files.deleteIfExists(tmpIndexFile);
+            for (int i = 0; i < renamedFiles; i++) {
+               Files.deleteIfExists(getSegmentFile(firstCompactedSegmentNo + i));
+            }
+            throw ex;
+         }
+
+         // the index now refers to the compacted segments only, so failing to delete an old segment only leaves garbage
+         closeSegmentWriter();
+         segmentNo = firstCompactedSegmentNo + compactedFiles.size();
+         for (final int oldSegmentNo : oldSegmentNos) {
+            try {
+               final var reader = segmentReaders.remove(oldSegmentNo);
+               if (reader != null) {
+                  reader.close();
+               }
+               Files.deleteIfExists(getSegmentFile(oldSegmentNo));
+            } catch (final IOException ex) {
+               Plugin.log().error(ex);
+            }
+         }
+         locationsByKey.clear();
+         locationsByKey.putAll(newLocationsByKey);
+         keysBySlot.clear();
+         liveBytes = 0;
+         for (final var entry : newLocationsByKey.entrySet()) {
+            keysBySlot.put(entry.getValue().slot, entry.getKey());
+            liveBytes += entry.getValue().length;
+         }
+         for (final var it = materializedKeys.entrySet().iterator(); it.hasNext();) {
+            final var materialized = it.next();
+            if (!locationsByKey.containsKey(materialized.getValue())) {
+               try {
+                  Files.deleteIfExists(materialized.getKey());
+               } catch (final IOException ex) {
+                  Plugin.log().error(ex);
+               }
+               it.remove();
+            }
+         }
+         // e.g. entries of the segments written meanwhile that were replaced meanwhile
+         long segmentBytes = 0;
+         for (final int segmentNo : getSegmentNos()) {
+            segmentBytes += Files.size(getSegmentFile(segmentNo));
+         }
+         garbageBytes = Math.max(0, segmentBytes - liveBytes);
+         Plugin.log().debug("Compacted render cache folder [{0}] to {1} entries.", cacheRoot, locationsByKey.size());
+         return true;
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private void closeSegmentWriter() throws IOException {
+      final var segmentWriter = this.segmentWriter;
+      if (segmentWriter != null) {
+         this.segmentWriter = null;
+         segmentWriter.close();
+      }
+   }
+
+   RenderCache.Statistics getStatistics() {
+      return new RenderCache.Statistics(memoryHits.sum(), diskHits.sum(), misses.sum());
+   }
+
+   void recordDiskHit() {
+      diskHits.increment();
+   }
+
+   void recordMemoryHit() {
+      memoryHits.increment();
+   }
+
+   void recordMiss() {
+      misses.increment();
+   }
+
+   /**
+    * @return the number of live entries
+    */
+   int size() {
+      lock.readLock().lock();
+      try {
+         return locationsByKey.size();
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private List<Integer> getSegmentNos() throws IOException {
+      final var segmentNos = new ArrayList<Integer>();
+      try (var segmentFiles = Files.newDirectoryStream(cacheRoot, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+         for (final Path segmentFile : segmentFiles) {
+            final var fileName = segmentFile.getFileName().toString();
+            try {
+               segmentNos.add(Integer.valueOf(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length()
+                     - SEGMENT_FILE_SUFFIX.length())));
+            } catch (final NumberFormatException ex) {
+               Files.delete(segmentFile);
+            }
+         }
+      }
+      segmentNos.sort(null);
+      return segmentNos;
+   }
+
+   private Path getSegmentFile(final int segmentNo) {
+      return cacheRoot.resolve(SEGMENT_FILE_PREFIX + segmentNo + SEGMENT_FILE_SUFFIX);
+   }
+
+   /**
+    * Replays the index file.
+    */
+   private void load() throws IOException {
+      // files of a compaction that did not complete, e.g. because the IDE was terminated
+      try (var compactedFiles = Files.newDirectoryStream(cacheRoot, COMPACTED_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+         for (final Path compactedFile : compactedFiles) {
+            Files.delete(compactedFile);
+         }
+      }
+
+      final Path indexFile = cacheRoot.resolve(INDEX_FILE);
+      final var segmentSizes = new HashMap<Integer, Long>();
+      for (final int segmentNo : getSegmentNos()) {
+         segmentSizes.put(segmentNo, Files.size(getSegmentFile(segmentNo)));
+         this.segmentNo = segmentNo;
+      }
+      if (!Files.exists(indexFile))
+         return;
+
+      // the index is read into the heap instead of being memory-mapped, since a mapped file cannot be truncated or replaced
+      // on Windows until the mapping is garbage collected
+      final ByteBuffer buf;
+      try (var indexReader = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+         final long indexSize = indexReader.size();
+         if (indexSize > Integer.MAX_VALUE)
+            throw new IOException("Render cache index [" + indexFile + "] is too large: " + indexSize + " bytes");
+         buf = ByteBuffer.allocate((int) indexSize);
+         while (buf.hasRemaining()) {
+            if (indexReader.read(buf) < 0) {
+               break;
+            }
+         }
+         buf.flip();
+      }
+
+      long validIndexSize = 0;
+      try {
+         // entries loaded from disk are less recently used than any entry accessed in this session
+         long accessOrder = 0;
+         while (buf.hasRemaining()) {
+            final byte recordType = buf.get();
+            final String key = readString(buf);
+            if (recordType == RECORD_PUT) {
+               final String slot = readString(buf);
+               final var location = new Location(slot, buf.getInt(), buf.getLong(), buf.getInt(), ++accessOrder);
+               final Long segmentSize = segmentSizes.get(location.segment);
+               if (segmentSize != null && location.offset >= 0 && location.length >= 0
+                     && location.offset + location.length <= segmentSize) {
+                  unlink(slot);
+                  locationsByKey.put(key, location);
+                  keysBySlot.put(slot, key);
+                  liveBytes += location.length;
+               }
+            } else if (recordType == RECORD_REMOVE) {
+               final var location = locationsByKey.get(key);
+               if (location != null) {
+                  unlink(location.slot);
+               }
+            } else
+               throw new IOException("Corrupt render cache index [" + indexFile + "] at position " + validIndexSize);
+            validIndexSize = buf.position();
+         }
+      } catch (final BufferUnderflowException ex) {
+         Plugin.log().debug("Discarding truncated record of render cache index [{0}] at position {1}", indexFile, validIndexSize);
+      }
+
+      if (validIndexSize < Files.size(indexFile)) {
+         try (var indexWriter = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            indexWriter.truncate(validIndexSize);
+         }
+      }
+      Plugin.log().debug("Loaded {0} entries of render cache folder [{1}].", locationsByKey.size(), cacheRoot);
+   }
+
+   /**
+    * Writes the entry with the given key to the materialized file of its slot, unless that file already holds it.
+    *
+    * @return the materialized file or {@code null} if no entry with the given key exists
+    */
+   @Nullable
+   Path materialize(final String key, final String fileExtension) throws IOException {
+      lock.writeLock().lock();
+      try {
+         final var location = locationsByKey.get(key);
+         if (location == null)
+            return null;
+
+         locationsByKey.put(key, location.accessed());
+         final Path materializedFile = materializedDir.resolve(Hash.SHA256.hash(location.slot) + "." + fileExtension);
+         if (key.equals(materializedKeys.get(materializedFile)) && Files.exists(materializedFile))
+            return materializedFile;
+
+         Files.createDirectories(materializedDir);
+         final var tmpFile = Files.createTempFile(materializedDir, "." + materializedFile.getFileName(), ".tmp");
+         try {
+            Files.write(tmpFile, read(segmentReaders, location));
+            moveAtomically(tmpFile, materializedFile);
+         } finally {
+            Files.deleteIfExists(tmpFile);
+         }
+         materializedKeys.put(materializedFile, key);
+         return materializedFile;
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private static void moveAtomically(final Path source, final Path target) throws IOException {
+      try {
+         Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (final AtomicMoveNotSupportedException ex) {
+         Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   /**
+    * Stores the given content under the given key, replacing the current entry of the given slot.
+    * <p>
+    * The content is encoded to UTF-8 while it is written, so besides the encoded bytes no copy of it is held in memory.
+    * The bytes are only appended to the segment file once complete, so writing the content does not block other
+    * accesses to this store.
+    *
+    * @return false if no content was written, in which case the current entry of the slot is left untouched
+    */
+   boolean put(final String slot, final String key, final AbstractRenderCache.ContentWriter content) throws IOException {
+      final var bytes = new EncodedContent();
+      final var event = new RenderEvents.RenderCacheWrite();
+      event.begin();
+      try (var out = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+         event.written = content.writeTo(out);
+      } finally {
+         event.end();
+         if (event.shouldCommit()) {
+            event.target = cacheRoot + "#" + slot;
+            event.bytes = bytes.size();
+            event.commit();
+         }
+      }
+      if (!event.written)
+         return false;
+      lock.writeLock().lock();
+      try {
+         unlink(slot);
+         final var location = appendToSegment(slot, bytes.asByteBuffer(), System.currentTimeMillis());
+         writeRecord(getIndexWriter(), RECORD_PUT, key, location);
+         locationsByKey.put(key, location);
+         keysBySlot.put(slot, key);
+         liveBytes += location.length;
+      } finally {
+         lock.writeLock().unlock();
+      }
+      scheduleCompactionIfRequired();
+      return true;
+   }
+
+   /**
+    * @param readers the open segment files by segment number, to which the segment of the given location is added if required
+    */
+   private byte[] read(final Map<Integer, FileChannel> readers, final Location location) throws IOException {
+      var reader = readers.get(location.segment);
+      if (reader == null) {
+         reader = FileChannel.open(getSegmentFile(location.segment), StandardOpenOption.READ);
+         readers.put(location.segment, reader);
+      }
+      final var buf = ByteBuffer.allocate(location.length);
+      while (buf.hasRemaining()) {
+         if (reader.read(buf, location.offset + buf.position()) < 0)
+            throw new EOFException("Unexpected end of render cache segment " + getSegmentFile(location.segment));
+      }
+      return buf.array();
+   }
+
+   /**
+    * @throws BufferUnderflowException if the string is truncated or its length is corrupt
+    */
+   private static String readString(final ByteBuffer buf) {
+      final int length = buf.getInt();
+      if (length < 0 || length > buf.remaining())
+         throw new BufferUnderflowException();
+      final var bytes = new byte[length];
+      buf.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Removes the entry of the given slot.
+    */
+   void remove(final String slot) throws IOException {
+      lock.writeLock().lock();
+      try {
+         final var key = keysBySlot.get(slot);
+         if (key != null) {
+            unlink(slot);
+            writeRecord(getIndexWriter(), RECORD_REMOVE, key, null);
+         }
+      } finally {
+         lock.writeLock().unlock();
+      }
+      scheduleCompactionIfRequired();
+   }
+
+   private void scheduleCompactionIfRequired() {
+      final boolean isCompactionRequired;
+      lock.readLock().lock();
+      try {
+         final long maxEntries = PluginPreferences.getRenderCacheMaxEntries();
+         final long maxBytes = PluginPreferences.getRenderCacheMaxBytes();
+         isCompactionRequired = garbageBytes > MIN_GARBAGE_FOR_COMPACTION && garbageBytes > liveBytes //
+               || maxEntries > 0 && locationsByKey.size() > maxEntries //
+               || maxBytes > 0 && liveBytes > maxBytes;
+      } finally {
+         lock.readLock().unlock();
+      }
+      if (isCompactionRequired) {
+         final int state = compactionJob.getState();
+         if (state != Job.SLEEPING && state != Job.WAITING) {
+            compactionJob.schedule(COMPACTION_DELAY_MS);
+         }
+      }
+   }
+
+   /**
+    * Detaches the current entry from the given slot and accounts its content as garbage.
+    */
+   private void unlink(final String slot) {
+      final var key = keysBySlot.remove(slot);
+      if (key == null)
+         return;
+      final var location = locationsByKey.remove(key);
+      if (location != null) {
+         liveBytes -= location.length;
+         garbageBytes += location.length;
+      }
+   }
+
+   private FileChannel getIndexWriter() throws IOException {
+      var indexWriter = this.indexWriter;
+      if (indexWriter == null) {
+         indexWriter = FileChannel.open(cacheRoot.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+         this.indexWriter = indexWriter;
+      }
+      return indexWriter;
+   }
+
+   private Location appendToSegment(final String slot, final ByteBuffer content, final long lastAccessed) throws IOException {
+      var segmentWriter = this.segmentWriter;
+      if (segmentWriter != null && segmentWriter.size() >= MAX_SEGMENT_SIZE) {
+         segmentWriter.close();
+         segmentWriter = null;
+         segmentNo++;
+      }
+      if (segmentWriter == null) {
+         segmentWriter = FileChannel.open(getSegmentFile(segmentNo), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+         this.segmentWriter = segmentWriter;
+      }
+      final long offset = segmentWriter.size();
+      final int length = content.remaining();
+      while (content.hasRemaining()) {
+         segmentWriter.write(content);
+      }
+      return new Location(slot, segmentNo, offset, length, lastAccessed);
+   }
+
+   private static void writeRecord(final FileChannel indexWriter, final byte recordType, final String key,
+         final @Nullable Location location) throws IOException {
+      final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+      final byte[] slotBytes = location == null ? new byte[0] : location.slot.getBytes(StandardCharsets.UTF_8);
+      final var buf = ByteBuffer.allocate(1 + 4 + keyBytes.length + (location == null ? 0 : 4 + slotBytes.length + 4 + 8 + 4));
+      buf.put(recordType);
+      buf.putInt(keyBytes.length).put(keyBytes);
+      if (location != null) {
+         buf.putInt(slotBytes.length).put(slotBytes);
+         buf.putInt(location.segment).putLong(location.offset).putInt(location.length);
+      }
+      buf.flip();
+      while (buf.hasRemaining()) {
+         indexWriter.write(buf);
+      }
+   }
+}
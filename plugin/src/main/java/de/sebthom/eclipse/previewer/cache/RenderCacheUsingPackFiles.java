@@ -0,0 +1,168 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Render cache that keeps its entries in pack files, see {@link RenderCachePackStore}, instead of a directory per entry.
+ * <p>
+ * Entries are identified by the {@link ContentSource#contentFingerprint()} of the source. For sources that are
+ * {@link ContentSource#isSynced() synced} with the file system the fingerprint is remembered per last modified time, so
+ * unchanged files are not read again.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderCacheUsingPackFiles implements RenderCache {
+
+   private record SyncedSourceState(long lastModified, String sourceContentHash) {
+   }
+
+   private final Path cacheRoot;
+   private final RenderCachePackStore store;
+   private final Function<ContentSource, String> renderVariantProvider;
+   private final Map<Path, SyncedSourceState> syncedSourceStates = Collections.synchronizedMap(new LRUMap<>(2_000));
+
+   /**
+    * @param renderVariantProvider determines the render variant of a source, e.g. the renderer and its settings, see
+    *           {@link de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer#getSettingsFingerprint()}
+    */
+   public RenderCacheUsingPackFiles(final String cacheFolderName, final Function<ContentSource, String> renderVariantProvider) {
+      this.renderVariantProvider = renderVariantProvider;
+      cacheRoot = RenderCaches.CACHE_ROOT.resolve(cacheFolderName);
+      store = RenderCaches.getPackStore(cacheRoot);
+   }
+
+   @Override
+   public @Nullable Path computeIfAbsent(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
+         throws IOException {
+      final var renderVariant = renderVariantProvider.apply(source);
+      final var slot = getSlot(source.path(), renderVariant, fileExtension);
+
+      // for unchanged synced sources the entry is located without reading the source
+      final var knownSourceContentHash = getKnownSourceContentHash(source);
+      if (knownSourceContentHash != null) {
+         final var renderedContentPath = store.materialize(getKey(slot, knownSourceContentHash), fileExtension);
+         if (renderedContentPath != null) {
+            store.recordMemoryHit();
+            return renderedContentPath;
+         }
+      }
+
+      // snapshot once so that fingerprint and renderer see the same content, which is read only once
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var key = getKey(slot, sourceContentHash);
+      final var renderedContentPath = store.materialize(key, fileExtension);
+      if (renderedContentPath != null) {
+         store.recordDiskHit();
+         rememberSourceContentHash(snapshot, sourceContentHash);
+         return renderedContentPath;
+      }
+      store.recordMiss();
+
+      return RenderCoordinator.renderOnce(cacheRoot + "|" + key, renderer.isSpeculative(), //
+         () -> store.materialize(key, fileExtension), () -> {
+         if (!store.put(slot, key, out -> renderer.render(snapshot, out)))
+            return null;
+         rememberSourceContentHash(snapshot, sourceContentHash);
+         return store.materialize(key, fileExtension);
+      });
+   }
+
+   @Override
+   public @Nullable Path get(final ContentSource source, final String fileExtension) {
+      try {
+         final var slot = getSlot(source.path(), renderVariantProvider.apply(source), fileExtension);
+         final var knownSourceContentHash = getKnownSourceContentHash(source);
+         final var sourceContentHash = knownSourceContentHash == null ? source.contentFingerprint() : knownSourceContentHash;
+         final var renderedContentPath = store.materialize(getKey(slot, sourceContentHash), fileExtension);
+         if (renderedContentPath != null) {
+            if (knownSourceContentHash == null) {
+               store.recordDiskHit();
+            } else {
+               store.recordMemoryHit();
+            }
+            return renderedContentPath;
+         }
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      store.recordMiss();
+      return null;
+   }
+
+   private String getKey(final String slot, final String sourceContentHash) {
+      return slot + "|" + sourceContentHash;
+   }
+
+   private @Nullable String getKnownSourceContentHash(final ContentSource source) throws IOException {
+      if (!source.isSynced())
+         return null;
+      final var state = syncedSourceStates.get(source.path());
+      return state != null && state.lastModified == source.lastModified() ? state.sourceContentHash : null;
+   }
+
+   private String getSlot(final Path sourcePath, final String renderVariant, final String fileExtension) {
+      return sourcePath + "|" + renderVariant + "|" + fileExtension;
+   }
+
+   @Override
+   public Statistics getStatistics() {
+      return store.getStatistics();
+   }
+
+   @Override
+   public Path put(final ContentSource source, final CharSequence renderedContent, final String fileExtension) throws IOException {
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var slot = getSlot(snapshot.path(), renderVariantProvider.apply(snapshot), fileExtension);
+      final var key = getKey(slot, sourceContentHash);
+      store.put(slot, key, out -> {
+         out.append(renderedContent);
+         return true;
+      });
+      rememberSourceContentHash(snapshot, sourceContentHash);
+      final var renderedContentPath = store.materialize(key, fileExtension);
+      if (renderedContentPath == null)
+         throw new IOException("Render cache entry [" + key + "] was evicted while being written");
+      return renderedContentPath;
+   }
+
+   private void rememberSourceContentHash(final ContentSource source, final String sourceContentHash) throws IOException {
+      if (source.isSynced()) {
+         syncedSourceStates.put(source.path(), new SyncedSourceState(source.lastModified(), sourceContentHash));
+      }
+   }
+
+   @Override
+   public @Nullable Path replace(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
+         throws IOException {
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var slot = getSlot(snapshot.path(), renderVariantProvider.apply(snapshot), fileExtension);
+      final var key = getKey(slot, sourceContentHash);
+      return RenderCoordinator.renderOnce(cacheRoot + "|" + key, renderer.isSpeculative(), () -> {
+         if (!store.put(slot, key, out -> renderer.render(snapshot, out))) {
+            store.remove(slot);
+            return null;
+         }
+         rememberSourceContentHash(snapshot, sourceContentHash);
+         return store.materialize(key, fileExtension);
+      });
+   }
+}
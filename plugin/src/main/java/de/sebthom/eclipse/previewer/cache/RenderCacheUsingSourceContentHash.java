@@ -6,77 +6,125 @@
  */
 package de.sebthom.eclipse.previewer.cache;
 
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.asNonNull;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jdt.annotation.Nullable;
 
 import de.sebthom.eclipse.previewer.Plugin;
 import de.sebthom.eclipse.previewer.api.ContentSource;
-import net.sf.jstuff.core.functional.ThrowingFunction;
-import net.sf.jstuff.core.functional.ThrowingSupplier;
-import net.sf.jstuff.core.security.Hash;
 
 /**
  * @author Sebastian Thomschke
  */
 public final class RenderCacheUsingSourceContentHash extends AbstractRenderCache {
 
-   private static final Path SOURCE_CONTENT_HASH_FILE = Path.of("source_content.sha1");
+   /**
+    * Holds the versioned {@link ContentSource#contentFingerprint()}. Entries written by older plugin versions only have a
+    * {@link #LEGACY_SOURCE_CONTENT_HASH_FILE} and are treated as misses.
+    */
+   private static final Path SOURCE_CONTENT_HASH_FILE = Path.of("source_content.hash");
+   private static final Path LEGACY_SOURCE_CONTENT_HASH_FILE = Path.of("source_content.sha1");
 
    public RenderCacheUsingSourceContentHash(final String cacheFolderName) {
-      super(cacheFolderName);
+      this(cacheFolderName, source -> "");
+   }
+
+   /**
+    * @param renderVariantProvider determines the render variant of a source, e.g. the renderer and its settings, see
+    *           {@link de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer#getSettingsFingerprint()}
+    */
+   public RenderCacheUsingSourceContentHash(final String cacheFolderName, final Function<ContentSource, String> renderVariantProvider) {
+      super(cacheFolderName, renderVariantProvider);
    }
 
    @Override
-   public @Nullable Path computeIfAbsent(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path computeIfAbsent(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      try (var sourceContent = source.contentAsInputStream()) {
-         final var sourceContentHash = Hash.SHA1.hash(sourceContent);
-         final var renderedContentPath = get(source, () -> sourceContentHash, fileExtension);
-         if (renderedContentPath != null)
-            return renderedContentPath;
-
-         final var renderedContent = renderer.apply(source);
-         return renderedContent == null //
-               ? null
-               : put(source, renderedContent, () -> sourceContentHash, fileExtension);
-      }
+      // snapshot once so that fingerprint and renderer see the same content, which is read only once
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var renderVariant = getRenderVariant(snapshot);
+      final var renderedContentPath = get(snapshot, sourceContentHash, renderVariant, fileExtension, true);
+      if (renderedContentPath != null)
+         return renderedContentPath;
+
+      return RenderCoordinator.renderOnce(getRenderKey(snapshot.path(), renderVariant, sourceContentHash, fileExtension), //
+         renderer.isSpeculative(), () -> get(snapshot, sourceContentHash, renderVariant, fileExtension, false), //
+         () -> put(snapshot, out -> renderer.render(snapshot, out), sourceContentHash, renderVariant, fileExtension));
    }
 
    @Override
    public @Nullable Path get(final ContentSource source, final String fileExtension) {
-      return get(source, () -> {
-         try (var sourceContent = source.contentAsInputStream()) {
-            return Hash.SHA1.hash(sourceContent);
-         }
-      }, fileExtension);
+      try {
+         return get(source, source.contentFingerprint(), getRenderVariant(source), fileExtension, true);
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      index.recordMiss();
+      return null;
    }
 
-   private @Nullable Path get(final ContentSource source, final ThrowingSupplier<String, IOException> sourceContentHashProvider,
-         final String fileExtension) {
-      final var cacheDir = getCacheEntryDir(source.path());
-      if (!Files.exists(cacheDir))
-         return null;
-
+   /**
+    * @param recordStatistics false if the lookup re-checks a previously counted miss, see {@link RenderCoordinator}
+    */
+   private @Nullable Path get(final ContentSource source, final String sourceContentHash, final String renderVariant,
+         final String fileExtension, final boolean recordStatistics) {
+      final Path sourcePath = source.path();
       try {
+         final var entry = index.get(sourcePath);
+         if (entry != null && entry.hasFileExtension(fileExtension) && entry.renderVariant().equals(renderVariant)) {
+            if (sourceContentHash.equals(entry.sourceContentHash())) {
+               if (recordStatistics) {
+                  index.recordMemoryHit();
+               }
+               entryAccessed(entry.entryDir());
+               return entry.renderedContentPath();
+            }
+            // the index reflects the latest write, so a hash mismatch is a definite miss
+            if (recordStatistics) {
+               index.recordMiss();
+            }
+            return null;
+         }
+
+         final var cacheDir = getCacheEntryDir(sourcePath, renderVariant);
          final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
-         if (!Files.isRegularFile(renderedContentPath))
+         if (!Files.isRegularFile(renderedContentPath)) {
+            if (recordStatistics) {
+               index.recordMiss();
+            }
             return null;
+         }
 
          // invalidate the cache if hash mismatch
          final var sourceContentHashPath = cacheDir.resolve(SOURCE_CONTENT_HASH_FILE);
-         if (!sourceContentHashProvider.get().equals(Files.readString(sourceContentHashPath)))
+         if (!Files.isRegularFile(sourceContentHashPath) || !sourceContentHash.equals(Files.readString(sourceContentHashPath))) {
+            if (recordStatistics) {
+               index.recordMiss();
+            }
             return null;
+         }
 
+         index.put(sourcePath, new RenderCacheIndex.Entry(cacheDir, renderVariant, renderedContentPath, sourceContentHash,
+            Files.getLastModifiedTime(renderedContentPath).toMillis(), Files.size(renderedContentPath)));
+         if (recordStatistics) {
+            index.recordDiskHit();
+         }
+         entryAccessed(cacheDir);
          return renderedContentPath;
 
       } catch (final Exception ex) {
          Plugin.log().error(ex);
       }
+      if (recordStatistics) {
+         index.recordMiss();
+      }
       return null;
    }
 
@@ -86,16 +134,20 @@ private Path getRenderedContentFilePath(final Path cacheDir, final String fileEx
 
    @Override
    public Path put(final ContentSource source, final CharSequence renderedContent, final String fileExtension) throws IOException {
-      return put(source, renderedContent, () -> {
-         try (var sourceContent = source.contentAsInputStream()) {
-            return Hash.SHA1.hash(sourceContent);
-         }
-      }, fileExtension);
+      return asNonNull(put(source, out -> {
+         out.append(renderedContent);
+         return true;
+      }, source.contentFingerprint(), getRenderVariant(source), fileExtension));
    }
 
-   private Path put(final ContentSource source, final CharSequence renderedContent,
-         final ThrowingSupplier<String, IOException> sourceContentHashProvider, final String fileExtension) throws IOException {
-      final var cacheDir = getCacheEntryDir(source.path());
+   /**
+    * @return null if no content was written, in which case the entry is removed
+    */
+   private @Nullable Path put(final ContentSource source, final ContentWriter renderedContent, final String sourceContentHash,
+         final String renderVariant, final String fileExtension) throws IOException {
+      final Path sourcePath = source.path();
+      final var cacheDir = getCacheEntryDir(sourcePath, renderVariant);
+      index.remove(sourcePath);
       try {
          Files.createDirectories(cacheDir);
       } catch (final IOException ex) {
@@ -104,28 +156,28 @@ private Path put(final ContentSource source, final CharSequence renderedContent,
       }
 
       final Path renderedContentPath = getRenderedContentFilePath(cacheDir, fileExtension);
-      Files.writeString(cacheDir.resolve(SOURCE_PATH_FILE), source.path().toString());
-      Files.writeString(renderedContentPath, renderedContent);
-      Files.writeString(cacheDir.resolve(SOURCE_CONTENT_HASH_FILE), sourceContentHashProvider.get());
+      writeAtomically(getSourceDir(cacheDir).resolve(SOURCE_PATH_FILE), sourcePath.toString(), null);
+      if (!writeAtomically(renderedContentPath, renderedContent, null)) {
+         remove(sourcePath, cacheDir);
+         return null;
+      }
+      writeAtomically(cacheDir.resolve(SOURCE_CONTENT_HASH_FILE), sourceContentHash, null);
+      Files.deleteIfExists(cacheDir.resolve(LEGACY_SOURCE_CONTENT_HASH_FILE));
+      index.put(sourcePath, new RenderCacheIndex.Entry(cacheDir, renderVariant, renderedContentPath, sourceContentHash,
+         Files.getLastModifiedTime(renderedContentPath).toMillis(), Files.size(renderedContentPath)));
+      entryWritten(cacheDir);
       return renderedContentPath;
    }
 
    @Override
-   public @Nullable Path replace(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path replace(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      try (var sourceContent = source.contentAsInputStream()) {
-         final var sourceContentHash = Hash.SHA1.hash(sourceContent);
-         final var renderedContent = renderer.apply(source);
-         if (renderedContent == null) {
-            final Path cacheDir = getCacheEntryDir(source.path());
-            if (Files.exists(cacheDir)) {
-               FileUtils.deleteDirectory(cacheDir.toFile());
-            }
-            return null;
-         }
-         return put(source, renderedContent, () -> sourceContentHash, fileExtension);
-      }
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var renderVariant = getRenderVariant(snapshot);
+      return RenderCoordinator.renderOnce(getRenderKey(snapshot.path(), renderVariant, sourceContentHash, fileExtension), //
+         renderer.isSpeculative(), //
+         () -> put(snapshot, out -> renderer.render(snapshot, out), sourceContentHash, renderVariant, fileExtension));
    }
 
 }
@@ -6,12 +6,16 @@
  */
 package de.sebthom.eclipse.previewer.cache;
 
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.asNonNull;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.stream.Streams;
@@ -19,11 +23,11 @@
 
 import de.sebthom.eclipse.previewer.Plugin;
 import de.sebthom.eclipse.previewer.api.ContentSource;
-import net.sf.jstuff.core.functional.ThrowingFunction;
-import net.sf.jstuff.core.functional.ThrowingSupplier;
-import net.sf.jstuff.core.security.Hash;
 
 /**
+ * Render cache that keeps the rendered contents of the last versions of a source, so that e.g. undoing an edit in a dirty
+ * editor is served from the cache instead of being rendered again.
+ *
  * @author Sebastian Thomschke
  */
 public final class RenderCacheUsingSourceContentHashWithVersions extends AbstractRenderCache {
@@ -31,118 +35,163 @@ public final class RenderCacheUsingSourceContentHashWithVersions extends Abstrac
    private final int versionsToKeep;
 
    public RenderCacheUsingSourceContentHashWithVersions(final String cacheFolderName, final int versionsToKeep) {
-      super(cacheFolderName);
+      this(cacheFolderName, versionsToKeep, source -> "");
+   }
+
+   /**
+    * @param renderVariantProvider determines the render variant of a source, e.g. the renderer and its settings, see
+    *           {@link de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer#getSettingsFingerprint()}
+    */
+   public RenderCacheUsingSourceContentHashWithVersions(final String cacheFolderName, final int versionsToKeep,
+         final Function<ContentSource, String> renderVariantProvider) {
+      super(cacheFolderName, renderVariantProvider);
       this.versionsToKeep = versionsToKeep < 0 ? 0 : versionsToKeep;
    }
 
-   private Path getRenderedContentFilePath(final Path cacheDir, final ThrowingSupplier<String, IOException> sourceContentHashProvider,
-         final String fileExtension) {
-      return cacheDir.resolve("rendered_content_" + sourceContentHashProvider.get() + "." + fileExtension);
+   private Path getRenderedContentFilePath(final Path cacheDir, final String sourceContentHash, final String fileExtension) {
+      return cacheDir.resolve("rendered_content_" + sourceContentHash + "." + fileExtension);
    }
 
    @Override
-   public @Nullable Path computeIfAbsent(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path computeIfAbsent(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      try (var sourceContent = source.contentAsInputStream()) {
-         final var sourceContentHash = Hash.SHA1.hash(sourceContent);
-         final var renderedContentPath = get(source, () -> sourceContentHash, fileExtension);
-         if (renderedContentPath != null)
-            return renderedContentPath;
-
-         final var renderedContent = renderer.apply(source);
-         return renderedContent == null //
-               ? null
-               : put(source, renderedContent, () -> sourceContentHash, fileExtension);
-      }
+      // snapshot once so that fingerprint and renderer see the same content, which is read only once
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var renderVariant = getRenderVariant(snapshot);
+      final var renderedContentPath = get(snapshot, sourceContentHash, renderVariant, fileExtension, true);
+      if (renderedContentPath != null)
+         return renderedContentPath;
+
+      return RenderCoordinator.renderOnce(getRenderKey(snapshot.path(), renderVariant, sourceContentHash, fileExtension), //
+         renderer.isSpeculative(), () -> get(snapshot, sourceContentHash, renderVariant, fileExtension, false), //
+         () -> put(snapshot, out -> renderer.render(snapshot, out), sourceContentHash, renderVariant, fileExtension));
    }
 
    @Override
    public @Nullable Path get(final ContentSource source, final String fileExtension) {
-      return get(source, () -> {
-         try (var sourceContent = source.contentAsInputStream()) {
-            return Hash.SHA1.hash(sourceContent);
-         }
-      }, fileExtension);
+      try {
+         return get(source, source.contentFingerprint(), getRenderVariant(source), fileExtension, true);
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      index.recordMiss();
+      return null;
    }
 
-   private @Nullable Path get(final ContentSource source, final ThrowingSupplier<String, IOException> sourceContentHashProvider,
-         final String fileExtension) {
-      final var cacheDir = getCacheEntryDir(source.path());
-      if (!Files.exists(cacheDir))
-         return null;
-
+   /**
+    * @param recordStatistics false if the lookup re-checks a previously counted miss, see {@link RenderCoordinator}
+    */
+   private @Nullable Path get(final ContentSource source, final String sourceContentHash, final String renderVariant,
+         final String fileExtension, final boolean recordStatistics) {
+      final Path sourcePath = source.path();
       try {
-         final Path renderedContentPath = getRenderedContentFilePath(cacheDir, sourceContentHashProvider, fileExtension);
-         if (Files.isRegularFile(renderedContentPath))
+         final var entry = index.get(sourcePath);
+         if (entry != null && entry.hasFileExtension(fileExtension) && entry.renderVariant().equals(renderVariant) //
+               && sourceContentHash.equals(entry.sourceContentHash())) {
+            if (recordStatistics) {
+               index.recordMemoryHit();
+            }
+            entryAccessed(entry.entryDir());
+            return entry.renderedContentPath();
+         }
+
+         // older versions, e.g. the buffer state before an edit that is undone, are found in the version index
+         final var cacheDir = getCacheEntryDir(sourcePath, renderVariant);
+         final Path renderedContentPath = getRenderedContentFilePath(cacheDir, sourceContentHash, fileExtension);
+         final var version = index.getVersion(sourcePath, cacheDir, renderedContentPath.getFileName().toString());
+         if (version != null) {
+            if (recordStatistics) {
+               index.recordMemoryHit();
+            }
+            entryAccessed(cacheDir);
+            return version;
+         }
+
+         if (Files.isRegularFile(renderedContentPath)) {
+            addVersion(sourcePath, cacheDir, renderedContentPath);
+            if (recordStatistics) {
+               index.recordDiskHit();
+            }
+            entryAccessed(cacheDir);
             return renderedContentPath;
+         }
       } catch (final Exception ex) {
          Plugin.log().error(ex);
       }
+      if (recordStatistics) {
+         index.recordMiss();
+      }
       return null;
    }
 
    @Override
    public Path put(final ContentSource source, final CharSequence renderedContent, final String fileExtension) throws IOException {
-      return put(source, renderedContent, () -> {
-         try (var sourceContent = source.contentAsInputStream()) {
-            return Hash.SHA1.hash(sourceContent);
-         }
-      }, fileExtension);
+      return asNonNull(put(source, out -> {
+         out.append(renderedContent);
+         return true;
+      }, source.contentFingerprint(), getRenderVariant(source), fileExtension));
    }
 
-   private Path put(final ContentSource source, final CharSequence renderedContent,
-         final ThrowingSupplier<String, IOException> sourceContentHashProvider, final String fileExtension) throws IOException {
-      final var cacheDir = getCacheEntryDir(source.path());
+   /**
+    * @return null if no content was written, in which case the entry is removed
+    */
+   private @Nullable Path put(final ContentSource source, final ContentWriter renderedContent, final String sourceContentHash,
+         final String renderVariant, final String fileExtension) throws IOException {
+      final Path sourcePath = source.path();
+      final var cacheDir = getCacheEntryDir(sourcePath, renderVariant);
       try {
          Files.createDirectories(cacheDir);
       } catch (final IOException ex) {
+         index.remove(sourcePath);
          FileUtils.deleteDirectory(cacheDir.toFile());
          throw ex;
       }
-      if (versionsToKeep == 0) {
-         try (var fileStream = Files.newDirectoryStream(cacheDir, "rendered_content_*")) {
-            fileStream.forEach(file -> {
-               try {
-                  Files.delete(file);
-               } catch (final IOException ex) {
-                  Plugin.log().error(ex);
-               }
-            });
-         }
-      } else {
+
+      final Path renderedContentPath = getRenderedContentFilePath(cacheDir, sourceContentHash, fileExtension);
+      writeAtomically(getSourceDir(cacheDir).resolve(SOURCE_PATH_FILE), sourcePath.toString(), null);
+      if (!writeAtomically(renderedContentPath, renderedContent, null)) {
+         remove(sourcePath, cacheDir);
+         return null;
+      }
+      addVersion(sourcePath, cacheDir, renderedContentPath);
+      index.put(sourcePath, new RenderCacheIndex.Entry(cacheDir, renderVariant, renderedContentPath, sourceContentHash,
+         Files.getLastModifiedTime(renderedContentPath).toMillis(), Files.size(renderedContentPath)));
+      entryWritten(cacheDir);
+      return renderedContentPath;
+   }
+
+   /**
+    * Registers the given version in the index and deletes the least recently used versions exceeding
+    * {@link #versionsToKeep}. The existing versions of an entry dir are only listed once, when it is not yet tracked by the
+    * index, so pruning is O(1) per write.
+    */
+   private void addVersion(final Path sourcePath, final Path cacheDir, final Path renderedContentPath) throws IOException {
+      final int maxVersions = versionsToKeep + 1;
+      final var outdatedVersions = new ArrayList<Path>();
+      if (!index.hasVersions(sourcePath, cacheDir)) {
          try (var fileStream = Files.newDirectoryStream(cacheDir, "rendered_content_*")) {
             final File[] files = Streams.of(fileStream).map(Path::toFile).toArray(File[]::new);
-            if (files.length > versionsToKeep) {
-               Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
-               for (int i = versionsToKeep; i < files.length; i++) {
-                  Files.delete(files[i].toPath());
-               }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (final File file : files) {
+               outdatedVersions.addAll(index.putVersion(sourcePath, cacheDir, file.toPath(), maxVersions));
             }
          }
       }
-
-      final Path renderedContentPath = getRenderedContentFilePath(cacheDir, sourceContentHashProvider, fileExtension);
-      Files.writeString(cacheDir.resolve(SOURCE_PATH_FILE), source.path().toString());
-      Files.writeString(renderedContentPath, renderedContent);
-      return renderedContentPath;
+      outdatedVersions.addAll(index.putVersion(sourcePath, cacheDir, renderedContentPath, maxVersions));
+      for (final Path outdatedVersion : outdatedVersions) {
+         Files.deleteIfExists(outdatedVersion);
+      }
    }
 
    @Override
-   public @Nullable Path replace(final ContentSource source,
-         final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> renderer, final String fileExtension)
+   public @Nullable Path replace(final ContentSource source, final ContentRenderer renderer, final String fileExtension)
          throws IOException {
-      try (var sourceContent = source.contentAsInputStream()) {
-         final var sourceContentHash = Hash.SHA1.hash(sourceContent);
-         final var renderedContent = renderer.apply(source);
-         if (renderedContent == null) {
-            final Path cacheDir = getCacheEntryDir(source.path());
-            if (Files.exists(cacheDir)) {
-               FileUtils.deleteDirectory(cacheDir.toFile());
-            }
-            return null;
-         }
-         return put(source, renderedContent, () -> sourceContentHash, fileExtension);
-      }
+      final var snapshot = source.snapshot();
+      final var sourceContentHash = snapshot.contentFingerprint();
+      final var renderVariant = getRenderVariant(snapshot);
+      return RenderCoordinator.renderOnce(getRenderKey(snapshot.path(), renderVariant, sourceContentHash, fileExtension), //
+         renderer.isSpeculative(), //
+         () -> put(snapshot, out -> renderer.render(snapshot, out), sourceContentHash, renderVariant, fileExtension));
    }
 }
@@ -0,0 +1,84 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.ContentSource;
+
+/**
+ * Background job that writes content rendered into memory to a render cache, so the display of a render does not wait for
+ * the disk.
+ * <p>
+ * Only the latest pending content per source path and file extension is written, i.e. if the job falls behind, e.g. while
+ * the user types, intermediate renders are not persisted.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderCacheWriteBehind extends Job {
+
+   private record PendingWrite(RenderCache renderCache, ContentSource source, CharSequence renderedContent, String fileExtension) {
+   }
+
+   private static final RenderCacheWriteBehind INSTANCE = new RenderCacheWriteBehind();
+
+   /**
+    * Schedules writing the given rendered content to the given render cache.
+    *
+    * @param source must be a snapshot, so its content cannot change until the rendered content is written
+    * @param renderedContent must not be modified afterwards, e.g. the buffer of a completed render
+    */
+   public static void put(final RenderCache renderCache, final ContentSource source, final CharSequence renderedContent,
+         final String fileExtension) {
+      if (!source.isSnapshot())
+         throw new IllegalArgumentException("Source [" + source.path() + "] is not a snapshot.");
+
+      synchronized (INSTANCE.pendingWrites) {
+         INSTANCE.pendingWrites.put(source.path() + "|" + fileExtension, new PendingWrite(renderCache, source, renderedContent,
+            fileExtension));
+      }
+      INSTANCE.schedule();
+   }
+
+   private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+
+   private RenderCacheWriteBehind() {
+      super("Writing rendered content to render cache");
+      setSystem(true);
+      setPriority(Job.DECORATE);
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      while (!monitor.isCanceled()) {
+         final PendingWrite pendingWrite;
+         synchronized (pendingWrites) {
+            final Iterator<PendingWrite> it = pendingWrites.values().iterator();
+            if (!it.hasNext()) {
+               break;
+            }
+            pendingWrite = it.next();
+            it.remove();
+         }
+         try {
+            pendingWrite.renderCache.put(pendingWrite.source, pendingWrite.renderedContent, pendingWrite.fileExtension);
+         } catch (final IOException | RuntimeException ex) {
+            Plugin.log().warn(ex, "Cannot write rendered content of [" + pendingWrite.source.path() + "] to render cache.");
+         }
+      }
+      return Status.OK_STATUS;
+   }
+}
@@ -0,0 +1,221 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.sebthom.eclipse.previewer.Plugin;
+
+/**
+ * Operations spanning all render cache folders below {@link #CACHE_ROOT}.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderCaches {
+
+   /**
+    * Disk usage of one render cache folder.
+    */
+   public record Usage(String cacheFolderName, long entries, long bytes) {
+   }
+
+   public static final Path CACHE_ROOT = SystemUtils.getJavaIoTmpDir().toPath().resolve(Plugin.PLUGIN_ID);
+
+   /**
+    * one index per cache folder, so that cache instances sharing a folder never serve each other's outdated entries
+    */
+   private static final Map<Path, RenderCacheIndex> INDEXES = new ConcurrentHashMap<>();
+   private static final Map<Path, RenderCacheEvictor> EVICTORS = new ConcurrentHashMap<>();
+   private static final Map<Path, RenderCacheJanitor> JANITORS = new ConcurrentHashMap<>();
+
+   /**
+    * one store per pack file based cache folder, as the pack files must only be written by a single instance
+    */
+   private static final Map<Path, RenderCachePackStore> PACK_STORES = new ConcurrentHashMap<>();
+
+   private static final Map<String, RenderFragmentCache> FRAGMENT_CACHES = new ConcurrentHashMap<>();
+
+   /**
+    * invalidates the cache entries of deleted workspace files, so a full rescan of the cache folders is rarely needed
+    */
+   private static final IResourceChangeListener RESOURCE_DELETE_LISTENER = event -> {
+      final var delta = event.getDelta();
+      if (delta == null)
+         return;
+      try {
+         delta.accept(resourceDelta -> {
+            final var resource = resourceDelta.getResource();
+            if (resourceDelta.getKind() == IResourceDelta.REMOVED && resource.getType() == IResource.FILE) {
+               final var location = resource.getLocation();
+               if (location != null) {
+                  final var sourcePath = location.toFile().toPath();
+                  JANITORS.values().forEach(janitor -> janitor.sourceRemoved(sourcePath));
+               }
+            }
+            return true;
+         });
+      } catch (final CoreException ex) {
+         Plugin.log().error(ex);
+      }
+   };
+   private static final AtomicBoolean IS_RESOURCE_DELETE_LISTENER_REGISTERED = new AtomicBoolean();
+
+   /**
+    * Stops the background cleanup of all render cache folders.
+    */
+   public static void dispose() {
+      if (IS_RESOURCE_DELETE_LISTENER_REGISTERED.compareAndSet(true, false)) {
+         ResourcesPlugin.getWorkspace().removeResourceChangeListener(RESOURCE_DELETE_LISTENER);
+      }
+      JANITORS.values().forEach(Job::cancel);
+      EVICTORS.values().forEach(Job::cancel);
+      PACK_STORES.values().forEach(RenderCachePackStore::dispose);
+   }
+
+   static RenderCacheEvictor getEvictor(final Path cacheRoot, final RenderCacheIndex index) {
+      return EVICTORS.computeIfAbsent(cacheRoot, k -> new RenderCacheEvictor(cacheRoot, index));
+   }
+
+   /**
+    * @return the janitor of the given cache folder, which performs a full scan for stale entries once per session
+    */
+   static RenderCacheJanitor getJanitor(final Path cacheRoot, final RenderCacheIndex index) {
+      if (IS_RESOURCE_DELETE_LISTENER_REGISTERED.compareAndSet(false, true)) {
+         ResourcesPlugin.getWorkspace().addResourceChangeListener(RESOURCE_DELETE_LISTENER, IResourceChangeEvent.POST_CHANGE);
+      }
+      return JANITORS.computeIfAbsent(cacheRoot, k -> {
+         final var janitor = new RenderCacheJanitor(cacheRoot, index);
+         janitor.scheduleFullScan();
+         return janitor;
+      });
+   }
+
+   /**
+    * @return the fragment cache stored in the given cache folder, which is shared by all callers using the same folder
+    */
+   public static RenderFragmentCache getFragmentCache(final String cacheFolderName) {
+      return FRAGMENT_CACHES.computeIfAbsent(cacheFolderName, RenderFragmentCache::new);
+   }
+
+   static RenderCachePackStore getPackStore(final Path cacheRoot) {
+      return PACK_STORES.computeIfAbsent(cacheRoot, RenderCachePackStore::new);
+   }
+
+   static RenderCacheIndex getIndex(final Path cacheRoot) {
+      return INDEXES.computeIfAbsent(cacheRoot, k -> new RenderCacheIndex());
+   }
+
+   /**
+    * @return the lookup counters of the render cache folders used in this session, by cache folder name
+    */
+   public static Map<String, RenderCache.Statistics> getStatistics() {
+      final var statistics = new TreeMap<String, RenderCache.Statistics>();
+      INDEXES.forEach((cacheRoot, index) -> statistics.put(cacheRoot.getFileName().toString(), index.getStatistics()));
+      PACK_STORES.forEach((cacheRoot, store) -> statistics.put(cacheRoot.getFileName().toString(), store.getStatistics()));
+      return statistics;
+   }
+
+   /**
+    * @return the usage of all render cache folders, computed by scanning the disk
+    */
+   public static List<Usage> getUsage() {
+      final var usages = new ArrayList<Usage>();
+      if (!Files.isDirectory(CACHE_ROOT))
+         return usages;
+
+      try (var cacheFolders = Files.newDirectoryStream(CACHE_ROOT, Files::isDirectory)) {
+         for (final Path cacheFolder : cacheFolders) {
+            long entries = 0;
+            long bytes = 0;
+            final var packStore = PACK_STORES.get(cacheFolder);
+            if (packStore != null) {
+               entries = packStore.size();
+               bytes = getSize(cacheFolder);
+            } else {
+               try (var cacheEntryDirs = Files.newDirectoryStream(cacheFolder, Files::isDirectory)) {
+                  for (final Path cacheEntryDir : cacheEntryDirs) {
+                     entries++;
+                     bytes += getSize(cacheEntryDir);
+                  }
+               }
+            }
+            usages.add(new Usage(cacheFolder.getFileName().toString(), entries, bytes));
+         }
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      return usages;
+   }
+
+   /**
+    * @return the accumulated size of the files of the given cache entry directory and its render variant sub directories
+    */
+   static long getSize(final Path cacheEntryDir) {
+      try (var files = Files.walk(cacheEntryDir)) {
+         return files.mapToLong(file -> file.toFile().length()).sum();
+      } catch (final NoSuchFileException | UncheckedIOException ex) {
+         // entry was deleted concurrently
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+      return 0;
+   }
+
+   /**
+    * Deletes all entries of all render cache folders.
+    */
+   public static void purge() {
+      if (!Files.isDirectory(CACHE_ROOT))
+         return;
+
+      INDEXES.values().forEach(RenderCacheIndex::clear);
+      PACK_STORES.values().forEach(RenderCachePackStore::clear);
+      FRAGMENT_CACHES.values().forEach(RenderFragmentCache::clear);
+      try (var cacheFolders = Files.newDirectoryStream(CACHE_ROOT, Files::isDirectory)) {
+         for (final Path cacheFolder : cacheFolders) {
+            if (PACK_STORES.containsKey(cacheFolder)) {
+               continue;
+            }
+            Plugin.log().info("Purging render cache folder [{0}]...", cacheFolder);
+            try (var cacheEntryDirs = Files.newDirectoryStream(cacheFolder, Files::isDirectory)) {
+               for (final Path cacheEntryDir : cacheEntryDirs) {
+                  try {
+                     FileUtils.deleteDirectory(cacheEntryDir.toFile());
+                  } catch (final IOException ex) {
+                     Plugin.log().error(ex);
+                  }
+               }
+            }
+         }
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+      }
+   }
+
+   private RenderCaches() {
+   }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Process-wide coordinator that collapses concurrent renders of the same cache entry, e.g. when the Preview view and one
+ * or more Preview editors show the same file, into a single render whose result is handed to all waiting callers.
+ *
+ * @author Sebastian Thomschke
+ */
+final class RenderCoordinator {
+
+   @FunctionalInterface
+   interface CacheLookup {
+
+      /**
+       * @return the rendered content if it is in the cache, without counting the lookup in the cache statistics
+       */
+      @Nullable
+      Path get() throws IOException;
+   }
+
+   @FunctionalInterface
+   interface RenderTask {
+      @Nullable
+      Path render() throws IOException;
+   }
+
+   private record InFlight(CompletableFuture<@Nullable Path> future, boolean isSpeculative) {
+   }
+
+   private static final Map<String, InFlight> IN_FLIGHT = new ConcurrentHashMap<>();
+
+   /**
+    * Executes the given task unless a task with the same key is already running, in which case its result is awaited and
+    * returned instead. Interactive renders never wait for a speculative render, which runs with low priority and may be
+    * queued behind other speculative renders, but take over the entry and render themselves.
+    *
+    * @param key identifies the cache entry produced by the task, must include everything the rendered content depends on
+    * @param isSpeculative if the task is a speculative render, see {@link RenderCache.ContentRenderer#isSpeculative()}
+    * @param cacheLookup re-checks the cache once the task is registered, since a concurrent render of the same entry may
+    *           have completed between the caller's cache miss and the registration
+    */
+   static @Nullable Path renderOnce(final String key, final boolean isSpeculative, final CacheLookup cacheLookup,
+         final RenderTask task) throws IOException {
+      final var future = new CompletableFuture<@Nullable Path>();
+      final var ownInFlight = new InFlight(future, isSpeculative);
+      while (true) {
+         final var inFlight = IN_FLIGHT.putIfAbsent(key, ownInFlight);
+         if (inFlight == null) {
+            break;
+         }
+         if (isSpeculative || !inFlight.isSpeculative())
+            return await(inFlight.future());
+         if (IN_FLIGHT.replace(key, inFlight, ownInFlight)) {
+            break;
+         }
+      }
+
+      try {
+         var renderedContentPath = cacheLookup.get();
+         if (renderedContentPath == null) {
+            renderedContentPath = task.render();
+         }
+         future.complete(renderedContentPath);
+         return renderedContentPath;
+      } catch (final Throwable ex) {
+         future.completeExceptionally(ex);
+         throw ex;
+      } finally {
+         IN_FLIGHT.remove(key, ownInFlight);
+      }
+   }
+
+   /**
+    * Like {@link #renderOnce(String, boolean, CacheLookup, RenderTask)}, but always renders, e.g. to replace a cache entry.
+    */
+   static @Nullable Path renderOnce(final String key, final boolean isSpeculative, final RenderTask task) throws IOException {
+      return renderOnce(key, isSpeculative, () -> null, task);
+   }
+
+   private static @Nullable Path await(final CompletableFuture<@Nullable Path> inFlight) throws IOException {
+      try {
+         return inFlight.get();
+      } catch (final InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for concurrent render");
+      } catch (final ExecutionException ex) {
+         final var cause = ex.getCause();
+         if (cause instanceof final IOException ioEx)
+            throw ioEx;
+         if (cause instanceof final RuntimeException rtEx)
+            throw rtEx;
+         if (cause instanceof final Error err)
+            throw err;
+         throw new IOException(cause);
+      }
+   }
+
+   private RenderCoordinator() {
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.cache;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.util.ContentFingerprints;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Two-tier cache of rendered HTML fragments, e.g. of the diagrams embedded in a document, keyed by everything the output of
+ * the fragment depends on instead of by source path. So a fragment is shared by all documents embedding the same source
+ * and survives IDE restarts.
+ * <p>
+ * Fragments are softly referenced in memory and stored in one entry dir per fragment below {@link RenderCaches#CACHE_ROOT},
+ * so they are subject to the same entry and byte budget as the render caches and are deleted by
+ * {@link RenderCaches#purge()}.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderFragmentCache {
+
+   @FunctionalInterface
+   public interface FragmentRenderer {
+      String render() throws IOException;
+   }
+
+   private static final String FRAGMENT_FILE_NAME = "fragment.html";
+   private static final int MAX_MEMORY_ENTRIES = 256;
+
+   private final Path cacheRoot;
+   private final RenderCacheIndex index;
+   private final Map<String, SoftReference<String>> fragments = Collections.synchronizedMap(new LRUMap<>(MAX_MEMORY_ENTRIES));
+
+   RenderFragmentCache(final String cacheFolderName) {
+      cacheRoot = RenderCaches.CACHE_ROOT.resolve(cacheFolderName);
+      index = RenderCaches.getIndex(cacheRoot);
+   }
+
+   void clear() {
+      fragments.clear();
+   }
+
+   /**
+    * @param key identifies the fragment, must cover the fragment's source and all settings affecting its rendering
+    * @return the cached fragment or the fragment rendered by the given renderer, which is cached if rendering succeeds
+    */
+   public String computeIfAbsent(final String key, final FragmentRenderer renderer) throws IOException {
+      final var fingerprint = ContentFingerprints.of(key);
+      final var ref = fragments.get(fingerprint);
+      var fragment = ref == null ? null : ref.get();
+      if (fragment != null) {
+         index.recordMemoryHit();
+         return fragment;
+      }
+
+      final var entryDir = cacheRoot.resolve(fingerprint);
+      final var fragmentFile = entryDir.resolve(FRAGMENT_FILE_NAME);
+      try {
+         fragment = Files.readString(fragmentFile);
+         index.recordDiskHit();
+         index.recordAccess(entryDir);
+         fragments.put(fingerprint, new SoftReference<>(fragment));
+         return fragment;
+      } catch (final NoSuchFileException ex) {
+         // not rendered yet
+      } catch (final IOException ex) {
+         Plugin.log().warn(ex, "Cannot read cached fragment [" + fragmentFile + "].");
+      }
+
+      index.recordMiss();
+      fragment = renderer.render();
+      fragments.put(fingerprint, new SoftReference<>(fragment));
+      try {
+         Files.createDirectories(entryDir);
+         AbstractRenderCache.writeAtomically(fragmentFile, fragment, null);
+         RenderCaches.getEvictor(cacheRoot, index).scheduleCheck();
+      } catch (final IOException ex) {
+         Plugin.log().warn(ex, "Cannot write fragment to [" + fragmentFile + "].");
+      }
+      return fragment;
+   }
+}
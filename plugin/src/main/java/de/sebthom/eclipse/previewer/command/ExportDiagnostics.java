@@ -0,0 +1,31 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.command;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.commons.ui.UI;
+import de.sebthom.eclipse.previewer.ui.DiagnosticsView;
+
+/**
+ * @author Sebastian Thomschke
+ */
+public class ExportDiagnostics extends AbstractHandler {
+
+   @Override
+   public @Nullable Object execute(final ExecutionEvent event) throws ExecutionException {
+      final DiagnosticsView diagnosticsView = UI.findView(DiagnosticsView.ID);
+      if (diagnosticsView != null) {
+         diagnosticsView.exportToJson();
+      }
+      return null;
+   }
+
+}
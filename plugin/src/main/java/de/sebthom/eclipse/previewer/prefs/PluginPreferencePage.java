@@ -6,13 +6,18 @@
  */
 package de.sebthom.eclipse.previewer.prefs;
 
-import static net.sf.jstuff.core.validation.NullAnalysisHelper.asNonNull;
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.io.FileUtils;
 
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
@@ -22,14 +27,20 @@
 import org.eclipse.jface.viewers.TableViewerColumn;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
+import de.sebthom.eclipse.commons.prefs.fieldeditor.GroupFieldEditor;
+import de.sebthom.eclipse.commons.prefs.fieldeditor.IntFieldEditor;
 import de.sebthom.eclipse.commons.prefs.fieldeditor.LabelFieldEditor;
 import de.sebthom.eclipse.commons.ui.Tables;
+import de.sebthom.eclipse.commons.ui.UI;
 import de.sebthom.eclipse.previewer.Constants;
 import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.cache.RenderCaches;
 import net.sf.jstuff.core.Strings;
 import net.sf.jstuff.core.SystemUtils;
 
@@ -157,6 +168,74 @@ public int getNumberOfControls() {
       }
    }
 
+   private static final class RenderCacheUsageFieldEditor extends FieldEditor {
+      final GridData usageLayoutData = new GridData(GridData.FILL, GridData.CENTER, true, false, 1, 1);
+      Label usageLabel = lateNonNull();
+
+      RenderCacheUsageFieldEditor(final Composite parent) {
+         doFillIntoGrid(parent, getNumberOfControls());
+      }
+
+      @Override
+      protected void adjustForNumColumns(final int numColumns) {
+         usageLayoutData.horizontalSpan = numColumns - 1;
+      }
+
+      @Override
+      protected void doFillIntoGrid(final Composite parent, final int numColumns) {
+         usageLabel = new Label(parent, SWT.WRAP);
+         usageLabel.setLayoutData(usageLayoutData);
+         adjustForNumColumns(numColumns);
+
+         final var purgeButton = new Button(parent, SWT.PUSH);
+         purgeButton.setText("Purge");
+         purgeButton.addListener(SWT.Selection, e -> {
+            usageLabel.setText("Purging...");
+            CompletableFuture.runAsync(RenderCaches::purge).thenRun(this::refreshUsage);
+         });
+
+         refreshUsage();
+      }
+
+      @Override
+      protected void doLoad() {
+         // nothing to do
+      }
+
+      @Override
+      protected void doLoadDefault() {
+         // nothing to do
+      }
+
+      @Override
+      protected void doStore() {
+         // nothing to do
+      }
+
+      @Override
+      public int getNumberOfControls() {
+         return 2;
+      }
+
+      private void refreshUsage() {
+         CompletableFuture.supplyAsync(RenderCaches::getUsage).thenAccept(usages -> UI.run(() -> {
+            if (usageLabel.isDisposed())
+               return;
+            final var text = new StringBuilder("Current usage:");
+            if (usages.isEmpty()) {
+               text.append(" empty");
+            }
+            for (final var usage : usages) {
+               text.append('\n').append(usage.cacheFolderName()).append(": ") //
+                  .append(usage.entries()).append(" entries, ") //
+                  .append(FileUtils.byteCountToDisplaySize(usage.bytes()));
+            }
+            usageLabel.setText(text.toString());
+            usageLabel.getParent().layout();
+         }));
+      }
+   }
+
    public PluginPreferencePage() {
       super(FieldEditorPreferencePage.GRID);
    }
@@ -173,6 +252,29 @@ protected void createFieldEditors() {
       addField(new TableFieldEditor(parent, input -> //
       Arrays.stream(Plugin.getExtensionConfigurations(Constants.EXTENSION_POINT_RENDERERS)) //
          .filter(ce -> "htmlPreviewRenderer".equals(ce.getName())).toArray()));
+      addField(new GroupFieldEditor("Render Cache", parent, group -> List.of( //
+         new IntFieldEditor(PluginPreferences.PREF_RENDER_CACHE_MAX_ENTRIES, "Max entries per cache (0 = unlimited)", group, 6), //
+         new IntFieldEditor(PluginPreferences.PREF_RENDER_CACHE_MAX_SIZE_MB, "Max size per cache in MB (0 = unlimited)", group, 6), //
+         new ComboFieldEditor(PluginPreferences.PREF_RENDER_CACHE_STORAGE, "Storage (applies to newly opened previews):",
+            new String[][] { //
+               new String[] {"One directory per entry", "files"}, //
+               new String[] {"Pack files (experimental)", "packfiles"} //
+            }, group), //
+         new RenderCacheUsageFieldEditor(group)) //
+      ));
+      addField(new BooleanFieldEditor(PluginPreferences.PREF_PRERENDER_OPEN_EDITORS,
+         "Pre-render the previews of open editors in the background", parent));
+      addField(new IntFieldEditor(PluginPreferences.PREF_LIVE_PREVIEW_RENDER_BUDGET_MILLIS,
+         "Live preview only on save if renders take longer than (ms, 0 = unlimited)", parent, 6));
+      addField(new GroupFieldEditor("Prefetching of Linked Documents", parent, group -> List.of( //
+         new IntFieldEditor(PluginPreferences.PREF_PREFETCH_LINKS_DEPTH, "Link levels to follow (0 = disabled)", group, 2), //
+         new IntFieldEditor(PluginPreferences.PREF_PREFETCH_LINKS_MAX, "Max documents per page", group, 4), //
+         new IntFieldEditor(PluginPreferences.PREF_PREFETCH_LINKS_TIME_BUDGET_SECONDS, "Max time per page in seconds", group, 4)) //
+      ));
+      addField(new GroupFieldEditor("Browser Pool", parent, group -> List.of( //
+         new IntFieldEditor(PluginPreferences.PREF_BROWSER_POOL_MAX_IDLE, "Max browsers kept for reuse (0 = disabled)", group, 2), //
+         new IntFieldEditor(PluginPreferences.PREF_BROWSER_POOL_IDLE_TIMEOUT_SECONDS, "Dispose unused browsers after seconds", group, 6)) //
+      ));
       if (SystemUtils.IS_OS_WINDOWS) {
          addField(new ComboFieldEditor(PluginPreferences.PREF_WINDOWS_WEBVIEW,
             "Web View Implementation (changing may require app restart):", new String[][] { //
@@ -26,6 +26,16 @@ public static final class Initializer extends AbstractPreferenceInitializer {
       @Override
       public void initializeDefaultPreferences() {
          STORE.setDefault(PREF_WINDOWS_WEBVIEW, "default");
+         STORE.setDefault(PREF_BROWSER_POOL_MAX_IDLE, 2);
+         STORE.setDefault(PREF_BROWSER_POOL_IDLE_TIMEOUT_SECONDS, 300);
+         STORE.setDefault(PREF_RENDER_CACHE_MAX_ENTRIES, 5_000);
+         STORE.setDefault(PREF_RENDER_CACHE_MAX_SIZE_MB, 256);
+         STORE.setDefault(PREF_RENDER_CACHE_STORAGE, "files");
+         STORE.setDefault(PREF_PRERENDER_OPEN_EDITORS, true);
+         STORE.setDefault(PREF_LIVE_PREVIEW_RENDER_BUDGET_MILLIS, 3_000);
+         STORE.setDefault(PREF_PREFETCH_LINKS_DEPTH, 1);
+         STORE.setDefault(PREF_PREFETCH_LINKS_MAX, 10);
+         STORE.setDefault(PREF_PREFETCH_LINKS_TIME_BUDGET_SECONDS, 30);
       }
    }
 
@@ -33,10 +43,75 @@ public void initializeDefaultPreferences() {
 
    public static final String PREF_WINDOWS_WEBVIEW = "edge";
 
+   /** max number of browsers of closed previews kept for reuse, 0 = disabled */
+   public static final String PREF_BROWSER_POOL_MAX_IDLE = "browserPoolMaxIdle";
+   /** time after which unused browsers kept for reuse are disposed */
+   public static final String PREF_BROWSER_POOL_IDLE_TIMEOUT_SECONDS = "browserPoolIdleTimeoutSeconds";
+
+   /** pre-render the previews of open editors in the background while the user is idle */
+   public static final String PREF_PRERENDER_OPEN_EDITORS = "prerenderOpenEditors";
+
+   /** sources whose renders take longer on average are only re-rendered when saved, 0 = unlimited */
+   public static final String PREF_LIVE_PREVIEW_RENDER_BUDGET_MILLIS = "livePreviewRenderBudgetMillis";
+
+   /** how many link levels to follow from a rendered page when prefetching linked documents, 0 = disabled */
+   public static final String PREF_PREFETCH_LINKS_DEPTH = "prefetchLinksDepth";
+   /** max number of linked documents to prefetch per rendered page */
+   public static final String PREF_PREFETCH_LINKS_MAX = "prefetchLinksMax";
+   /** max total time spent prefetching the documents linked from a rendered page */
+   public static final String PREF_PREFETCH_LINKS_TIME_BUDGET_SECONDS = "prefetchLinksTimeBudgetSeconds";
+
+   /** max number of entries per render cache folder, 0 = unlimited */
+   public static final String PREF_RENDER_CACHE_MAX_ENTRIES = "renderCacheMaxEntries";
+   /** max disk usage in MB per render cache folder, 0 = unlimited */
+   public static final String PREF_RENDER_CACHE_MAX_SIZE_MB = "renderCacheMaxSizeMB";
+   /** "files" = one directory per cache entry, "packfiles" = entries appended to a few shared pack files */
+   public static final String PREF_RENDER_CACHE_STORAGE = "renderCacheStorage";
+
    public static void addListener(final IPropertyChangeListener listener) {
       STORE.addPropertyChangeListener(listener);
    }
 
+   public static long getBrowserPoolIdleTimeoutMillis() {
+      return STORE.getInt(PREF_BROWSER_POOL_IDLE_TIMEOUT_SECONDS) * 1_000L;
+   }
+
+   public static int getBrowserPoolMaxIdle() {
+      return STORE.getInt(PREF_BROWSER_POOL_MAX_IDLE);
+   }
+
+   public static long getLivePreviewRenderBudgetMillis() {
+      return STORE.getInt(PREF_LIVE_PREVIEW_RENDER_BUDGET_MILLIS);
+   }
+
+   public static int getPrefetchLinksDepth() {
+      return STORE.getInt(PREF_PREFETCH_LINKS_DEPTH);
+   }
+
+   public static int getPrefetchLinksMax() {
+      return STORE.getInt(PREF_PREFETCH_LINKS_MAX);
+   }
+
+   public static long getPrefetchLinksTimeBudgetMillis() {
+      return STORE.getInt(PREF_PREFETCH_LINKS_TIME_BUDGET_SECONDS) * 1_000L;
+   }
+
+   public static int getRenderCacheMaxEntries() {
+      return STORE.getInt(PREF_RENDER_CACHE_MAX_ENTRIES);
+   }
+
+   public static long getRenderCacheMaxBytes() {
+      return STORE.getInt(PREF_RENDER_CACHE_MAX_SIZE_MB) * 1024L * 1024L;
+   }
+
+   public static boolean isPrerenderOpenEditors() {
+      return STORE.getBoolean(PREF_PRERENDER_OPEN_EDITORS);
+   }
+
+   public static boolean isRenderCacheUsingPackFiles() {
+      return "packfiles".equals(STORE.getString(PREF_RENDER_CACHE_STORAGE));
+   }
+
    public static String getWebView() {
       if (SystemUtils.IS_OS_WINDOWS)
          return STORE.getString(PREF_WINDOWS_WEBVIEW);
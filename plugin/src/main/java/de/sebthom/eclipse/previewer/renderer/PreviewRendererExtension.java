@@ -6,21 +6,89 @@
  */
 package de.sebthom.eclipse.previewer.renderer;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.annotation.Nullable;
 
+import de.sebthom.eclipse.previewer.Constants;
+import de.sebthom.eclipse.previewer.Plugin;
 import net.sf.jstuff.core.Strings;
 
 /**
+ * Proxy of a renderer contributed via the {@code de.sebthom.eclipse.previewer.renderers} extension point.
+ * <p>
+ * Only the metadata declared in the {@code plugin.xml} is read on construction. The renderer class is loaded, and thereby the
+ * contributing bundle activated, the first time {@link #getRenderer()} is invoked, i.e. when a source is dispatched to it.
+ *
  * @author Sebastian Thomschke
  */
 public class PreviewRendererExtension<T> extends RenderSourceSupport {
 
-   public final T renderer;
+   /**
+    * Reads the renderers contributed via the given element of the {@code de.sebthom.eclipse.previewer.renderers} extension
+    * point. Proxies of renderers that are still contributed are reused, so renderers already instantiated survive a
+    * change of the extension registry.
+    *
+    * @param previousRenderers the proxies read before, e.g. before the extension registry changed
+    * @return the proxies in the order of precedence
+    */
+   public static <T> List<PreviewRendererExtension<T>> loadAll(final String elementName,
+         final List<PreviewRendererExtension<T>> previousRenderers) {
+      final var renderers = new ArrayList<PreviewRendererExtension<T>>();
+      for (final IConfigurationElement ce : Plugin.getExtensionConfigurations(Constants.EXTENSION_POINT_RENDERERS)) {
+         if (!elementName.equals(ce.getName())) {
+            continue;
+         }
+         final var previousRenderer = previousRenderers.stream().filter(r -> r.config.equals(ce)).findFirst();
+         if (previousRenderer.isPresent()) {
+            renderers.add(previousRenderer.get());
+            continue;
+         }
+         try {
+            renderers.add(new PreviewRendererExtension<>(ce));
+         } catch (final LinkageError | CoreException ex) {
+            Plugin.log().error(ex);
+         }
+      }
+      return renderers;
+   }
+
+   private final IConfigurationElement config;
+   private volatile @Nullable T renderer;
+
+   /**
+    * fully qualified name of the renderer class
+    */
+   public final String rendererClassName;
+
+   /**
+    * renderer class and version of the contributing bundle, e.g. {@code org.example.MyRenderer@1.0.0.202501011200}
+    */
+   public final String rendererId;
+
+   /**
+    * the isolation pool to execute renders in, configured via the {@code cost-class} attribute
+    */
+   public final RenderCostClass costClass;
 
-   @SuppressWarnings("unchecked")
    public PreviewRendererExtension(final IConfigurationElement config) throws CoreException {
-      renderer = (T) config.createExecutableExtension("class");
+      this.config = config;
+      final var classArg = config.getAttribute("class");
+      if (classArg == null || classArg.isBlank())
+         throw new CoreException(Status.error("Attribute [class] of renderer contributed by [" + config.getContributor().getName()
+               + "] is missing."));
+      // strip the optional initialization data of executable extensions, e.g. "org.example.MyRenderer:data"
+      rendererClassName = StringUtils.substringBefore(classArg, ":").trim();
+
+      final var contributor = Platform.getBundle(config.getContributor().getName());
+      rendererId = rendererClassName + "@" + (contributor == null ? "" : contributor.getVersion());
+      costClass = RenderCostClass.of(config.getAttribute("cost-class"));
 
       for (final var contentType : config.getChildren("content-type")) {
          final var id = contentType.getAttribute("id");
@@ -44,4 +112,41 @@ public PreviewRendererExtension(final IConfigurationElement config) throws CoreE
          addFilePatterns(Strings.splitAsStream(filePatternsArg, ','));
       }
    }
+
+   /**
+    * @return the renderer, which is instantiated on first access
+    * @throws IllegalStateException if the renderer cannot be instantiated
+    */
+   @SuppressWarnings("unchecked")
+   public T getRenderer() {
+      var renderer = this.renderer;
+      if (renderer == null) {
+         synchronized (this) {
+            renderer = this.renderer;
+            if (renderer == null) {
+               try {
+                  renderer = this.renderer = (T) config.createExecutableExtension("class");
+                  Plugin.log().debug("Instantiated renderer [{0}].", rendererId);
+               } catch (final CoreException ex) {
+                  throw new IllegalStateException("Cannot instantiate renderer [" + rendererId + "].", ex);
+               }
+            }
+         }
+      }
+      return renderer;
+   }
+
+   /**
+    * @return the renderer if it was already instantiated, e.g. to dispose it
+    */
+   public @Nullable T getRendererIfInstantiated() {
+      return renderer;
+   }
+
+   /**
+    * @return true if the renderer is an instance of the given class, determined without instantiating it
+    */
+   public boolean isRendererClass(final Class<?> rendererClass) {
+      return rendererClass.getName().equals(rendererClassName);
+   }
 }
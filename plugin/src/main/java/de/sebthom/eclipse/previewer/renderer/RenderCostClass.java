@@ -0,0 +1,262 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
+
+/**
+ * Isolation pools (bulkheads) for HTML renderers, declared via the {@code cost-class} attribute of the
+ * {@code htmlPreviewRenderer} element of the {@code de.sebthom.eclipse.previewer.renderers} extension point.
+ * <p>
+ * Each cost class executes renders on its own bounded set of threads with its own timeout, so e.g. a hanging native
+ * process or a slow web service cannot delay renders of cheap in-process renderers. A render that times out or is
+ * cancelled is interrupted. If its thread is still busy afterwards, e.g. because the render ignores interrupts, the pool
+ * starts a replacement thread, so a hanging render cannot permanently occupy a slot of its cost class.
+ * <p>
+ * Speculative renders, e.g. pre-rendering of open editors or prefetching of linked documents, run on a separate
+ * single-threaded low-priority pool per cost class, so they never occupy a thread needed by an interactive render.
+ *
+ * @author Sebastian Thomschke
+ */
+public enum RenderCostClass {
+
+   /** rendering happens in the JVM or browser, e.g. CSV, SVG */
+   IN_PROCESS("in-process", Math.max(2, Runtime.getRuntime().availableProcessors()), Duration.ofSeconds(30)),
+
+   /** rendering may spawn native processes, e.g. Graphviz dot or D2 */
+   EXTERNAL_PROCESS("external-process", 2, Duration.ofSeconds(60)),
+
+   /** rendering may call remote services, e.g. the GitHub Markdown API */
+   NETWORK("network", 2, Duration.ofSeconds(20));
+
+   @FunctionalInterface
+   public interface RenderTask {
+      void render() throws IOException;
+   }
+
+   public static RenderCostClass of(final @Nullable String id) {
+      return of(id, IN_PROCESS);
+   }
+
+   /**
+    * @return the cost class with the given ID, or the given default if the ID is blank or not supported
+    */
+   public static RenderCostClass of(final @Nullable String id, final RenderCostClass defaultClass) {
+      if (id == null || id.isBlank())
+         return defaultClass;
+      for (final var costClass : values()) {
+         if (costClass.id.equals(id))
+            return costClass;
+      }
+      Plugin.log().warn("Unsupported renderer cost-class [" + id + "]. Using [" + defaultClass.id + "].");
+      return defaultClass;
+   }
+
+   /**
+    * Bounded thread pool of a cost class whose threads can be replaced while busy with an abandoned render.
+    */
+   private static final class RenderPool {
+
+      private final String name;
+      private final int size;
+      private final ThreadPoolExecutor executor;
+
+      /** number of pool threads still busy with a timed out or cancelled render, guarded by {@link #executor} */
+      private int abandonedThreads;
+
+      RenderPool(final String name, final int size, final int threadPriority) {
+         this.name = name;
+         this.size = size;
+
+         final var threadCount = new AtomicInteger();
+         executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, "Previewer Render (" + name + ") " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(threadPriority);
+            return thread;
+         });
+         executor.allowCoreThreadTimeOut(true);
+      }
+
+      void resize(final int abandonedThreadsDelta) {
+         synchronized (executor) {
+            abandonedThreads += abandonedThreadsDelta;
+            final int poolSize = size + abandonedThreads;
+            // the core pool size must never exceed the maximum pool size
+            if (abandonedThreadsDelta > 0) {
+               executor.setMaximumPoolSize(poolSize);
+               executor.setCorePoolSize(poolSize);
+               Plugin.log().debug("Abandoned busy render thread of pool [{0}], pool size is now {1}.", name, poolSize);
+            } else {
+               executor.setCorePoolSize(poolSize);
+               executor.setMaximumPoolSize(poolSize);
+            }
+         }
+      }
+   }
+
+   /**
+    * Render submitted to a pool, recording when it started so the timeout only covers its execution.
+    */
+   private final class RenderFuture extends FutureTask<@Nullable Void> {
+
+      private final RenderPool pool;
+      private final CountDownLatch startedOrDone = new CountDownLatch(1);
+      private volatile long startedAt;
+
+      /** guarded by this */
+      private boolean isRunning;
+
+      /** guarded by this */
+      private boolean isAbandoned;
+
+      RenderFuture(final RenderPool pool, final RenderTask task) {
+         super(() -> {
+            task.render();
+            return null;
+         });
+         this.pool = pool;
+      }
+
+      /**
+       * Cancels the render. If its thread is still busy, the thread is abandoned, i.e. the pool may start an additional
+       * thread until the render returns.
+       */
+      void abandon() {
+         cancel(true);
+         synchronized (this) {
+            if (isRunning && !isAbandoned) {
+               isAbandoned = true;
+               pool.resize(1);
+            }
+         }
+      }
+
+      /**
+       * @return the remaining nanos of the timeout, waiting until the render started if it is still queued
+       */
+      long awaitRemainingNanos() throws InterruptedException {
+         startedOrDone.await();
+         return isDone() ? 0 : timeout.toNanos() - (System.nanoTime() - startedAt);
+      }
+
+      @Override
+      protected void done() {
+         startedOrDone.countDown();
+      }
+
+      @Override
+      public void run() {
+         synchronized (this) {
+            if (isDone())
+               return;
+            isRunning = true;
+         }
+         startedAt = System.nanoTime();
+         startedOrDone.countDown();
+         try {
+            super.run();
+         } finally {
+            synchronized (this) {
+               isRunning = false;
+               if (isAbandoned) {
+                  pool.resize(-1);
+               }
+            }
+         }
+      }
+   }
+
+   /** the value of the {@code cost-class} attribute */
+   public final String id;
+   public final int maxConcurrency;
+   public final Duration timeout;
+
+   private final RenderPool interactivePool;
+   private final RenderPool speculativePool;
+
+   RenderCostClass(final String id, final int maxConcurrency, final Duration timeout) {
+      this.id = id;
+      this.maxConcurrency = maxConcurrency;
+      this.timeout = timeout;
+
+      interactivePool = new RenderPool(id, maxConcurrency, Thread.NORM_PRIORITY - 1);
+      speculativePool = new RenderPool(id + ", speculative", 1, Thread.MIN_PRIORITY);
+   }
+
+   /**
+    * Executes the given render in the pool of this cost class and waits for its completion. The {@link #timeout} starts
+    * when the render starts, i.e. time spent waiting for a free thread of the pool does not count towards it.
+    *
+    * @param cancellation once cancelled, the render is interrupted, or skipped if it did not start yet, and this method
+    *           returns immediately
+    * @throws IOException if the render failed or did not complete within the {@link #timeout}, in which case it is
+    *            interrupted
+    * @throws java.util.concurrent.CancellationException if the render was cancelled
+    */
+   public void execute(final RenderTask task, final CancellationToken cancellation) throws IOException {
+      execute(task, cancellation, false);
+   }
+
+   /**
+    * Like {@link #execute(RenderTask, CancellationToken)}, but speculative renders, i.e. renders nobody is waiting for
+    * yet, are executed one at a time on a low-priority pool separate from the one serving interactive renders.
+    */
+   public void execute(final RenderTask task, final CancellationToken cancellation, final boolean isSpeculative)
+         throws IOException {
+      final var pool = isSpeculative ? speculativePool : interactivePool;
+      final var future = new RenderFuture(pool, task);
+      pool.executor.execute(future);
+      try (var onCancel = cancellation.onCancel(future::abandon)) {
+         future.get(Math.max(0, future.awaitRemainingNanos()), TimeUnit.NANOSECONDS);
+      } catch (final TimeoutException ex) {
+         future.abandon();
+         throw new IOException("Rendering did not complete within the " + timeout.toSeconds() + "s timeout of cost-class [" + id
+               + "].", ex);
+      } catch (final InterruptedException ex) {
+         future.abandon();
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for render");
+      } catch (final ExecutionException ex) {
+         final var cause = ex.getCause();
+         if (cause instanceof final IOException ioEx)
+            throw ioEx;
+         if (cause instanceof final RuntimeException rtEx)
+            throw rtEx;
+         if (cause instanceof final Error err)
+            throw err;
+         throw new IOException(cause);
+      }
+   }
+
+   /**
+    * @return number of interactive renders waiting for a free thread of this cost class
+    */
+   public int getQueueDepth() {
+      return interactivePool.executor.getQueue().size();
+   }
+
+   void shutdown() {
+      interactivePool.executor.shutdownNow();
+      speculativePool.executor.shutdownNow();
+   }
+}
@@ -0,0 +1,102 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Keeps a moving average of the render durations per source and derives from it how often the live preview of a source
+ * that is being edited is re-rendered.
+ * <p>
+ * Cheap renders are refreshed after a short interval, expensive renders less often, so that re-rendering never occupies
+ * more than a third of a core while typing. Sources whose renders exceed
+ * {@link PluginPreferences#getLivePreviewRenderBudgetMillis()} are only re-rendered when saved.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderCostTracker {
+
+   /**
+    * @param rendererId the renderer that produced the measured renders, a different renderer restarts the average
+    */
+   private record Estimate(String rendererId, double avgRenderMillis) {
+   }
+
+   /** weight of the latest render in the moving average */
+   private static final double SMOOTHING_FACTOR = 0.3;
+
+   /** live preview interval relative to the average render time, i.e. re-rendering occupies at most 1/3 of a core */
+   private static final int INTERVAL_TO_RENDER_TIME_RATIO = 3;
+
+   private static final long MIN_INTERVAL_MILLIS = 100;
+   private static final long MAX_INTERVAL_MILLIS = 5_000;
+
+   /** live preview interval of sources not rendered yet */
+   private static final long DEFAULT_INTERVAL_MILLIS = 500;
+
+   private static final Map<Path, Estimate> ESTIMATES = Collections.synchronizedMap(new LRUMap<>(500));
+
+   /**
+    * @return the moving average of the render durations of the given source, or null if it was not rendered yet
+    */
+   public static @Nullable Long getAverageRenderMillis(final Path sourcePath) {
+      final var estimate = ESTIMATES.get(sourcePath);
+      return estimate == null ? null : Math.round(estimate.avgRenderMillis);
+   }
+
+   /**
+    * @return the min time between two re-renders of the given source while it is being edited
+    */
+   public static long getLivePreviewIntervalMillis(final Path sourcePath) {
+      final var avgRenderMillis = getAverageRenderMillis(sourcePath);
+      if (avgRenderMillis == null)
+         return DEFAULT_INTERVAL_MILLIS;
+      return Math.min(MAX_INTERVAL_MILLIS, Math.max(MIN_INTERVAL_MILLIS, avgRenderMillis * INTERVAL_TO_RENDER_TIME_RATIO));
+   }
+
+   /**
+    * @return a short description of the live preview behavior for the given source, e.g. for the info box of the preview
+    */
+   public static String getLivePreviewStatus(final Path sourcePath) {
+      final var avgRenderMillis = getAverageRenderMillis(sourcePath);
+      if (isLivePreviewOnSaveOnly(sourcePath))
+         return "live preview on save only, avg. render " + avgRenderMillis + " ms";
+      return "live preview every " + getLivePreviewIntervalMillis(sourcePath) + " ms" //
+            + (avgRenderMillis == null ? "" : ", avg. render " + avgRenderMillis + " ms");
+   }
+
+   /**
+    * @return true if the renders of the given source exceed the configured budget, so it should only be re-rendered when
+    *         saved
+    */
+   public static boolean isLivePreviewOnSaveOnly(final Path sourcePath) {
+      final long budgetMillis = PluginPreferences.getLivePreviewRenderBudgetMillis();
+      if (budgetMillis <= 0)
+         return false;
+      final var avgRenderMillis = getAverageRenderMillis(sourcePath);
+      return avgRenderMillis != null && avgRenderMillis > budgetMillis;
+   }
+
+   /**
+    * Records the duration of an actual render, i.e. not of a render cache hit.
+    */
+   public static void recordRender(final Path sourcePath, final String rendererId, final long renderMillis) {
+      ESTIMATES.compute(sourcePath, (path, estimate) -> estimate == null || !estimate.rendererId.equals(rendererId) //
+            ? new Estimate(rendererId, renderMillis)
+            : new Estimate(rendererId, SMOOTHING_FACTOR * renderMillis + (1 - SMOOTHING_FACTOR) * estimate.avgRenderMillis));
+   }
+
+   private RenderCostTracker() {
+   }
+}
@@ -0,0 +1,196 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * Resolves the renderers supporting a source without evaluating {@link RenderSourceSupport#supports(ContentSource)} of
+ * every renderer.
+ * <p>
+ * File names and extensions are looked up in hash maps built once from the renderers. File patterns are only matched
+ * against renderers registered before the best match found so far, and the potentially content sniffing
+ * {@link ContentSource#contentTypes()} are only determined if a renderer registered before the best match so far declares
+ * content types. The result honors the registration order of the renderers, i.e. it is the same as checking the renderers
+ * one after another.
+ * <p>
+ * Results are memoized per source path. Results that depend on the content types are discarded when the last modified time
+ * of the file changes, and are not memoized at all for unsynced sources, e.g. dirty editors, whose content may differ from
+ * the file. The index must be rebuilt when the registered renderers change.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderDispatchIndex<T extends RenderSourceSupport> {
+
+   /**
+    * @param fileLastModified last modified time of the file when the content types were determined, or null if the
+    *           resolution does not depend on the content types
+    */
+   private record Resolution<T>(List<T> renderers, @Nullable Long fileLastModified) {
+   }
+
+   private static final int MAX_MEMOIZED_PATHS = 2_000;
+
+   private static long getLastModified(final Path path) {
+      try {
+         return Files.getLastModifiedTime(path).toMillis();
+      } catch (final IOException ex) {
+         return -1;
+      }
+   }
+
+   private static void index(final Map<String, BitSet> index, final String key, final int rendererIndex) {
+      index.computeIfAbsent(key, k -> new BitSet()).set(rendererIndex);
+   }
+
+   private final List<T> renderers;
+   private final Map<String, BitSet> byFileName = new HashMap<>();
+   private final Map<String, BitSet> byFileExtension = new HashMap<>();
+   private final BitSet withFilePatterns = new BitSet();
+   private final BitSet withContentTypes = new BitSet();
+
+   private final Map<Path, Resolution<T>> firstMatches = Collections.synchronizedMap(new LRUMap<>(MAX_MEMOIZED_PATHS));
+   private final Map<Path, Resolution<T>> allMatches = Collections.synchronizedMap(new LRUMap<>(MAX_MEMOIZED_PATHS));
+
+   /**
+    * @param renderers in the order of precedence
+    */
+   public RenderDispatchIndex(final List<T> renderers) {
+      this.renderers = List.copyOf(renderers);
+      for (int i = 0; i < this.renderers.size(); i++) {
+         final var renderer = this.renderers.get(i);
+         for (final var fileName : renderer.getFileNames()) {
+            index(byFileName, fileName, i);
+         }
+         for (final var fileExtension : renderer.getFileExtensions()) {
+            index(byFileExtension, fileExtension, i);
+         }
+         if (!renderer.getFilePatterns().isEmpty()) {
+            withFilePatterns.set(i);
+         }
+         if (!renderer.getContentTypes().isEmpty()) {
+            withContentTypes.set(i);
+         }
+      }
+   }
+
+   /**
+    * @return the renderer with the highest precedence supporting the given source, or null if none supports it
+    */
+   public @Nullable T find(final ContentSource source) {
+      final var matches = resolve(source, true);
+      return matches.isEmpty() ? null : matches.get(0);
+   }
+
+   /**
+    * @return all renderers supporting the given source in the order of precedence
+    */
+   public List<T> findAll(final ContentSource source) {
+      return resolve(source, false);
+   }
+
+   /**
+    * Forgets the memoized results, e.g. after the content type associations changed.
+    */
+   public void clearMemoized() {
+      firstMatches.clear();
+      allMatches.clear();
+   }
+
+   private List<T> resolve(final ContentSource source, final boolean firstOnly) {
+      final var path = source.path();
+      final var memoized = firstOnly ? firstMatches : allMatches;
+      final var resolution = memoized.get(path);
+      final boolean isSynced = source.isSynced();
+      if (resolution != null && (resolution.fileLastModified == null //
+            || isSynced && resolution.fileLastModified == getLastModified(path)))
+         return resolution.renderers;
+
+      final var newResolution = resolveUncached(source, path, firstOnly);
+      if (newResolution.fileLastModified == null || isSynced) {
+         memoized.put(path, newResolution);
+      }
+      return newResolution.renderers;
+   }
+
+   private Resolution<T> resolveUncached(final ContentSource source, final Path path, final boolean firstOnly) {
+      final var matches = new BitSet(renderers.size());
+      final var fileNamePath = path.getFileName();
+      if (fileNamePath != null) {
+         final var fileName = fileNamePath.toString();
+         final var byName = byFileName.get(fileName);
+         if (byName != null) {
+            matches.or(byName);
+         }
+         final var byExtension = byFileExtension.get(FilenameUtils.getExtension(fileName).toLowerCase());
+         if (byExtension != null) {
+            matches.or(byExtension);
+         }
+      }
+
+      // only renderers with a higher precedence than the best match so far can change the first match
+      int limit = firstOnly && !matches.isEmpty() ? matches.nextSetBit(0) : renderers.size();
+
+      for (int i = withFilePatterns.nextSetBit(0); i > -1 && i < limit; i = withFilePatterns.nextSetBit(i + 1)) {
+         if (matches.get(i)) {
+            continue;
+         }
+         for (final var filePattern : renderers.get(i).getFilePatterns()) {
+            if (filePattern.matches(path)) {
+               matches.set(i);
+               if (firstOnly) {
+                  limit = i;
+               }
+               break;
+            }
+         }
+      }
+
+      final var contentTypeCandidates = (BitSet) withContentTypes.clone();
+      contentTypeCandidates.andNot(matches);
+      contentTypeCandidates.clear(limit, Math.max(limit, renderers.size()));
+      Long fileLastModified = null;
+      if (!contentTypeCandidates.isEmpty()) {
+         fileLastModified = getLastModified(path);
+         final var contentTypeIds = source.contentTypes().stream().map(contentType -> contentType.getId()).toList();
+         for (int i = contentTypeCandidates.nextSetBit(0); i > -1; i = contentTypeCandidates.nextSetBit(i + 1)) {
+            final var rendererContentTypes = renderers.get(i).getContentTypes();
+            if (contentTypeIds.stream().anyMatch(rendererContentTypes::contains)) {
+               matches.set(i);
+               if (firstOnly) {
+                  break;
+               }
+            }
+         }
+      }
+
+      if (matches.isEmpty())
+         return new Resolution<>(List.of(), fileLastModified);
+      if (firstOnly)
+         return new Resolution<>(List.of(renderers.get(matches.nextSetBit(0))), fileLastModified);
+
+      final var result = new ArrayList<T>(matches.cardinality());
+      for (int i = matches.nextSetBit(0); i > -1; i = matches.nextSetBit(i + 1)) {
+         result.add(renderers.get(i));
+      }
+      return new Resolution<>(List.copyOf(result), fileLastModified);
+   }
+}
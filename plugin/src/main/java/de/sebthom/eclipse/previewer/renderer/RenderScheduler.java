@@ -0,0 +1,173 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
+
+/**
+ * Bounded executor for preview renders, independent of the shared {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+ * <p>
+ * Each preview submits its renders to its own {@link Lane}. A lane executes at most one render at a time and only the
+ * latest submitted render counts: it replaces a render still waiting in the lane and cancels the running one via the
+ * {@link CancellationToken} handed to it. Renderers must nevertheless be thread-safe, since background jobs, e.g. the
+ * pre-rendering of open editors and the prefetching of linked documents, use the same renderers concurrently.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderScheduler {
+
+   /**
+    * @param queueDepth number of renders currently waiting for execution
+    * @param dropped number of waiting renders replaced by a newer render of the same lane
+    * @param cancelled number of running renders superseded by a newer render of the same lane
+    */
+   public record Statistics(int queueDepth, long executed, long dropped, long cancelled, long avgWaitMillis, long maxWaitMillis) {
+   }
+
+   /**
+    * Renders of one preview, executed one after another.
+    */
+   public static final class Lane {
+
+      private static final class Ticket {
+         final Consumer<CancellationToken> task;
+         final CancellationToken cancellation = new CancellationToken();
+         final long submittedAt = System.nanoTime();
+
+         Ticket(final Consumer<CancellationToken> task) {
+            this.task = task;
+         }
+      }
+
+      private final String name;
+      private @Nullable Ticket pending;
+      private @Nullable Ticket running;
+      private boolean isDrainScheduled;
+
+      public Lane(final String name) {
+         this.name = name;
+      }
+
+      /**
+       * Drops a waiting render and cancels the running render of this lane. A running render waiting for a thread of its
+       * {@link RenderCostClass} or for the completion of its render stops waiting immediately.
+       */
+      public synchronized void cancel() {
+         if (pending != null) {
+            pending = null;
+            QUEUE_DEPTH.decrementAndGet();
+            DROPPED.increment();
+         }
+         final var running = this.running;
+         if (running != null && !running.cancellation.isCancelled()) {
+            CANCELLED.increment();
+            running.cancellation.cancel();
+         }
+      }
+
+      private void drain() {
+         while (true) {
+            final Ticket ticket;
+            synchronized (this) {
+               ticket = pending;
+               pending = null;
+               running = ticket;
+               if (ticket == null) {
+                  isDrainScheduled = false;
+                  return;
+               }
+               QUEUE_DEPTH.decrementAndGet();
+            }
+
+            final long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.submittedAt);
+            TOTAL_WAIT_MILLIS.add(waitMillis);
+            MAX_WAIT_MILLIS.accumulateAndGet(waitMillis, Math::max);
+            EXECUTED.increment();
+
+            try {
+               ticket.task.accept(ticket.cancellation);
+            } catch (final RuntimeException ex) {
+               if (!ticket.cancellation.isCancelled()) {
+                  Plugin.log().error(ex);
+               }
+            }
+         }
+      }
+
+      /**
+       * Submits the given render, replacing a render still waiting in this lane and cancelling the running one.
+       *
+       * @param task receives the token that is cancelled once the render is superseded
+       */
+      public synchronized void submit(final Consumer<CancellationToken> task) {
+         cancel();
+         pending = new Ticket(task);
+         QUEUE_DEPTH.incrementAndGet();
+         if (!isDrainScheduled) {
+            isDrainScheduled = true;
+            EXECUTOR.execute(this::drain);
+         }
+      }
+
+      @Override
+      public String toString() {
+         return "Lane[" + name + "]";
+      }
+   }
+
+   private static final ThreadPoolExecutor EXECUTOR;
+
+   static {
+      // lane threads mostly wait for the RenderCostClass pools, which bound the actual rendering concurrency
+      final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+      final var threadCount = new AtomicInteger();
+      EXECUTOR = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+         final var thread = new Thread(runnable, "Previewer Render " + threadCount.incrementAndGet());
+         thread.setDaemon(true);
+         thread.setPriority(Thread.NORM_PRIORITY - 1);
+         return thread;
+      });
+      EXECUTOR.allowCoreThreadTimeOut(true);
+   }
+
+   private static final AtomicInteger QUEUE_DEPTH = new AtomicInteger();
+   private static final LongAdder EXECUTED = new LongAdder();
+   private static final LongAdder DROPPED = new LongAdder();
+   private static final LongAdder CANCELLED = new LongAdder();
+   private static final LongAdder TOTAL_WAIT_MILLIS = new LongAdder();
+   private static final AtomicLong MAX_WAIT_MILLIS = new AtomicLong();
+
+   public static Statistics getStatistics() {
+      final long executed = EXECUTED.sum();
+      return new Statistics(QUEUE_DEPTH.get(), executed, DROPPED.sum(), CANCELLED.sum(), executed == 0 ? 0
+            : TOTAL_WAIT_MILLIS.sum() / executed, MAX_WAIT_MILLIS.get());
+   }
+
+   /**
+    * Stops the render threads, including those of the {@link RenderCostClass} pools. Waiting renders are discarded.
+    */
+   public static void shutdown() {
+      EXECUTOR.shutdownNow();
+      for (final var costClass : RenderCostClass.values()) {
+         costClass.shutdown();
+      }
+   }
+
+   private RenderScheduler() {
+   }
+}
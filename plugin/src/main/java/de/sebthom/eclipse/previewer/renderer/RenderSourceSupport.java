@@ -77,6 +77,25 @@ protected void addFilePatterns(final String... values) {
       addFilePatterns(Arrays.stream(values));
    }
 
+   Set<String> getContentTypes() {
+      return contentTypes;
+   }
+
+   Set<String> getFileExtensions() {
+      return fileExtensions;
+   }
+
+   Set<String> getFileNames() {
+      return fileNames;
+   }
+
+   Set<PathMatcher> getFilePatterns() {
+      return filePatterns;
+   }
+
+   /**
+    * For repeated lookups among several renderers prefer a {@link RenderDispatchIndex}.
+    */
    public boolean supports(final ContentSource source) {
       final var path = source.path();
       if (!fileNames.isEmpty() && fileNames.contains(path.getFileName().toString()) //
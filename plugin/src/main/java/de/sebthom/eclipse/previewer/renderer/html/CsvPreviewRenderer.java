@@ -158,6 +158,14 @@ private static String delimiterLabel(final char delimiter) {
    public void dispose() {
    }
 
+   /**
+    * Rows are written one by one, so the browser displays the first rows of a large table while the rest is still written.
+    */
+   @Override
+   public boolean isProgressive() {
+      return true;
+   }
+
    private static boolean isDataLike(final String value) {
       return numericSortKey(value) != null //
             || BOOLEAN_PATTERN.matcher(value).matches() //
@@ -8,7 +8,9 @@
 
 import static net.sf.jstuff.core.validation.NullAnalysisHelper.*;
 
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,27 +18,41 @@
 import java.util.List;
 import java.util.Objects;
 
-import org.apache.commons.lang3.SystemUtils;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.io.output.TeeWriter;
+import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.eclipse.core.runtime.IRegistryChangeListener;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.content.IContentTypeManager.IContentTypeChangeListener;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.swt.widgets.Composite;
 
 import de.sebthom.eclipse.previewer.Constants;
 import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.api.HtmlPreviewRenderer;
 import de.sebthom.eclipse.previewer.api.PreviewRenderer;
 import de.sebthom.eclipse.previewer.cache.RenderCache;
+import de.sebthom.eclipse.previewer.cache.RenderCache.ContentRenderer;
 import de.sebthom.eclipse.previewer.cache.RenderCacheByLastModified;
-import de.sebthom.eclipse.previewer.cache.RenderCacheUsingSourceContentHash;
+import de.sebthom.eclipse.previewer.cache.RenderCaches;
+import de.sebthom.eclipse.previewer.cache.RenderCacheUsingPackFiles;
+import de.sebthom.eclipse.previewer.cache.RenderCacheUsingSourceContentHashWithVersions;
+import de.sebthom.eclipse.previewer.cache.RenderCacheWriteBehind;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
 import de.sebthom.eclipse.previewer.renderer.PreviewRendererExtension;
+import de.sebthom.eclipse.previewer.renderer.RenderCostClass;
+import de.sebthom.eclipse.previewer.renderer.RenderCostTracker;
+import de.sebthom.eclipse.previewer.renderer.RenderDispatchIndex;
+import de.sebthom.eclipse.previewer.ui.BrowserPool;
 import de.sebthom.eclipse.previewer.ui.BrowserWrapper;
+import de.sebthom.eclipse.previewer.ui.BrowserWrapper.BodyPatch;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
 import net.sf.jstuff.core.collection.LRUMap;
 import net.sf.jstuff.core.collection.tuple.Tuple2;
-import net.sf.jstuff.core.exception.Exceptions;
-import net.sf.jstuff.core.functional.ThrowingFunction;
 
 /**
  * @author Sebastian Thomschke
@@ -53,61 +69,135 @@ public interface LocalFileLinkHandler {
       boolean openLocalFileLink(Path path, URI target);
    }
 
+   /**
+    * number of previous buffer states of a dirty editor whose rendered content is kept, so e.g. undo is a cache hit
+    */
+   private static final int EDITOR_RENDER_VERSIONS_TO_KEEP = 20;
+
    private static final class PageState {
       Tuple2<Integer, Integer> scrollPos = Tuple2.create(0, 0);
       float zoomLevel = 1.0f;
    }
 
-   private static final Path RENDER_CACHE_ROOT = SystemUtils.getJavaIoTmpDir().toPath().resolve(Plugin.PLUGIN_ID);
+   /**
+    * The page displayed before navigating to a streamed document, which is displayed again if the render fails.
+    */
+   private record DisplayedPage(URI uri, @Nullable String pageStateKey, @Nullable HtmlBodyBlocks blocks) {
+   }
 
    private LRUMap<String, PageState> pageStates = new LRUMap<>(500);
    private @Nullable String currentPageStateKey;
 
-   private final RenderCache renderCacheOfEditors = new RenderCacheUsingSourceContentHash("render_cache_editors");
-   private final RenderCache renderCacheOfFiles = new RenderCacheByLastModified("render_cache_files");
+   private final RenderCache renderCacheOfEditors = PluginPreferences.isRenderCacheUsingPackFiles()
+         ? new RenderCacheUsingPackFiles("render_cache_editors_packed", this::getRenderVariant)
+         : new RenderCacheUsingSourceContentHashWithVersions("render_cache_editor_versions", EDITOR_RENDER_VERSIONS_TO_KEEP,
+            this::getRenderVariant);
+   private final RenderCache renderCacheOfFiles = PluginPreferences.isRenderCacheUsingPackFiles()
+         ? new RenderCacheUsingPackFiles("render_cache_files_packed", this::getRenderVariant)
+         : new RenderCacheByLastModified("render_cache_files", this::getRenderVariant);
+
+   /** all HTML renderers including the passthrough renderers, replaced when the extension registry changes */
+   private volatile List<PreviewRendererExtension<HtmlPreviewRenderer>> renderers = List.of();
+   private volatile PreviewRendererExtension<HtmlPreviewRenderer> passthroughHtmlRenderer = lateNonNull();
+   private volatile PreviewRendererExtension<HtmlPreviewRenderer> passthroughXmlRenderer = lateNonNull();
+   private volatile RenderDispatchIndex<PreviewRendererExtension<HtmlPreviewRenderer>> rendererIndex = lateNonNull();
+   private volatile RenderDispatchIndex<PreviewRendererExtension<HtmlPreviewRenderer>> passthroughRendererIndex = lateNonNull();
+
+   private final IRegistryChangeListener registryChangeListener = event -> {
+      if (event.getExtensionDeltas(Plugin.PLUGIN_ID, Constants.EXTENSION_POINT_RENDERERS).length > 0) {
+         loadRenderersFromExtensionPoints();
+      }
+   };
+   private final IContentTypeChangeListener contentTypeChangeListener = event -> {
+      rendererIndex.clearMemoized();
+      passthroughRendererIndex.clearMemoized();
+   };
 
-   private final List<PreviewRendererExtension<HtmlPreviewRenderer>> renderers = new ArrayList<>();
-   private PreviewRendererExtension<HtmlPreviewRenderer> passthroughHtmlRenderer = lateNonNull();
-   private PreviewRendererExtension<HtmlPreviewRenderer> passthroughXmlRenderer = lateNonNull();
+   private final LinkPrefetcher linkPrefetcher = new LinkPrefetcher(this::isRendered, this::renderToCache);
 
    private BrowserWrapper browser = lateNonNull();
    private @Nullable LocalFileLinkHandler localFileLinkHandler;
-   private @Nullable Path currentRenderedContentPath;
+   /**
+    * URI of the displayed rendered content, either a file of the render cache or a document of the
+    * {@link PreviewContentServer}
+    */
+   private @Nullable URI currentPageUri;
 
-   private void loadRenderersFromExtensionPoints() {
-      for (final IConfigurationElement ce : Plugin.getExtensionConfigurations(Constants.EXTENSION_POINT_RENDERERS)) {
-         final String extensionName = ce.getName();
-         if ("htmlPreviewRenderer".equals(extensionName)) {
-            try {
-               renderers.add(new PreviewRendererExtension<>(ce));
-            } catch (final LinkageError | CoreException ex) {
-               Plugin.log().error(ex);
+   /**
+    * the {@link #currentPageUri} once the browser completed loading it
+    */
+   private volatile @Nullable URI loadedPageUri;
+
+   /**
+    * blocks of the displayed page, null if it cannot be patched
+    */
+   private @Nullable HtmlBodyBlocks displayedBlocks;
+
+   public ExtensibleHtmlPreviewRenderer() {
+      // only reads the renderer metadata, the renderers are instantiated once a source is dispatched to them
+      loadRenderersFromExtensionPoints();
+      Platform.getExtensionRegistry().addRegistryChangeListener(registryChangeListener, Plugin.PLUGIN_ID);
+      Platform.getContentTypeManager().addContentTypeChangeListener(contentTypeChangeListener);
+   }
+
+   /**
+    * (Re-)reads the HTML renderers and rebuilds the dispatch indexes. Renderers that are no longer contributed, e.g. because
+    * their bundle was uninstalled, are disposed.
+    */
+   private synchronized void loadRenderersFromExtensionPoints() {
+      final var previousRenderers = renderers;
+      final var renderers = PreviewRendererExtension.loadAll("htmlPreviewRenderer", previousRenderers);
+
+      final var passthroughHtmlRenderer = renderers.stream().filter(r -> r.isRendererClass(HtmlFilePreviewRenderer.class)) //
+         .findFirst().get();
+      final var passthroughXmlRenderer = renderers.stream().filter(r -> r.isRendererClass(XmlPreviewRenderer.class)) //
+         .findFirst().get();
+      final var htmlRenderers = new ArrayList<>(renderers);
+      htmlRenderers.remove(passthroughHtmlRenderer);
+      htmlRenderers.remove(passthroughXmlRenderer);
+
+      this.passthroughHtmlRenderer = passthroughHtmlRenderer;
+      this.passthroughXmlRenderer = passthroughXmlRenderer;
+      rendererIndex = new RenderDispatchIndex<>(htmlRenderers);
+      passthroughRendererIndex = new RenderDispatchIndex<>(List.of(passthroughHtmlRenderer, passthroughXmlRenderer));
+      this.renderers = renderers;
+
+      for (final var rendererExt : previousRenderers) {
+         if (!renderers.contains(rendererExt)) {
+            Plugin.log().debug("Renderer [{0}] is no longer contributed.", rendererExt.rendererId);
+            final var renderer = rendererExt.getRendererIfInstantiated();
+            if (renderer != null) {
+               renderer.dispose();
             }
          }
       }
+   }
 
-      passthroughHtmlRenderer = renderers.stream().filter(r -> r.renderer instanceof HtmlFilePreviewRenderer).findFirst().get();
-      renderers.remove(passthroughHtmlRenderer);
-
-      passthroughXmlRenderer = renderers.stream().filter(r -> r.renderer instanceof XmlPreviewRenderer).findFirst().get();
-      renderers.remove(passthroughXmlRenderer);
+   /**
+    * @return the ID and current settings of the renderer responsible for the given source, which is part of the render
+    *         cache key
+    */
+   private String getRenderVariant(final ContentSource source) {
+      final var rendererExt = findRenderer(source);
+      return rendererExt == null ? "" : rendererExt.rendererId + "|" + rendererExt.getRenderer().getSettingsFingerprint();
    }
 
    @Override
    public void init(final Composite parent) {
-      browser = new BrowserWrapper(parent);
+      browser = BrowserPool.acquire(parent);
       browser.setShouldOverrideNavigation(this::tryOpenLocalFileLink);
-      loadRenderersFromExtensionPoints();
    }
 
    private boolean tryOpenLocalFileLink(final URI target) {
+      if (isInternalNavigation(target))
+         return false;
+
       final Path path = toRegularFilePath(target);
       if (path == null)
          return false;
 
-      final boolean internalNavigation = isInternalNavigation(path);
       final boolean sameDocumentNavigation = isSameDocumentNavigation(target, path);
-      if (internalNavigation || sameDocumentNavigation || isRenderCachePath(path))
+      if (sameDocumentNavigation || isRenderCachePath(path))
          return false;
 
       final URI targetWithoutFragment = path.toUri();
@@ -115,22 +205,31 @@ private boolean tryOpenLocalFileLink(final URI target) {
       return handler != null && handler.openLocalFileLink(path, targetWithoutFragment);
    }
 
-   private boolean isInternalNavigation(final Path target) {
-      final var currentRenderedContentPath = this.currentRenderedContentPath;
-      if (currentRenderedContentPath == null)
+   private boolean isInternalNavigation(final URI target) {
+      final var currentPageUri = this.currentPageUri;
+      if (currentPageUri == null)
          return false;
 
       // SWT/WebView can report more than one navigation event for the generated preview page. Keep treating the current
       // rendered output as an internal page load so it is never opened as a linked file editor.
-      return currentRenderedContentPath.equals(target);
+      if (isSameDocument(currentPageUri, target))
+         return true;
+      final Path currentPagePath = toRegularFilePath(currentPageUri);
+      return currentPagePath != null && currentPagePath.equals(toRegularFilePath(target));
    }
 
+   /**
+    * @return the local file the given {@code file:} URI or URI of the {@link PreviewContentServer} refers to, or null if it
+    *         does not refer to an existing regular file
+    */
    private static @Nullable Path toRegularFilePath(final URI target) {
-      if (!"file".equalsIgnoreCase(target.getScheme()))
+      final var server = "file".equalsIgnoreCase(target.getScheme()) ? null : PreviewContentServer.getIfRunning();
+      final var serverPath = server == null ? null : server.toLocalPath(target);
+      if (serverPath == null && !"file".equalsIgnoreCase(target.getScheme()))
          return null;
 
       try {
-         final Path path = Path.of(MiscUtils.withoutFragment(target));
+         final Path path = serverPath == null ? Path.of(MiscUtils.withoutFragment(target)) : serverPath;
          if (!Files.isRegularFile(path))
             return null;
          return toCanonicalPath(path);
@@ -140,7 +239,7 @@ private boolean isInternalNavigation(final Path target) {
    }
 
    private static boolean isRenderCachePath(final Path path) {
-      return path.startsWith(toCanonicalPath(RENDER_CACHE_ROOT));
+      return path.startsWith(toCanonicalPath(RenderCaches.CACHE_ROOT));
    }
 
    private static Path toCanonicalPath(final Path path) {
@@ -175,9 +274,9 @@ private boolean isSameDocumentNavigation(final URI target, final Path targetPath
     * Sets the handler used when a clicked link in rendered HTML resolves to an existing local file.
     * <p>
     * This renderer handles the browser-specific work first: internal preview page loads and same-document anchors are
-    * ignored, then this class accepts only {@code file:} links, strips URI fragments, converts the target to a
-    * {@link Path}, and verifies that it is a regular file. The handler only decides what Eclipse should do with that
-    * resolved local file.
+    * ignored, then this class accepts only {@code file:} links and links to local files served by the
+    * {@link PreviewContentServer}, strips URI fragments, converts the target to a {@link Path}, and verifies that it is a
+    * regular file. The handler only decides what Eclipse should do with that resolved local file.
     */
    public void setLocalFileLinkHandler(final @Nullable LocalFileLinkHandler localFileLinkHandler) {
       this.localFileLinkHandler = localFileLinkHandler;
@@ -185,9 +284,24 @@ public void setLocalFileLinkHandler(final @Nullable LocalFileLinkHandler localFi
 
    @Override
    public void dispose() {
-      renderers.forEach(ext -> ext.renderer.dispose());
-      renderers.clear();
-      browser.dispose();
+      Plugin.log().debug("Render cache statistics: editors={0} files={1}", renderCacheOfEditors.getStatistics(), renderCacheOfFiles
+         .getStatistics());
+      linkPrefetcher.cancel();
+      Platform.getExtensionRegistry().removeRegistryChangeListener(registryChangeListener);
+      Platform.getContentTypeManager().removeContentTypeChangeListener(contentTypeChangeListener);
+      final var renderers = this.renderers;
+      this.renderers = List.of();
+      for (final var rendererExt : renderers) {
+         final var renderer = rendererExt.getRendererIfInstantiated();
+         if (renderer != null) {
+            renderer.dispose();
+         }
+      }
+      // the browser is only created if the renderer is displayed, i.e. not if it was only used for pre-rendering
+      final @Nullable BrowserWrapper browser = this.browser;
+      if (browser != null) {
+         BrowserPool.release(browser);
+      }
    }
 
    @Override
@@ -209,7 +323,29 @@ public synchronized void setZoom(final float level) {
       }
    }
 
-   private synchronized void navigateTo(final ContentSource source, final Path renderedContentPath) {
+   private void navigateTo(final ContentSource source, final Path renderedContentPath, final CancellationToken cancellation) {
+      // only pages of sources that are not synced are patched in place, see navigateTo(ContentSource, URI, ...). The blocks
+      // are parsed now, since e.g. a pack file backed render cache may reuse the file for the next rendered content
+      navigateTo(source, toCanonicalPath(renderedContentPath).toUri(), source.isSynced() ? null : parseBlocks(renderedContentPath),
+         cancellation);
+   }
+
+   /**
+    * @param renderedBlocks blocks of the rendered content, null if the page cannot be patched
+    */
+   private synchronized void navigateTo(final ContentSource source, final URI pageUri, final @Nullable HtmlBodyBlocks renderedBlocks,
+         final CancellationToken cancellation) {
+      // the result of a render superseded by a newer render of the same preview must not replace the current page
+      if (cancellation.isCancelled())
+         return;
+
+      // update the page in place if only the content of the edited document changed
+      if (!source.isSynced() && source.path().toString().equals(currentPageStateKey) && tryPatchDisplayedPage(pageUri, renderedBlocks)) {
+         currentPageUri = loadedPageUri = pageUri;
+         browser.setInfoBoxStatus(RenderCostTracker.getLivePreviewStatus(source.path()));
+         return;
+      }
+
       var pageStateKey = currentPageStateKey;
       if (pageStateKey != null) {
          final var pageState = pageStates.get(pageStateKey);
@@ -220,8 +356,14 @@ private synchronized void navigateTo(final ContentSource source, final Path rend
 
       pageStateKey = currentPageStateKey = source.path().toString();
       final var pageState = pageStates.computeIfAbsent(pageStateKey, k -> new PageState());
-      currentRenderedContentPath = toCanonicalPath(renderedContentPath);
-      browser.navigateTo(renderedContentPath).thenRun(() -> {
+      currentPageUri = pageUri;
+      loadedPageUri = null;
+      displayedBlocks = renderedBlocks;
+      browser.navigateTo(pageUri).thenRun(() -> {
+         loadedPageUri = pageUri;
+         if (!source.isSynced()) {
+            browser.setInfoBoxStatus(RenderCostTracker.getLivePreviewStatus(source.path()));
+         }
          if (pageState.zoomLevel != 1.0f) {
             browser.setZoom(pageState.zoomLevel);
          }
@@ -231,79 +373,401 @@ private synchronized void navigateTo(final ContentSource source, final Path rend
       });
    }
 
-   @Override
-   public boolean render(final ContentSource source, final boolean forceCacheUpdate) throws IOException {
-      final var path = source.path();
+   /**
+    * Replaces only the changed top-level body elements of the displayed page by those of the given rendered content.
+    *
+    * @return false if the given content must be loaded by navigating to it, e.g. because the displayed page is still
+    *         loading or its head section differs
+    */
+   private boolean tryPatchDisplayedPage(final URI pageUri, final @Nullable HtmlBodyBlocks renderedBlocks) {
+      final var displayedPageUri = currentPageUri;
+      if (displayedPageUri == null || !displayedPageUri.equals(loadedPageUri))
+         return false;
 
-      final var renderCache = source.isSynced() //
-            ? renderCacheOfFiles
-            : renderCacheOfEditors;
+      final var displayedBlocks = this.displayedBlocks;
+      if (displayedBlocks == null || renderedBlocks == null)
+         return false;
 
-      final ThrowingFunction<ContentSource, @Nullable CharSequence, IOException> cacheFunction = sourceArg -> {
-         Exception renderException = null;
-         for (final var rendererExt : renderers) {
-            if (rendererExt.supports(sourceArg)) {
-               final var htmlBuilder = new StringBuilder();
+      var patches = displayedBlocks.diff(renderedBlocks);
+      if (patches == null)
+         return false;
+      // like the page itself, the inserted blocks of a page served by the content server must not reference file: URLs
+      final var server = "file".equalsIgnoreCase(pageUri.getScheme()) ? null : PreviewContentServer.getIfRunning();
+      if (server != null) {
+         patches = patches.stream() //
+            .map(patch -> new BodyPatch(patch.start(), patch.deleteCount(), server.rewriteFileUrls(patch.html()))) //
+            .toList();
+      }
+      if (!browser.patchBody(displayedBlocks.size(), patches))
+         return false;
+
+      Plugin.log().debug("Patched {0} block range(s) of displayed page [{1}].", patches.size(), pageUri);
+      this.displayedBlocks = renderedBlocks;
+      return true;
+   }
+
+   private static @Nullable HtmlBodyBlocks parseBlocks(final Path renderedContentPath) {
+      if (!renderedContentPath.getFileName().toString().endsWith(".html"))
+         return null;
+      try {
+         return HtmlBodyBlocks.parse(Files.readString(renderedContentPath));
+      } catch (final IOException ex) {
+         Plugin.log().warn(ex, "Cannot read rendered content [" + renderedContentPath + "].");
+         return null;
+      }
+   }
+
+   /**
+    * @return the HTML renderer responsible for the given source, or null if it is not rendered, e.g. a passthrough
+    *         HTML/XML file
+    */
+   private @Nullable PreviewRendererExtension<HtmlPreviewRenderer> findRenderer(final ContentSource source) {
+      return rendererIndex.find(source);
+   }
+
+   /**
+    * @param isSpeculative if the render is not requested by the user, e.g. pre-rendering, in which case it is executed on
+    *           the low-priority pool of its cost class
+    * @return content renderer streaming the output of the first supporting HTML renderer into the render cache
+    */
+   private ContentRenderer createContentRenderer(final Path path, final CancellationToken cancellation, final boolean isSpeculative) {
+      return new ContentRenderer() {
+         @Override
+         public boolean render(final ContentSource sourceArg, final Writer out) throws IOException {
+            final var rendererExt = findRenderer(sourceArg);
+            if (rendererExt == null)
+               return false;
+            final var htmlOut = createHtmlWriter(path, out);
+            final var costClass = RenderCostClass.of(rendererExt.getRenderer().getCostClass(), rendererExt.costClass);
+            final long startedAt = System.currentTimeMillis();
+            costClass.execute(() -> {
+               final var event = new RenderEvents.Render();
+               event.begin();
+               final long renderStartedAt = System.currentTimeMillis();
+               boolean isRendered = false;
                try {
-                  rendererExt.renderer.renderToHtml(sourceArg, htmlBuilder);
-               } catch (RuntimeException | IOException ex) {
-                  renderException = ex;
-                  break;
+                  rendererExt.getRenderer().renderToHtml(sourceArg, htmlOut, cancellation);
+                  isRendered = true;
+               } finally {
+                  if (isRendered) {
+                     RenderMetrics.recordRender(rendererExt.rendererId, System.currentTimeMillis() - renderStartedAt);
+                  } else {
+                     RenderMetrics.recordRenderFailure(rendererExt.rendererId);
+                  }
+                  event.end();
+                  if (event.shouldCommit()) {
+                     event.path = path.toString();
+                     final var renderer = rendererExt.getRendererIfInstantiated();
+                     event.rendererClass = renderer == null ? null : renderer.getClass();
+                     event.costClass = costClass.id;
+                     event.sourceSize = RenderEvents.sizeOf(sourceArg);
+                     event.commit();
+                  }
                }
-               adjustHTML(path, htmlBuilder);
-               return htmlBuilder;
+            }, cancellation, isSpeculative);
+            if (!isSpeculative) {
+               // speculative renders wait for the low-priority pool, so their timings do not reflect the interactive cost
+               RenderCostTracker.recordRender(path, rendererExt.rendererId, System.currentTimeMillis() - startedAt);
             }
+            htmlOut.close();
+            writeFooter(path, out);
+            return true;
          }
-         if (renderException != null) {
-            Exceptions.throwSneakily(renderException);
+
+         @Override
+         public boolean isSpeculative() {
+            return isSpeculative;
          }
+      };
+   }
+
+   /**
+    * The browser is only navigated to the streamed document once the renderer wrote content, so a render failing before
+    * keeps the current page. If the render fails or is cancelled afterwards, the page displayed before is displayed again.
+    *
+    * @param isStreamed set to true once the browser was navigated to the streamed document, i.e. the rendered content must
+    *           not be navigated to anymore
+    * @return content renderer that additionally streams the rendered content to the browser via the
+    *         {@link PreviewContentServer} while rendering, or null if the renderer of the given source is not progressive
+    *         or the content server is not available
+    */
+   private @Nullable ContentRenderer createStreamingContentRenderer(final ContentSource source, final ContentRenderer contentRenderer,
+         final MutableBoolean isStreamed, final CancellationToken cancellation) {
+      final var rendererExt = findRenderer(source);
+      if (rendererExt == null || !rendererExt.getRenderer().isProgressive())
+         return null;
+      final var server = PreviewContentServer.get();
+      if (server == null)
          return null;
+
+      // only invoked if the render cache has no rendered content for the source
+      return (sourceArg, out) -> {
+         final var stream = server.publishStream(sourceArg.path(), "html", //
+            millis -> RenderMetrics.recordFirstPaint(rendererExt.rendererId, millis));
+         final var previousPage = getDisplayedPage();
+         final var streamOut = new FilterWriter(stream) {
+            private void written() {
+               if (isStreamed.isFalse()) {
+                  navigateTo(source, stream.uri, null, cancellation);
+                  isStreamed.setTrue();
+               }
+            }
+
+            @Override
+            public void write(final char[] cbuf, final int off, final int len) throws IOException {
+               super.write(cbuf, off, len);
+               written();
+            }
+
+            @Override
+            public void write(final int c) throws IOException {
+               super.write(c);
+               written();
+            }
+
+            @Override
+            public void write(final String str, final int off, final int len) throws IOException {
+               super.write(str, off, len);
+               written();
+            }
+         };
+         boolean isRendered = false;
+         try {
+            isRendered = contentRenderer.render(sourceArg, new TeeWriter(out, streamOut));
+         } finally {
+            if (isRendered) {
+               stream.close();
+            } else {
+               stream.abort();
+               if (isStreamed.isTrue() && previousPage != null) {
+                  restoreDisplayedPage(previousPage, stream.uri);
+               }
+            }
+         }
+         return isRendered;
       };
+   }
 
-      final Path renderedContentPath = forceCacheUpdate //
-            ? renderCache.replace(source, cacheFunction, "html")
-            : renderCache.computeIfAbsent(source, cacheFunction, "html");
+   private synchronized @Nullable DisplayedPage getDisplayedPage() {
+      final var currentPageUri = this.currentPageUri;
+      return currentPageUri == null ? null : new DisplayedPage(currentPageUri, currentPageStateKey, displayedBlocks);
+   }
 
-      if (renderedContentPath != null) {
-         navigateTo(source, renderedContentPath);
-         return true;
+   /**
+    * Displays the given page again unless the page displayed meanwhile is not the given aborted page, e.g. because a newer
+    * render was displayed already.
+    */
+   private synchronized void restoreDisplayedPage(final DisplayedPage page, final URI abortedPageUri) {
+      if (!abortedPageUri.equals(currentPageUri))
+         return;
+
+      Plugin.log().debug("Render of [{0}] was aborted, displaying [{1}] again.", abortedPageUri, page.uri);
+      currentPageStateKey = page.pageStateKey;
+      currentPageUri = page.uri;
+      loadedPageUri = null;
+      displayedBlocks = page.blocks;
+      browser.navigateTo(page.uri).thenRun(() -> loadedPageUri = page.uri);
+   }
+
+   private RenderCache getRenderCache(final ContentSource source) {
+      return source.isSynced() //
+            ? renderCacheOfFiles
+            : renderCacheOfEditors;
+   }
+
+   /**
+    * Renders the given source into the render cache without navigating to it, so that a subsequent
+    * {@link #render(ContentSource, boolean)} of the same content is a cache hit. The render is speculative, i.e. it runs
+    * on the low-priority pool of its cost class so it does not delay interactive renders.
+    *
+    * @param cancellation aborts the render once the user became active again
+    * @return true if the source is supported by one of the HTML renderers and its rendered content is cached
+    */
+   public boolean prerender(final ContentSource source, final CancellationToken cancellation) throws IOException {
+      return renderToCache(source, cancellation) != null;
+   }
+
+   private @Nullable Path renderToCache(final ContentSource source, final CancellationToken cancellation) throws IOException {
+      return lookup(getRenderCache(source), source, createContentRenderer(source.path(), cancellation, true), "html", false);
+   }
+
+   /**
+    * Looks up the rendered content of the given source in the given render cache, rendering it on a miss or if
+    * {@code forceUpdate} is set.
+    */
+   private static @Nullable Path lookup(final RenderCache renderCache, final ContentSource source, final ContentRenderer contentRenderer,
+         final String fileExtension, final boolean forceUpdate) throws IOException {
+      final var event = new RenderEvents.RenderCacheLookup();
+      final var hit = new MutableBoolean(true);
+      final var trackingContentRenderer = new ContentRenderer() {
+         @Override
+         public boolean render(final ContentSource sourceArg, final Writer out) throws IOException {
+            hit.setFalse();
+            return contentRenderer.render(sourceArg, out);
+         }
+
+         @Override
+         public boolean isSpeculative() {
+            return contentRenderer.isSpeculative();
+         }
+      };
+      event.begin();
+      final Path renderedContentPath = forceUpdate //
+            ? renderCache.replace(source, trackingContentRenderer, fileExtension)
+            : renderCache.computeIfAbsent(source, trackingContentRenderer, fileExtension);
+      event.end();
+      if (event.shouldCommit()) {
+         event.path = source.path().toString();
+         event.cacheClass = renderCache.getClass();
+         event.forceUpdate = forceUpdate;
+         event.hit = hit.booleanValue();
+         event.bytes = RenderEvents.sizeOf(renderedContentPath);
+         event.commit();
+      }
+      return renderedContentPath;
+   }
+
+   /**
+    * @return true if the given source is rendered by one of the HTML renderers, i.e. is not a passthrough HTML/XML file
+    */
+   private boolean isRendered(final ContentSource source) {
+      return findRenderer(source) != null;
+   }
+
+   @Override
+   public boolean render(final ContentSource source, final boolean forceCacheUpdate) throws IOException {
+      return render(source, forceCacheUpdate, new CancellationToken());
+   }
+
+   @Override
+   public boolean render(final ContentSource source, final boolean forceCacheUpdate, final CancellationToken cancellation)
+         throws IOException {
+      final var path = source.path();
+      final var renderCache = getRenderCache(source);
+      linkPrefetcher.cancel();
+
+      if (isRendered(source)) {
+         final var contentRenderer = createContentRenderer(path, cancellation, false);
+         if (!source.isSynced() && renderInMemory(source, contentRenderer, "html", forceCacheUpdate, cancellation))
+            return true;
+
+         final var isStreamed = new MutableBoolean();
+         final var streamingContentRenderer = createStreamingContentRenderer(source, contentRenderer, isStreamed, cancellation);
+         final Path renderedContentPath = lookup(renderCache, source, streamingContentRenderer == null
+               ? contentRenderer
+               : streamingContentRenderer, "html", forceCacheUpdate);
+
+         if (renderedContentPath != null) {
+            if (isStreamed.isFalse()) {
+               navigateTo(source, renderedContentPath, cancellation);
+            }
+            if (!cancellation.isCancelled()) {
+               linkPrefetcher.prefetch(path, renderedContentPath);
+            }
+            return true;
+         }
       }
 
+      final var passthroughRenderer = passthroughRendererIndex.find(source);
       if (source.isSynced()) {
-         if (passthroughHtmlRenderer.supports(source) || passthroughXmlRenderer.supports(source)) {
-            navigateTo(source, path);
+         if (passthroughRenderer != null) {
+            navigateTo(source, path, cancellation);
             return true;
          }
       } else {
-         if (passthroughHtmlRenderer.supports(source)) {
-            navigateTo(source, asNonNull(renderCache.computeIfAbsent(source, sourceArg -> {
-               final var htmlBuilder = new StringBuilder();
-               htmlBuilder.append(source.contentAsString());
-               adjustHTML(path, htmlBuilder);
-               return htmlBuilder;
-            }, "html")));
+         if (passthroughRenderer == passthroughHtmlRenderer) {
+            final ContentRenderer contentRenderer = (sourceArg, out) -> {
+               final var htmlOut = createHtmlWriter(path, out);
+               try (var reader = sourceArg.contentAsReader()) {
+                  reader.transferTo(htmlOut);
+               }
+               htmlOut.close();
+               writeFooter(path, out);
+               return true;
+            };
+            if (!renderInMemory(source, contentRenderer, "html", false, cancellation)) {
+               navigateTo(source, asNonNull(lookup(renderCache, source, contentRenderer, "html", false)), cancellation);
+            }
             return true;
          }
 
-         if (passthroughXmlRenderer.supports(source)) {
-            navigateTo(source, asNonNull(renderCache.computeIfAbsent(source, sourceArg -> source.contentAsString(), "xml")));
+         if (passthroughRenderer == passthroughXmlRenderer) {
+            final ContentRenderer contentRenderer = (sourceArg, out) -> {
+               try (var reader = sourceArg.contentAsReader()) {
+                  reader.transferTo(out);
+               }
+               return true;
+            };
+            if (!renderInMemory(source, contentRenderer, "xml", false, cancellation)) {
+               navigateTo(source, asNonNull(lookup(renderCache, source, contentRenderer, "xml", false)), cancellation);
+            }
             return true;
          }
       }
       return false;
    }
 
-   private void adjustHTML(final Path path, final StringBuilder html) {
-      // add meta footer
-      html.append("<!-- " + path.toUri() + " @ " + MiscUtils.getCurrentTime() + " -->");
+   /**
+    * Renders a source that is not synced with its file, e.g. the content of a dirty editor, into memory and displays it via
+    * the {@link PreviewContentServer}, so a live preview update does not wait for the disk. The render cache is updated
+    * asynchronously.
+    *
+    * @return false if the source was not displayed, e.g. because the content server is not available
+    */
+   private boolean renderInMemory(final ContentSource source, final ContentRenderer contentRenderer, final String fileExtension,
+         final boolean forceCacheUpdate, final CancellationToken cancellation) throws IOException {
+      final var server = PreviewContentServer.get();
+      if (server == null)
+         return false;
+
+      // the cache lookup and the render work on the same snapshot, so the content is read and fingerprinted only once
+      final var snapshot = source.snapshot();
+      if (!forceCacheUpdate) {
+         final var renderedContentPath = renderCacheOfEditors.get(snapshot, fileExtension);
+         if (renderedContentPath != null) {
+            // cached content is served like rendered content, so the page keeps its origin and can still be patched in place
+            try {
+               publishAndNavigateTo(source, server, Files.readString(renderedContentPath), fileExtension, cancellation);
+               return true;
+            } catch (final IOException ex) {
+               Plugin.log().debug("Cannot read rendered content [{0}], rendering it again: {1}", renderedContentPath, ex);
+            }
+         }
+      }
 
-      // add <base> tag to be able to resolve relatively referenced images
-      final var headEndPos = html.indexOf("</head>");
-      html.insert(headEndPos > -1 ? headEndPos : 0, "<base href='" + path.getParent().toUri() + "'>");
+      final var out = new StringBuilderWriter();
+      if (!contentRenderer.render(snapshot, out))
+         return false;
+
+      // the render buffer is shared by the render cache write, the served document and the parsed blocks without copying it,
+      // the file: URLs are rewritten while the document is sent
+      final CharSequence renderedContent = out.getBuilder();
+      RenderCacheWriteBehind.put(renderCacheOfEditors, snapshot, renderedContent, fileExtension);
+      publishAndNavigateTo(source, server, renderedContent, fileExtension, cancellation);
+      return true;
+   }
+
+   /**
+    * @param renderedContent must not be modified afterwards, see {@link PreviewContentServer#publish(Path, CharSequence, String)}
+    */
+   private void publishAndNavigateTo(final ContentSource source, final PreviewContentServer server, final CharSequence renderedContent,
+         final String fileExtension, final CancellationToken cancellation) {
+      navigateTo(source, server.publish(source.path(), renderedContent, fileExtension), "html".equals(fileExtension)
+            ? HtmlBodyBlocks.parse(renderedContent)
+            : null, cancellation);
+   }
+
+   /**
+    * @return writer inserting the {@code <base>} tag and the anchor link script into the head section of the HTML written
+    *         to it. It must be closed but does not close the given writer.
+    */
+   private static Writer createHtmlWriter(final Path path, final Writer out) {
+      // the <base> tag allows to resolve relatively referenced images
+      final var baseTag = "<base href='" + path.getParent().toUri() + "'>";
 
       // make # anchor tags work while having <base href> defined
       // see https://stackoverflow.com/questions/8108836/make-anchor-links-refer-to-the-current-page-when-using-base
-      html.insert(headEndPos > -1 ? headEndPos : 0, """
+      final var anchorScript = """
          <script>
          document.addEventListener("click", function(event) {
            var elem = event.target;
@@ -312,11 +776,15 @@ private void adjustHTML(final Path path, final StringBuilder html) {
            }
          });
          </script>
-         """);
+         """;
+      return new HtmlHeadInjectingWriter(out, anchorScript + baseTag);
+   }
+
+   private static void writeFooter(final Path path, final Writer out) throws IOException {
+      out.write("<!-- " + path.toUri() + " @ " + MiscUtils.getCurrentTime() + " -->");
    }
 
    public boolean supports(final ContentSource source) {
-      return passthroughHtmlRenderer.supports(source) || passthroughXmlRenderer.supports(source) || renderers.stream() //
-         .anyMatch(renderer -> renderer.supports(source));
+      return passthroughRendererIndex.find(source) != null || rendererIndex.find(source) != null;
    }
 }
@@ -0,0 +1,283 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer.html;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.Strings;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.ui.BrowserWrapper.BodyPatch;
+
+/**
+ * Rendered HTML page split into its head section and the top-level elements (blocks) of its body, used to update a
+ * displayed page by only replacing the blocks that changed, see {@link #diff(HtmlBodyBlocks)}.
+ * <p>
+ * The parser is deliberately simple: pages with top-level text, unbalanced tags or without head/body sections are not
+ * split and must be displayed by a full page load.
+ *
+ * @author Sebastian Thomschke
+ */
+final class HtmlBodyBlocks {
+
+   private static final Pattern BODY_START_PATTERN = Pattern.compile("<body\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
+   private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta",
+      "param", "source", "track", "wbr");
+
+   /**
+    * elements whose content is not parsed as HTML
+    */
+   private static final Set<String> RAW_TEXT_ELEMENTS = Set.of("script", "style", "textarea", "title");
+
+   /**
+    * above this number of compared block pairs the changed range is replaced as a whole
+    */
+   private static final int MAX_DIFF_MATRIX_SIZE = 250_000;
+
+   /**
+    * Only the head section and the blocks are copied out of the given HTML, so e.g. a render buffer can be parsed without
+    * converting it to a string first.
+    *
+    * @return null if the page cannot be split into blocks
+    */
+   static @Nullable HtmlBodyBlocks parse(final CharSequence html) {
+      final int headEnd = Strings.CI.indexOf(html, "</head>", 0);
+      if (headEnd < 0)
+         return null;
+      final var bodyStart = BODY_START_PATTERN.matcher(html);
+      if (!bodyStart.find(headEnd))
+         return null;
+      final int bodyEnd = Strings.CI.lastIndexOf(html, "</body>");
+      if (bodyEnd < bodyStart.end())
+         return null;
+
+      final var blocks = new ArrayList<String>();
+      int pos = bodyStart.end();
+      while (pos < bodyEnd) {
+         final char ch = html.charAt(pos);
+         if (Character.isWhitespace(ch)) {
+            pos++;
+         } else if (startsWith(html, "<!--", pos)) {
+            // top-level comments are not part of the element children of the body
+            final int commentEnd = Strings.CS.indexOf(html, "-->", pos + 4);
+            if (commentEnd < 0 || commentEnd >= bodyEnd)
+               return null;
+            pos = commentEnd + 3;
+         } else if (ch == '<' && pos + 1 < bodyEnd && Character.isLetter(html.charAt(pos + 1))) {
+            final int blockEnd = findElementEnd(html, pos, bodyEnd);
+            if (blockEnd < 0)
+               return null;
+            blocks.add(html.subSequence(pos, blockEnd).toString());
+            pos = blockEnd;
+         } else
+            // top-level text nodes cannot be addressed as element children of the body
+            return null;
+      }
+      return new HtmlBodyBlocks(html.subSequence(0, headEnd).toString(), bodyStart.group(), blocks);
+   }
+
+   private static boolean startsWith(final CharSequence html, final String prefix, final int pos) {
+      if (pos + prefix.length() > html.length())
+         return false;
+      for (int i = 0; i < prefix.length(); i++) {
+         if (html.charAt(pos + i) != prefix.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+   /**
+    * @return the position after the end tag of the element starting at the given position, or -1 if the element is not
+    *         closed before {@code limit}
+    */
+   private static int findElementEnd(final CharSequence html, final int elementStart, final int limit) {
+      int depth = 0;
+      int pos = elementStart;
+      while (pos < limit) {
+         pos = Strings.CS.indexOf(html, "<", pos);
+         if (pos < 0 || pos >= limit)
+            return -1;
+
+         if (startsWith(html, "<!--", pos)) {
+            final int commentEnd = Strings.CS.indexOf(html, "-->", pos + 4);
+            if (commentEnd < 0)
+               return -1;
+            pos = commentEnd + 3;
+            continue;
+         }
+
+         final boolean isEndTag = pos + 1 < limit && html.charAt(pos + 1) == '/';
+         final int nameStart = isEndTag ? pos + 2 : pos + 1;
+         int nameEnd = nameStart;
+         while (nameEnd < limit && (Character.isLetterOrDigit(html.charAt(nameEnd)) || html.charAt(nameEnd) == '-')) {
+            nameEnd++;
+         }
+         if (nameEnd == nameStart) {
+            // e.g. "<!DOCTYPE" or a literal "<"
+            pos++;
+            continue;
+         }
+
+         final int tagEnd = findTagEnd(html, nameEnd, limit);
+         if (tagEnd < 0)
+            return -1;
+
+         if (isEndTag) {
+            depth--;
+            if (depth < 0)
+               return -1;
+         } else {
+            final var tagName = html.subSequence(nameStart, nameEnd).toString().toLowerCase(Locale.ROOT);
+            if (!VOID_ELEMENTS.contains(tagName) && html.charAt(tagEnd - 2) != '/') {
+               depth++;
+               if (RAW_TEXT_ELEMENTS.contains(tagName)) {
+                  // skip to the end tag, which is processed by the next iteration
+                  final int rawTextEnd = Strings.CI.indexOf(html, "</" + tagName, tagEnd);
+                  if (rawTextEnd < 0 || rawTextEnd >= limit)
+                     return -1;
+                  pos = rawTextEnd;
+                  continue;
+               }
+            }
+         }
+         if (depth == 0)
+            return tagEnd;
+         pos = tagEnd;
+      }
+      return -1;
+   }
+
+   /**
+    * @return the position after the {@code >} closing the tag, ignoring {@code >} in quoted attribute values
+    */
+   private static int findTagEnd(final CharSequence html, final int pos, final int limit) {
+      char quote = 0;
+      for (int i = pos; i < limit; i++) {
+         final char ch = html.charAt(i);
+         if (quote != 0) {
+            if (ch == quote) {
+               quote = 0;
+            }
+         } else if (ch == '"' || ch == '\'') {
+            quote = ch;
+         } else if (ch == '>')
+            return i + 1;
+      }
+      return -1;
+   }
+
+   private final String head;
+   private final String bodyStartTag;
+   private final List<String> blocks;
+
+   private HtmlBodyBlocks(final String head, final String bodyStartTag, final List<String> blocks) {
+      this.head = head;
+      this.bodyStartTag = bodyStartTag;
+      this.blocks = blocks;
+   }
+
+   /**
+    * Computes the changes turning the blocks of this page into the blocks of the given page.
+    *
+    * @return the patches in descending order of their start index, so each can be applied using the block indexes of this
+    *         page, or null if the page must be reloaded because its head section or body attributes changed or one of the
+    *         new blocks contains a script, which would not be executed when inserted into the DOM
+    */
+   @Nullable
+   List<BodyPatch> diff(final HtmlBodyBlocks newer) {
+      if (!head.equals(newer.head) || !bodyStartTag.equals(newer.bodyStartTag))
+         return null;
+
+      final var oldBlocks = blocks;
+      final var newBlocks = newer.blocks;
+
+      int prefix = 0;
+      final int maxPrefix = Math.min(oldBlocks.size(), newBlocks.size());
+      while (prefix < maxPrefix && oldBlocks.get(prefix).equals(newBlocks.get(prefix))) {
+         prefix++;
+      }
+      int suffix = 0;
+      final int maxSuffix = maxPrefix - prefix;
+      while (suffix < maxSuffix && oldBlocks.get(oldBlocks.size() - 1 - suffix).equals(newBlocks.get(newBlocks.size() - 1 - suffix))) {
+         suffix++;
+      }
+
+      final var oldChanged = oldBlocks.subList(prefix, oldBlocks.size() - suffix);
+      final var newChanged = newBlocks.subList(prefix, newBlocks.size() - suffix);
+      final var patches = new ArrayList<BodyPatch>();
+      if ((long) oldChanged.size() * newChanged.size() > MAX_DIFF_MATRIX_SIZE) {
+         addPatch(patches, prefix, oldChanged.size(), newChanged);
+      } else {
+         diff(oldChanged, newChanged, prefix, patches);
+      }
+
+      for (final var patch : patches) {
+         if (patch.html().toLowerCase(Locale.ROOT).contains("<script"))
+            return null;
+      }
+      Collections.reverse(patches);
+      return patches;
+   }
+
+   /**
+    * Adds the patches turning {@code oldBlocks} into {@code newBlocks} based on their longest common subsequence.
+    */
+   private static void diff(final List<String> oldBlocks, final List<String> newBlocks, final int offset, final List<BodyPatch> patches) {
+      final int oldSize = oldBlocks.size();
+      final int newSize = newBlocks.size();
+      final int[][] lcs = new int[oldSize + 1][newSize + 1];
+      for (int i = oldSize - 1; i >= 0; i--) {
+         for (int j = newSize - 1; j >= 0; j--) {
+            lcs[i][j] = oldBlocks.get(i).equals(newBlocks.get(j)) //
+                  ? lcs[i + 1][j + 1] + 1
+                  : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+         }
+      }
+
+      int i = 0;
+      int j = 0;
+      while (i < oldSize || j < newSize) {
+         if (i < oldSize && j < newSize && oldBlocks.get(i).equals(newBlocks.get(j))) {
+            i++;
+            j++;
+            continue;
+         }
+         final int patchStart = i;
+         final int insertStart = j;
+         while (i < oldSize || j < newSize) {
+            if (i < oldSize && j < newSize && oldBlocks.get(i).equals(newBlocks.get(j))) {
+               break;
+            }
+            if (j < newSize && (i == oldSize || lcs[i][j + 1] >= lcs[i + 1][j])) {
+               j++;
+            } else {
+               i++;
+            }
+         }
+         addPatch(patches, offset + patchStart, i - patchStart, newBlocks.subList(insertStart, j));
+      }
+   }
+
+   private static void addPatch(final List<BodyPatch> patches, final int start, final int deleteCount, final List<String> blocks) {
+      if (deleteCount == 0 && blocks.isEmpty())
+         return;
+      patches.add(new BodyPatch(start, deleteCount, String.join("\n", blocks)));
+   }
+
+   /**
+    * @return number of top-level elements of the body
+    */
+   int size() {
+      return blocks.size();
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer.html;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Writer that passes HTML through to another writer and inserts the given markup right before the {@code </head>} tag.
+ * <p>
+ * Content is held back only until {@code </head>} has passed through. If the document has no {@code </head>} tag, the
+ * markup is inserted at the beginning of the document when this writer is closed.
+ *
+ * @author Sebastian Thomschke
+ */
+final class HtmlHeadInjectingWriter extends Writer {
+
+   private static final String HEAD_END_TAG = "</head>";
+
+   private final Writer out;
+   private final String headMarkup;
+
+   /**
+    * content written before {@code </head>} passed through, null afterwards
+    */
+   private @Nullable StringBuilder heldBack = new StringBuilder();
+
+   HtmlHeadInjectingWriter(final Writer out, final String headMarkup) {
+      this.out = out;
+      this.headMarkup = headMarkup;
+   }
+
+   /**
+    * Writes any held back content but does not close the underlying writer.
+    */
+   @Override
+   public void close() throws IOException {
+      final var heldBack = this.heldBack;
+      if (heldBack != null) {
+         this.heldBack = null;
+         out.write(headMarkup);
+         out.append(heldBack);
+      }
+      out.flush();
+   }
+
+   @Override
+   public void flush() throws IOException {
+      if (heldBack == null) {
+         out.flush();
+      }
+   }
+
+   private void holdBack(final StringBuilder heldBack, final CharSequence csq, final int start, final int end) throws IOException {
+      // the end tag may be split across writes, so the search starts within the previously held back content
+      final int searchFrom = Math.max(0, heldBack.length() - HEAD_END_TAG.length() + 1);
+      heldBack.append(csq, start, end);
+      final int headEndPos = heldBack.indexOf(HEAD_END_TAG, searchFrom);
+      if (headEndPos > -1) {
+         this.heldBack = null;
+         out.append(heldBack, 0, headEndPos);
+         out.write(headMarkup);
+         out.append(heldBack, headEndPos, heldBack.length());
+      }
+   }
+
+   @Override
+   public void write(final char[] cbuf, final int off, final int len) throws IOException {
+      final var heldBack = this.heldBack;
+      if (heldBack == null) {
+         out.write(cbuf, off, len);
+      } else {
+         holdBack(heldBack, CharBuffer.wrap(cbuf), off, off + len);
+      }
+   }
+
+   @Override
+   public void write(final String str, final int off, final int len) throws IOException {
+      final var heldBack = this.heldBack;
+      if (heldBack == null) {
+         out.write(str, off, len);
+      } else {
+         holdBack(heldBack, str, off, off + len);
+      }
+   }
+
+   @Override
+   public Writer append(final @Nullable CharSequence csq) throws IOException {
+      final CharSequence nonNullCsq = csq == null ? "null" : csq;
+      return append(nonNullCsq, 0, nonNullCsq.length());
+   }
+
+   @Override
+   public Writer append(final @Nullable CharSequence csq, final int start, final int end) throws IOException {
+      final CharSequence nonNullCsq = csq == null ? "null" : csq;
+      final var heldBack = this.heldBack;
+      if (heldBack == null) {
+         out.append(nonNullCsq, start, end);
+      } else {
+         holdBack(heldBack, nonNullCsq, start, end);
+      }
+      return this;
+   }
+}
@@ -0,0 +1,176 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer.html;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.util.ContentSources;
+import de.sebthom.eclipse.previewer.util.MiscUtils;
+
+/**
+ * Background job that speculatively renders the local documents linked from a rendered page into the render cache, so
+ * following a link to another previewable document opens instantly.
+ * <p>
+ * Links are followed breadth-first up to the configured depth, number of documents and total time, see
+ * {@link PluginPreferences#getPrefetchLinksDepth()}, {@link PluginPreferences#getPrefetchLinksMax()} and
+ * {@link PluginPreferences#getPrefetchLinksTimeBudgetMillis()}. Prefetches are speculative renders, i.e. they run on the
+ * low-priority pools of the cost classes and are aborted as soon as the job is cancelled, e.g. by a new interactive render.
+ *
+ * @author Sebastian Thomschke
+ */
+final class LinkPrefetcher extends Job {
+
+   @FunctionalInterface
+   interface Prerenderer {
+
+      /**
+       * Renders the given source into the render cache.
+       *
+       * @return the rendered content file
+       */
+      @Nullable
+      Path prerender(ContentSource source, CancellationToken cancellation) throws IOException;
+   }
+
+   private record Page(Path sourcePath, Path renderedContentPath, int depth) {
+   }
+
+   private static final Pattern HREF_PATTERN = Pattern.compile("\\bhref\\s*=\\s*[\"']([^\"'#?]+)", Pattern.CASE_INSENSITIVE);
+
+   private final Predicate<ContentSource> isPreviewable;
+   private final Prerenderer prerenderer;
+   private volatile @Nullable Page startPage;
+
+   /** cancellation token of the current prefetch run */
+   private volatile CancellationToken cancellation = new CancellationToken();
+
+   /**
+    * @param isPreviewable determines if a linked document is rendered by one of the HTML renderers
+    * @param prerenderer renders the given source speculatively into the render cache
+    */
+   LinkPrefetcher(final Predicate<ContentSource> isPreviewable, final Prerenderer prerenderer) {
+      super("Prefetching linked documents");
+      this.isPreviewable = isPreviewable;
+      this.prerenderer = prerenderer;
+      setSystem(true);
+      setPriority(Job.DECORATE);
+   }
+
+   /**
+    * @return the existing local files linked from the given rendered page, in document order
+    */
+   private Set<Path> getLinkedFiles(final Page page) throws IOException {
+      final var linkedFiles = new LinkedHashSet<Path>();
+      final var baseUri = page.sourcePath.toAbsolutePath().getParent().toUri();
+      final var matcher = HREF_PATTERN.matcher(Files.readString(page.renderedContentPath));
+      while (matcher.find()) {
+         final URI href = MiscUtils.toURI(matcher.group(1).strip());
+         if (href == null || href.getScheme() != null && !"file".equalsIgnoreCase(href.getScheme())) {
+            continue;
+         }
+         try {
+            final var linkedFile = Path.of(baseUri.resolve(href)).normalize();
+            if (Files.isRegularFile(linkedFile)) {
+               linkedFiles.add(linkedFile);
+            }
+         } catch (final IllegalArgumentException ex) {
+            // not a valid file URI
+         }
+      }
+      return linkedFiles;
+   }
+
+   /**
+    * Cancels any ongoing prefetch and starts prefetching the documents linked from the given page.
+    */
+   void prefetch(final Path sourcePath, final Path renderedContentPath) {
+      cancel();
+      if (PluginPreferences.getPrefetchLinksDepth() < 1 || PluginPreferences.getPrefetchLinksMax() < 1)
+         return;
+      startPage = new Page(sourcePath, renderedContentPath, 0);
+      schedule();
+   }
+
+   @Override
+   protected void canceling() {
+      cancellation.cancel();
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      final var startPage = this.startPage;
+      if (startPage == null)
+         return Status.OK_STATUS;
+
+      final var cancellation = new CancellationToken();
+      this.cancellation = cancellation;
+      if (monitor.isCanceled())
+         return Status.CANCEL_STATUS;
+
+      final int maxDepth = PluginPreferences.getPrefetchLinksDepth();
+      final int maxDocuments = PluginPreferences.getPrefetchLinksMax();
+      final long deadline = System.currentTimeMillis() + PluginPreferences.getPrefetchLinksTimeBudgetMillis();
+
+      final var visited = new HashSet<Path>();
+      visited.add(startPage.sourcePath.toAbsolutePath().normalize());
+      final var pages = new ArrayDeque<Page>();
+      pages.add(startPage);
+      int prefetched = 0;
+      Page page;
+      while ((page = pages.poll()) != null) {
+         if (page.depth >= maxDepth) {
+            continue;
+         }
+         try {
+            for (final Path linkedFile : getLinkedFiles(page)) {
+               if (monitor.isCanceled())
+                  return Status.CANCEL_STATUS;
+               if (prefetched >= maxDocuments || System.currentTimeMillis() > deadline)
+                  return Status.OK_STATUS;
+               if (!visited.add(linkedFile)) {
+                  continue;
+               }
+
+               final var source = ContentSources.of(linkedFile);
+               if (!isPreviewable.test(source)) {
+                  continue;
+               }
+               Plugin.log().debug("Prefetching linked document [{0}]...", linkedFile);
+               final Path renderedContentPath = prerenderer.prerender(source, cancellation);
+               prefetched++;
+               if (renderedContentPath != null) {
+                  pages.add(new Page(linkedFile, renderedContentPath, page.depth + 1));
+               }
+            }
+         } catch (final IOException | RuntimeException ex) {
+            if (cancellation.isCancelled())
+               return Status.CANCEL_STATUS;
+            Plugin.log().warn(ex, "Cannot prefetch documents linked from [" + page.sourcePath + "].");
+         }
+      }
+      return Status.OK_STATUS;
+   }
+}
@@ -0,0 +1,520 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.renderer.html;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.util.AssetStore;
+import de.sebthom.eclipse.previewer.util.MiscUtils;
+import net.sf.jstuff.core.collection.LRUMap;
+
+/**
+ * HTTP server bound to the loopback interface that serves rendered documents from memory, so the browser can display a
+ * render without it being written to disk first.
+ * <p>
+ * Local files are served under paths mirroring their file system location, so relative links of a served document resolve
+ * to the files next to its source. All URLs contain a random secret generated on startup, so other local processes cannot
+ * read files through the server. Only files of the {@link AssetStore} and files below the directories of the sources
+ * published in this session are served. Served documents must not issue requests via scripts, so a script embedded in a
+ * previewed document cannot read other files through the server.
+ * <p>
+ * Documents of progressive renderers can be published as {@link DocumentStream}s while they are still rendered. They are
+ * sent to the browser using chunked transfer encoding as the content is written, so the browser displays the beginning
+ * of the document before the render completed.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class PreviewContentServer {
+
+   /**
+    * @param content the content as rendered, its {@code file:} URLs are rewritten while it is sent, see
+    *           {@link PreviewContentServer#writeWithServerUrls(CharSequence, Writer)}
+    */
+   private record Document(CharSequence content, String contentType) {
+   }
+
+   /**
+    * Document that is written while the browser already loads it. Like the content of documents published via
+    * {@link PreviewContentServer#publish(Path, CharSequence, String)}, the {@code file:} URLs of the written content are
+    * rewritten while it is sent. Must be closed once the render completed, or aborted if it failed.
+    */
+   final class DocumentStream extends Writer {
+
+      final URI uri;
+      private final String id;
+      private final String contentType;
+      private final long publishedAt = System.currentTimeMillis();
+      private final LongConsumer onFirstChunkSent;
+      private final StringBuilder content = new StringBuilder();
+      private int notifiedLength;
+      private boolean isClosed;
+      private volatile boolean isAborted;
+      private boolean isFirstChunkSent;
+
+      private DocumentStream(final String id, final URI uri, final String contentType, final LongConsumer onFirstChunkSent) {
+         this.id = id;
+         this.uri = uri;
+         this.contentType = contentType;
+         this.onFirstChunkSent = onFirstChunkSent;
+      }
+
+      /**
+       * Discards the document. A browser already loading it receives the content written so far.
+       */
+      void abort() {
+         synchronized (this) {
+            if (isClosed)
+               return;
+            isClosed = isAborted = true;
+            notifyAll();
+         }
+         streams.remove(id);
+      }
+
+      /**
+       * Blocks until enough content for a chunk was written, the document is complete or the flush interval elapsed.
+       *
+       * @return the content written after the given offset, or null if the document is complete or was aborted
+       */
+      private synchronized @Nullable String awaitChunk(final int offset) throws InterruptedException {
+         if (!isClosed && content.length() - offset < STREAM_CHUNK_SIZE) {
+            wait(STREAM_FLUSH_INTERVAL_MS);
+         }
+         int end;
+         // unless the document is complete, chunks end after a tag, so neither an attribute nor a surrogate pair is split
+         while ((end = isClosed ? content.length() : content.lastIndexOf(">") + 1) <= offset && !isClosed) {
+            wait(STREAM_FLUSH_INTERVAL_MS);
+         }
+         if (isAborted || end <= offset)
+            return null;
+         return content.substring(offset, end);
+      }
+
+      /**
+       * Completes the document. It is then served like a document published via
+       * {@link PreviewContentServer#publish(Path, CharSequence, String)}, e.g. when the browser reloads it.
+       */
+      @Override
+      public void close() {
+         synchronized (this) {
+            if (isClosed)
+               return;
+            isClosed = true;
+            notifyAll();
+         }
+         // the content is not modified anymore once the stream is closed, so it is served without copying it
+         documents.put(id, new Document(content, contentType));
+         streams.remove(id);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      private void send(final HttpExchange exchange) throws IOException, InterruptedException {
+         int offset = 0;
+         // the response is only started once content is available, so the browser keeps showing the previous page until then
+         String chunk = awaitChunk(offset);
+         if (chunk == null) {
+            exchange.sendResponseHeaders(isAborted ? 503 : 200, -1);
+            return;
+         }
+         exchange.getResponseHeaders().set("Content-Type", contentType);
+         exchange.getResponseHeaders().set("Cache-Control", "no-store");
+         exchange.getResponseHeaders().set("Content-Security-Policy", DOCUMENT_CONTENT_SECURITY_POLICY);
+         exchange.sendResponseHeaders(200, 0);
+         final var body = new OutputStreamWriter(exchange.getResponseBody(), UTF_8);
+         while (chunk != null) {
+            writeWithServerUrls(chunk, body);
+            body.flush();
+            offset += chunk.length();
+            if (markFirstChunkSent()) {
+               onFirstChunkSent.accept(System.currentTimeMillis() - publishedAt);
+            }
+            chunk = awaitChunk(offset);
+         }
+      }
+
+      /**
+       * @return false if the first chunk was already sent before, e.g. if the browser requested the document twice
+       */
+      private synchronized boolean markFirstChunkSent() {
+         if (isFirstChunkSent)
+            return false;
+         isFirstChunkSent = true;
+         return true;
+      }
+
+      private void written() {
+         if (content.length() - notifiedLength >= STREAM_CHUNK_SIZE) {
+            notifiedLength = content.length();
+            notifyAll();
+         }
+      }
+
+      private void ensureOpen() throws IOException {
+         if (isClosed)
+            throw new IOException("Document stream [" + uri + "] is closed.");
+      }
+
+      @Override
+      public synchronized void write(final char[] cbuf, final int off, final int len) throws IOException {
+         ensureOpen();
+         content.append(cbuf, off, len);
+         written();
+      }
+
+      @Override
+      public synchronized void write(final String str, final int off, final int len) throws IOException {
+         ensureOpen();
+         content.append(str, off, off + len);
+         written();
+      }
+   }
+
+   private static final int MAX_DOCUMENTS = 32;
+   /** minimum number of characters sent as one chunk of a {@link DocumentStream}, unless the flush interval elapsed */
+   private static final int STREAM_CHUNK_SIZE = 16 * 1024;
+   private static final long STREAM_FLUSH_INTERVAL_MS = 100;
+   private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+   private static final String DOCUMENTS_PATH = "/doc/";
+   private static final String FILES_PATH = "/files";
+   /** prevents scripts of served documents from issuing requests, e.g. via fetch() or XMLHttpRequest */
+   private static final String DOCUMENT_CONTENT_SECURITY_POLICY = "connect-src 'none'";
+   private static final Pattern FILE_URL_ATTRIBUTE = Pattern.compile("(?i)(\\b(?:href|src)\\s*=\\s*['\"])(file:[^'\"]+)");
+
+   private static @Nullable PreviewContentServer instance;
+   private static boolean isStartFailed;
+
+   /**
+    * @return the running server, which is started on first access, or null if it cannot be started
+    */
+   static synchronized @Nullable PreviewContentServer get() {
+      if (instance == null && !isStartFailed) {
+         try {
+            instance = new PreviewContentServer();
+         } catch (final IOException | RuntimeException ex) {
+            Plugin.log().warn(ex, "Cannot start preview content server, rendered content is loaded from disk.");
+            isStartFailed = true;
+         }
+      }
+      return instance;
+   }
+
+   /**
+    * @return the server if it was started, without starting it
+    */
+   static synchronized @Nullable PreviewContentServer getIfRunning() {
+      return instance;
+   }
+
+   public static synchronized void shutdown() {
+      final var instance = PreviewContentServer.instance;
+      if (instance != null) {
+         PreviewContentServer.instance = null;
+         instance.server.stop(0);
+         instance.executor.shutdownNow();
+      }
+   }
+
+   private static String getContentType(final String fileName) {
+      final var contentType = URLConnection.guessContentTypeFromName(fileName);
+      return contentType == null ? "application/octet-stream" : contentType;
+   }
+
+   private final HttpServer server;
+   private final ThreadPoolExecutor executor;
+   private final String contextPath;
+   private final String baseUrl;
+   private final Map<String, Document> documents = Collections.synchronizedMap(new LRUMap<>(MAX_DOCUMENTS));
+   private final Map<String, DocumentStream> streams = new ConcurrentHashMap<>();
+   private final AtomicLong documentCount = new AtomicLong();
+
+   /** the directories of the sources published in this session, whose files may be served */
+   private final Set<Path> sourceDirs = ConcurrentHashMap.newKeySet();
+
+   private PreviewContentServer() throws IOException {
+      final var secret = new byte[16];
+      new SecureRandom().nextBytes(secret);
+      contextPath = "/" + HexFormat.of().formatHex(secret);
+
+      final var threadCount = new AtomicInteger();
+      // streamed documents occupy a thread until their render completed
+      executor = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+         final var thread = new Thread(runnable, "Previewer Content Server " + threadCount.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      });
+      executor.allowCoreThreadTimeOut(true);
+
+      final InetAddress loopback = InetAddress.getLoopbackAddress();
+      server = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+      server.setExecutor(executor);
+      server.createContext(contextPath + "/", this::handle);
+      server.start();
+
+      final var host = loopback instanceof Inet6Address ? "[" + loopback.getHostAddress() + "]" : loopback.getHostAddress();
+      baseUrl = "http://" + host + ":" + server.getAddress().getPort() + contextPath;
+      Plugin.log().debug("Started preview content server on port {0}.", server.getAddress().getPort());
+   }
+
+   /**
+    * Stores the given rendered content in memory. Only the most recently published documents are kept. The content is
+    * neither copied nor encoded up front but sent as is with its {@code file:} URLs rewritten, see
+    * {@link #writeWithServerUrls(CharSequence, Writer)}.
+    *
+    * @param content must not be modified afterwards, e.g. the buffer of a completed render
+    * @return the URI under which the server serves the content
+    */
+   URI publish(final Path sourcePath, final CharSequence content, final String fileExtension) {
+      addSourceDir(sourcePath);
+      final var id = Long.toString(documentCount.incrementAndGet(), Character.MAX_RADIX);
+      final var fileName = sourcePath.getFileName() + "." + fileExtension;
+      documents.put(id, new Document(content, getDocumentContentType(fileName)));
+      return toDocumentUri(id, fileName);
+   }
+
+   /**
+    * Publishes a document whose content is written to the returned stream while the browser loads it.
+    *
+    * @param onFirstChunkSent receives the milliseconds from publishing until the first chunk was sent to the browser
+    */
+   DocumentStream publishStream(final Path sourcePath, final String fileExtension, final LongConsumer onFirstChunkSent) {
+      addSourceDir(sourcePath);
+      final var id = Long.toString(documentCount.incrementAndGet(), Character.MAX_RADIX);
+      final var fileName = sourcePath.getFileName() + "." + fileExtension;
+      final var stream = new DocumentStream(id, toDocumentUri(id, fileName), getDocumentContentType(fileName), onFirstChunkSent);
+      streams.put(id, stream);
+      return stream;
+   }
+
+   /**
+    * Allows serving the files below the directory of the given source, e.g. images referenced via relative links.
+    */
+   private void addSourceDir(final Path sourcePath) {
+      final var sourceDir = sourcePath.toAbsolutePath().normalize().getParent();
+      if (sourceDir != null) {
+         sourceDirs.add(toRealPath(sourceDir));
+      }
+   }
+
+   /**
+    * @return true if the given file is an asset or located below the directory of a source published in this session
+    */
+   private boolean isServable(final Path file) {
+      if (AssetStore.isAsset(file))
+         return true;
+      final var realFile = toRealPath(file);
+      for (final var sourceDir : sourceDirs) {
+         if (realFile.startsWith(sourceDir))
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * @return the given path with symbolic links resolved, so links cannot escape the served directories
+    */
+   private static Path toRealPath(final Path path) {
+      try {
+         return path.toRealPath();
+      } catch (final IOException ex) {
+         return path.toAbsolutePath().normalize();
+      }
+   }
+
+   private static String getDocumentContentType(final String fileName) {
+      final var contentType = getContentType(fileName);
+      return contentType.startsWith("text/") || contentType.endsWith("xml") //
+            ? contentType + "; charset=UTF-8"
+            : contentType;
+   }
+
+   private URI toDocumentUri(final String id, final String fileName) {
+      // the file name is only added to make the URL recognizable
+      return URI.create(baseUrl + DOCUMENTS_PATH + id + "/" + URLEncoder.encode(fileName, UTF_8).replace("+", "%20"));
+   }
+
+   /**
+    * @return the URI under which the server serves the given local file or directory
+    */
+   URI toServerUri(final Path localPath) {
+      return URI.create(baseUrl + FILES_PATH + localPath.toAbsolutePath().toUri().getRawPath());
+   }
+
+   /**
+    * @return the given HTML with the {@code file:} URLs rewritten, see {@link #writeWithServerUrls(CharSequence, Writer)}
+    */
+   String rewriteFileUrls(final String html) {
+      final var out = new StringBuilderWriter(html.length());
+      try {
+         writeWithServerUrls(html, out);
+      } catch (final IOException ex) {
+         throw new UncheckedIOException(ex); // cannot happen, the writer does not throw
+      }
+      return out.toString();
+   }
+
+   /**
+    * Writes the given HTML with the {@code file:} URLs of href and src attributes, e.g. of the {@code <base>} tag or of
+    * bundled stylesheets, rewritten to URLs of this server, since browsers do not load file: URLs referenced by http: pages.
+    * The content between the URLs is written as is, i.e. the HTML is not copied.
+    */
+   void writeWithServerUrls(final CharSequence html, final Writer out) throws IOException {
+      final var matcher = FILE_URL_ATTRIBUTE.matcher(html);
+      final var buffer = new char[WRITE_BUFFER_SIZE];
+      int pos = 0;
+      while (matcher.find()) {
+         write(html, pos, matcher.start(2), out, buffer);
+         out.write(toServerUrl(matcher.group(2)));
+         pos = matcher.end();
+      }
+      write(html, pos, html.length(), out, buffer);
+   }
+
+   /**
+    * Writes the given range of the given content via the given buffer, since {@link Writer#append(CharSequence, int, int)}
+    * converts the range to a string first.
+    */
+   private static void write(final CharSequence content, final int start, final int end, final Writer out, final char[] buffer)
+         throws IOException {
+      for (int pos = start; pos < end;) {
+         final int len = Math.min(buffer.length, end - pos);
+         for (int i = 0; i < len; i++) {
+            buffer[i] = content.charAt(pos + i);
+         }
+         out.write(buffer, 0, len);
+         pos += len;
+      }
+   }
+
+   private String toServerUrl(final String fileUrl) {
+      try {
+         final var fileUri = URI.create(fileUrl);
+         final var serverUrl = toServerUri(Path.of(MiscUtils.withoutFragment(fileUri))).toString();
+         // Path.toUri() only appends a slash to directories that exist
+         final var withSlash = fileUrl.endsWith("/") && !serverUrl.endsWith("/") ? serverUrl + "/" : serverUrl;
+         return fileUri.getRawFragment() == null ? withSlash : withSlash + "#" + fileUri.getRawFragment();
+      } catch (final RuntimeException ex) {
+         return fileUrl;
+      }
+   }
+
+   /**
+    * @return the local file or directory served under the given URI, or null if the URI does not refer to a local file
+    *         served by this server
+    */
+   @Nullable
+   Path toLocalPath(final URI uri) {
+      final var url = uri.toString();
+      if (!url.startsWith(baseUrl + FILES_PATH + "/"))
+         return null;
+      return toLocalPathFromRequestPath(StringUtils.removeStart(uri.getRawPath(), contextPath + FILES_PATH));
+   }
+
+   private static @Nullable Path toLocalPathFromRequestPath(final String rawPath) {
+      try {
+         return Path.of(URI.create("file://" + rawPath));
+      } catch (final RuntimeException ex) {
+         return null;
+      }
+   }
+
+   private void handle(final HttpExchange exchange) throws IOException {
+      try {
+         if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+         }
+
+         final var requestPath = StringUtils.removeStart(exchange.getRequestURI().getRawPath(), contextPath);
+         if (requestPath.startsWith(DOCUMENTS_PATH)) {
+            final var id = StringUtils.substringBefore(requestPath.substring(DOCUMENTS_PATH.length()), "/");
+            final var document = documents.get(id);
+            if (document == null) {
+               final var stream = streams.get(id);
+               if (stream == null) {
+                  exchange.sendResponseHeaders(404, -1);
+               } else {
+                  stream.send(exchange);
+               }
+               return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", document.contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.getResponseHeaders().set("Content-Security-Policy", DOCUMENT_CONTENT_SECURITY_POLICY);
+            if (document.content.isEmpty()) {
+               exchange.sendResponseHeaders(200, -1);
+               return;
+            }
+            // the length of the encoded content with rewritten URLs is not known up front, so the response is chunked
+            exchange.sendResponseHeaders(200, 0);
+            try (var body = new OutputStreamWriter(exchange.getResponseBody(), UTF_8)) {
+               writeWithServerUrls(document.content, body);
+            }
+            return;
+         }
+
+         if (requestPath.startsWith(FILES_PATH + "/")) {
+            final var file = toLocalPathFromRequestPath(requestPath.substring(FILES_PATH.length()));
+            if (file == null || !Files.isRegularFile(file) || !isServable(file)) {
+               exchange.sendResponseHeaders(404, -1);
+               return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", getContentType(file.getFileName().toString()));
+            // assets are content addressed, while other referenced files, e.g. images, may be edited while the preview is open
+            exchange.getResponseHeaders().set("Cache-Control", AssetStore.isAsset(file) ? "max-age=31536000, immutable" : "no-cache");
+            final long size = Files.size(file);
+            exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+            Files.copy(file, exchange.getResponseBody());
+            return;
+         }
+
+         exchange.sendResponseHeaders(404, -1);
+      } catch (final IOException ex) {
+         Plugin.log().debug("Cannot serve [{0}]: {1}", exchange.getRequestURI(), ex);
+      } catch (final InterruptedException ex) {
+         Thread.currentThread().interrupt();
+      } finally {
+         exchange.close();
+      }
+   }
+}
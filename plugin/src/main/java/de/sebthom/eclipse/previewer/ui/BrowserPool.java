@@ -0,0 +1,153 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.ui;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.PlatformUI;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+
+/**
+ * Pool of embedded browsers shared by all previews.
+ * <p>
+ * Starting a browser is expensive, e.g. on Linux every browser is backed by a WebKitGTK web process. Therefore browsers
+ * of closed previews are parked in a hidden shell and handed to the next preview instead of being disposed, and one spare
+ * browser is created in advance once the UI is idle after a browser was taken from the pool. Parked browsers are
+ * disposed when they were not used for {@link PluginPreferences#getBrowserPoolIdleTimeoutMillis()}.
+ * <p>
+ * Must only be used from the UI thread.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class BrowserPool {
+
+   private record ParkedBrowser(BrowserWrapper browser, long parkedAt) {
+   }
+
+   private static final int PREWARM_DELAY_MS = 2_000;
+   private static final int RECLAIM_INTERVAL_MS = 30_000;
+
+   /** parked browsers, the most recently parked last */
+   private static final Deque<ParkedBrowser> PARKED = new ArrayDeque<>();
+   private static @Nullable Shell parkingShell;
+   private static boolean isPrewarmScheduled;
+   private static boolean isReclaimScheduled;
+
+   /**
+    * @return a parked browser moved to the given parent, or a new browser if none is available. It is returned to the pool
+    *         when the parent is disposed.
+    */
+   public static BrowserWrapper acquire(final Composite parent) {
+      final var webView = PluginPreferences.getWebView();
+      @Nullable
+      BrowserWrapper browser = null;
+      ParkedBrowser parked;
+      while (browser == null && (parked = PARKED.pollLast()) != null) {
+         if (webView.equals(parked.browser.webView) && parked.browser.unpark(parent)) {
+            browser = parked.browser;
+         } else {
+            parked.browser.dispose();
+         }
+      }
+      if (browser == null) {
+         browser = new BrowserWrapper(parent);
+      }
+
+      final var acquired = browser;
+      parent.addListener(SWT.Dispose, event -> {
+         // the browser may have been released earlier and already handed to another preview
+         if (acquired.isChildOf(parent)) {
+            release(acquired);
+         }
+      });
+
+      if (PARKED.isEmpty()) {
+         schedulePrewarm(parent.getDisplay());
+      }
+      return browser;
+   }
+
+   /**
+    * Parks the given browser for reuse or disposes it if the pool is full.
+    */
+   public static void release(final BrowserWrapper browser) {
+      if (browser.isDisposed() || browser.isChildOf(parkingShell))
+         return;
+
+      final var display = browser.getDisplay();
+      if (PARKED.size() >= PluginPreferences.getBrowserPoolMaxIdle() || PlatformUI.getWorkbench().isClosing() //
+            || !browser.park(getParkingShell(display))) {
+         browser.dispose();
+         return;
+      }
+      PARKED.addLast(new ParkedBrowser(browser, System.currentTimeMillis()));
+      scheduleReclaim(display);
+   }
+
+   private static Shell getParkingShell(final Display display) {
+      var parkingShell = BrowserPool.parkingShell;
+      if (parkingShell == null || parkingShell.isDisposed()) {
+         // never opened, so the parked browsers are not visible
+         parkingShell = BrowserPool.parkingShell = new Shell(display, SWT.NO_TRIM);
+         parkingShell.setText("Previewer Browser Pool");
+      }
+      return parkingShell;
+   }
+
+   private static void schedulePrewarm(final Display display) {
+      if (isPrewarmScheduled || PluginPreferences.getBrowserPoolMaxIdle() < 1)
+         return;
+      isPrewarmScheduled = true;
+      display.timerExec(PREWARM_DELAY_MS, () -> {
+         isPrewarmScheduled = false;
+         if (!PARKED.isEmpty() || PluginPreferences.getBrowserPoolMaxIdle() < 1)
+            return;
+         try {
+            final var browser = new BrowserWrapper(getParkingShell(display));
+            // start the web process
+            browser.setContent("<html></html>");
+            PARKED.addLast(new ParkedBrowser(browser, System.currentTimeMillis()));
+            scheduleReclaim(display);
+         } catch (final RuntimeException ex) {
+            Plugin.log().warn(ex, "Cannot create spare browser.");
+         }
+      });
+   }
+
+   private static void scheduleReclaim(final Display display) {
+      if (isReclaimScheduled)
+         return;
+      isReclaimScheduled = true;
+      display.timerExec(RECLAIM_INTERVAL_MS, () -> {
+         isReclaimScheduled = false;
+         final long parkedBefore = System.currentTimeMillis() - PluginPreferences.getBrowserPoolIdleTimeoutMillis();
+         final int maxIdle = PluginPreferences.getBrowserPoolMaxIdle();
+         // the least recently parked browsers are first
+         for (final var it = PARKED.iterator(); it.hasNext();) {
+            final var parked = it.next();
+            if (parked.parkedAt < parkedBefore || PARKED.size() > maxIdle) {
+               it.remove();
+               parked.browser.dispose();
+            }
+         }
+         if (!PARKED.isEmpty()) {
+            scheduleReclaim(display);
+         }
+      });
+   }
+
+   private BrowserPool() {
+   }
+}
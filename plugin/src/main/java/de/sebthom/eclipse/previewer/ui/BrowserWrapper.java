@@ -9,6 +9,7 @@
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Predicate;
@@ -27,12 +28,15 @@
 import org.eclipse.swt.dnd.TextTransfer;
 import org.eclipse.swt.dnd.Transfer;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.services.IDisposable;
 
 import de.sebthom.eclipse.commons.ui.UI;
 import de.sebthom.eclipse.previewer.Plugin;
 import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
+import de.sebthom.eclipse.previewer.util.RenderEvents;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
 import net.sf.jstuff.core.collection.tuple.Tuple2;
 
 /**
@@ -40,11 +44,18 @@
  */
 public final class BrowserWrapper implements IDisposable {
 
-   private static Browser createBrowser(final Composite parent) {
+   /**
+    * Replaces {@code deleteCount} top-level elements of the displayed body starting at index {@code start} by the elements
+    * of the given HTML fragment.
+    */
+   public record BodyPatch(int start, int deleteCount, String html) {
+   }
+
+   private static Browser createBrowser(final Composite parent, final String webView) {
       if (!SystemUtils.IS_OS_WINDOWS)
          return new Browser(parent, SWT.NONE);
 
-      final int style = switch (PluginPreferences.getWebView()) {
+      final int style = switch (webView) {
          case "edge" -> SWT.EDGE;
          // The stored value is "default" for historical reasons. On old SWT releases, SWT.NONE was IE on Windows;
          // on newer releases, request SWT.IE reflectively to keep that preference stable.
@@ -72,8 +83,14 @@ private static int getInternetExplorerBrowserStyle() {
    private final Clipboard clipboard;
    private @Nullable Predicate<URI> shouldOverrideNavigation;
 
+   /**
+    * the web view implementation preference the browser was created with
+    */
+   final String webView;
+
    public BrowserWrapper(final Composite parent) {
-      final var browser = createBrowser(parent);
+      webView = PluginPreferences.getWebView();
+      final var browser = createBrowser(parent, webView);
       this.browser = browser;
       clipboard = new Clipboard(parent.getDisplay());
 
@@ -172,31 +189,163 @@ public boolean setContent(final String content) {
 
    private ProgressListener onPageLoaded = new ProgressAdapter() {};
 
+   /** page load of the latest navigation, null once it was committed */
+   private RenderEvents.@Nullable PageLoad pendingPageLoad;
+   private long pendingPageLoadStartedAt;
+
    public CompletionStage<@Nullable Void> navigateTo(final String url) {
       return UI.supply(() -> {
          if (browser.isDisposed())
             return CompletableFuture.failedStage(new IllegalStateException("Browser is already disposed"));
 
          browser.removeProgressListener(onPageLoaded);
+         commitPageLoad(false);
+
+         final var pageLoad = pendingPageLoad = new RenderEvents.PageLoad();
+         pageLoad.url = url;
+         pageLoad.begin();
+         pendingPageLoadStartedAt = System.currentTimeMillis();
 
          final var future = new CompletableFuture<@Nullable Void>();
          onPageLoaded = new ProgressAdapter() {
             @Override
             public void completed(final ProgressEvent event) {
                browser.removeProgressListener(this);
+               if (pendingPageLoad == pageLoad) {
+                  commitPageLoad(true);
+               }
                future.complete(null);
             }
          };
          browser.addProgressListener(onPageLoaded);
 
-         if (browser.setUrl(url))
+         final var navigation = new RenderEvents.BrowserNavigation();
+         navigation.begin();
+         final boolean isNavigating = browser.setUrl(url);
+         navigation.end();
+         if (navigation.shouldCommit()) {
+            navigation.url = url;
+            navigation.commit();
+         }
+         if (isNavigating)
             return future;
 
          browser.removeProgressListener(onPageLoaded);
+         commitPageLoad(false);
          return CompletableFuture.failedStage(new IllegalStateException("Failed to navigate to " + url + " for an unknown reason."));
       });
    }
 
+   private void commitPageLoad(final boolean completed) {
+      final var pageLoad = pendingPageLoad;
+      if (pageLoad != null) {
+         pendingPageLoad = null;
+         pageLoad.end();
+         if (completed) {
+            RenderMetrics.recordPageLoad(System.currentTimeMillis() - pendingPageLoadStartedAt);
+         }
+         if (pageLoad.shouldCommit()) {
+            pageLoad.completed = completed;
+            pageLoad.commit();
+         }
+      }
+   }
+
+   /**
+    * Applies the given patches to the body of the displayed page without reloading it, so e.g. scroll position, zoom level
+    * and the DOM state of unchanged elements are preserved. Afterwards a {@code previewer:patched} event is dispatched on
+    * the document whose {@code detail.nodes} contains the inserted elements, which allows scripts of the page to process
+    * them.
+    *
+    * @param expectedBlockCount number of top-level elements the body must currently have, otherwise it is not patched
+    * @param patches to be applied in the given order, using indexes of the current top-level elements
+    * @return false if the page was not patched, e.g. because it does not have the expected structure
+    */
+   public boolean patchBody(final int expectedBlockCount, final List<BodyPatch> patches) {
+      final var script = new StringBuilder("""
+         return (function(expectedBlockCount, patches) {
+           var body = document.body;
+           if (!body || body.children.length !== expectedBlockCount || !('content' in document.createElement('template')))
+             return false;
+           var inserted = [];
+           patches.forEach(function(patch) {
+             var ref = body.children[patch[0] + patch[1]] || null;
+             for (var i = 0; i < patch[1]; i++) body.removeChild(body.children[patch[0]]);
+             var template = document.createElement('template');
+             template.innerHTML = patch[2];
+             inserted.push.apply(inserted, Array.prototype.slice.call(template.content.children));
+             body.insertBefore(template.content, ref);
+           });
+           document.dispatchEvent(new CustomEvent('previewer:patched', { detail: { nodes: inserted } }));
+           return true;
+         })(""").append(expectedBlockCount).append(", [");
+      for (int i = 0; i < patches.size(); i++) {
+         final var patch = patches.get(i);
+         if (i > 0) {
+            script.append(',');
+         }
+         script.append('[').append(patch.start).append(',').append(patch.deleteCount).append(',');
+         appendJavaScriptString(script, patch.html);
+         script.append(']');
+      }
+      script.append("]);");
+
+      return UI.supply(() -> {
+         if (browser.isDisposed())
+            return false;
+         try {
+            return Boolean.TRUE.equals(browser.evaluate(script.toString()));
+         } catch (final SWTException ex) {
+            Plugin.log().warn(ex, "Cannot patch displayed page.");
+            return false;
+         }
+      });
+   }
+
+   /**
+    * Shows the given text as an additional line of the info box of the displayed page, if it has one.
+    */
+   public void setInfoBoxStatus(final String status) {
+      final var script = new StringBuilder("""
+         (function(status) {
+           var infoBox = document.querySelector('#previewer_infobox > span');
+           if (!infoBox) return;
+           var line = document.getElementById('previewer_infobox_status');
+           if (!line) {
+             infoBox.appendChild(document.createElement('br'));
+             line = document.createElement('span');
+             line.id = 'previewer_infobox_status';
+             infoBox.appendChild(line);
+           }
+           line.textContent = status;
+         })(""");
+      appendJavaScriptString(script, status);
+      script.append(");");
+
+      UI.run(() -> {
+         if (!browser.isDisposed()) {
+            browser.execute(script.toString());
+         }
+      });
+   }
+
+   private static void appendJavaScriptString(final StringBuilder out, final String value) {
+      out.append('"');
+      for (int i = 0, len = value.length(); i < len; i++) {
+         final char ch = value.charAt(i);
+         switch (ch) {
+            case '"' -> out.append("\\\"");
+            case '\\' -> out.append("\\\\");
+            case '\n' -> out.append("\\n");
+            case '\r' -> out.append("\\r");
+            case '\u2028' -> out.append("\\u2028");
+            case '\u2029' -> out.append("\\u2029");
+            default -> out.append(ch);
+         }
+      }
+      out.append('"');
+   }
+
    public String getUrl() {
       return UI.supply(() -> browser.isDisposed() ? "" : browser.getUrl());
    }
@@ -241,6 +390,44 @@ public void setZoom(final float zoom) {
       UI.run(() -> browser.execute("document.body.style.transform = 'scale(" + zoom + ")';document.body.style.transformOrigin = '0 0';"));
    }
 
+   Display getDisplay() {
+      return browser.getDisplay();
+   }
+
+   boolean isChildOf(final @Nullable Composite parent) {
+      return !browser.isDisposed() && browser.getParent() == parent;
+   }
+
+   boolean isDisposed() {
+      return browser.isDisposed();
+   }
+
+   /**
+    * Moves the browser to the given hidden parent and unloads the displayed page, so the browser can be reused.
+    *
+    * @return false if the browser cannot be moved to another parent on this platform
+    */
+   boolean park(final Composite parkingParent) {
+      if (browser.isDisposed() || !browser.isReparentable())
+         return false;
+
+      shouldOverrideNavigation = null;
+      browser.removeProgressListener(onPageLoaded);
+      commitPageLoad(false);
+      browser.setText("<html></html>");
+      return browser.setParent(parkingParent);
+   }
+
+   /**
+    * Moves a parked browser to the given parent.
+    */
+   boolean unpark(final Composite parent) {
+      if (browser.isDisposed() || !browser.setParent(parent))
+         return false;
+      parent.layout(true);
+      return true;
+   }
+
    @Override
    public void dispose() {
       clipboard.dispose();
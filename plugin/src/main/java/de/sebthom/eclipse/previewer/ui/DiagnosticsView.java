@@ -0,0 +1,300 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.ui;
+
+import static net.sf.jstuff.core.validation.NullAnalysisHelper.lateNonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.ui.part.ViewPart;
+
+import de.sebthom.eclipse.commons.ui.UI;
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.cache.RenderCache;
+import de.sebthom.eclipse.previewer.cache.RenderCaches;
+import de.sebthom.eclipse.previewer.renderer.RenderCostClass;
+import de.sebthom.eclipse.previewer.renderer.RenderScheduler;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
+import de.sebthom.eclipse.previewer.util.RenderMetrics.Histogram;
+
+/**
+ * View showing the render metrics of the current session collected by {@link RenderMetrics}, the render cache statistics
+ * and the render queues, refreshed every {@link #REFRESH_INTERVAL_MS}.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class DiagnosticsView extends ViewPart {
+
+   public static final String ID = DiagnosticsView.class.getName();
+
+   private static final long REFRESH_INTERVAL_MS = 2_000;
+
+   /**
+    * the disk usage of the render caches is determined by scanning the cache folders, so it is refreshed less often
+    */
+   private static final int CACHE_USAGE_REFRESH_EVERY_NTH_REFRESH = 15;
+
+   private static final String[] COLUMNS = {"Metric", "Count", "Avg ms", "p50 ms", "p95 ms", "p99 ms", "Max ms", "Details"};
+
+   /**
+    * Collected metrics, immutable so it can be handed from the collecting job to the UI thread and the JSON export.
+    */
+   private record Snapshot(Instant collectedAt, Map<String, Histogram.Snapshot> renderTimes, Map<String, Long> renderFailures,
+         Map<String, Histogram.Snapshot> firstPaintTimes, Histogram.Snapshot previewUpdateTimes, Histogram.Snapshot pageLoadTimes,
+         Map<String, Histogram.Snapshot> externalProcessTimes,
+         Map<String, RenderCache.Statistics> cacheStatistics, List<RenderCaches.Usage> cacheUsage, RenderScheduler.Statistics scheduler,
+         Map<String, Integer> costClassQueueDepths) {
+   }
+
+   private Table table = lateNonNull();
+   private volatile @Nullable Snapshot snapshot;
+   private volatile List<RenderCaches.Usage> cacheUsage = Collections.emptyList();
+   private int refreshCount;
+
+   private final Job refreshJob = new Job("Collecting previewer diagnostics") {
+      @Override
+      protected IStatus run(final IProgressMonitor monitor) {
+         if (refreshCount++ % CACHE_USAGE_REFRESH_EVERY_NTH_REFRESH == 0) {
+            cacheUsage = RenderCaches.getUsage();
+         }
+         final var costClassQueueDepths = new TreeMap<String, Integer>();
+         for (final var costClass : RenderCostClass.values()) {
+            costClassQueueDepths.put(costClass.id, costClass.getQueueDepth());
+         }
+         final var snapshot = DiagnosticsView.this.snapshot = new Snapshot(Instant.now(), RenderMetrics.getRenderTimes(), RenderMetrics
+            .getRenderFailures(), RenderMetrics.getFirstPaintTimes(), RenderMetrics.getPreviewUpdateTimes(), RenderMetrics
+               .getPageLoadTimes(), RenderMetrics.getExternalProcessTimes(), RenderCaches.getStatistics(), cacheUsage, RenderScheduler
+                  .getStatistics(), costClassQueueDepths);
+         UI.run(() -> show(snapshot));
+         schedule(REFRESH_INTERVAL_MS);
+         return Status.OK_STATUS;
+      }
+
+      @Override
+      public boolean shouldSchedule() {
+         return !table.isDisposed();
+      }
+   };
+
+   @Override
+   public void createPartControl(final Composite parent) {
+      parent.setLayout(new FillLayout());
+      table = new Table(parent, SWT.FULL_SELECTION | SWT.V_SCROLL | SWT.H_SCROLL);
+      table.setHeaderVisible(true);
+      table.setLinesVisible(true);
+      for (final String column : COLUMNS) {
+         final var tableColumn = new TableColumn(table, column.equals(COLUMNS[0]) || column.equals(COLUMNS[COLUMNS.length - 1])
+               ? SWT.LEFT
+               : SWT.RIGHT);
+         tableColumn.setText(column);
+      }
+
+      refreshJob.setSystem(true);
+      refreshJob.setPriority(Job.DECORATE);
+      refreshJob.schedule();
+   }
+
+   @Override
+   public void dispose() {
+      refreshJob.cancel();
+      super.dispose();
+   }
+
+   /**
+    * Asks for a target file and writes the currently shown metrics to it as JSON, e.g. to attach them to a bug report.
+    */
+   public void exportToJson() {
+      final var snapshot = this.snapshot;
+      if (snapshot == null)
+         return;
+
+      final var dialog = new FileDialog(table.getShell(), SWT.SAVE);
+      dialog.setText("Export Previewer Diagnostics");
+      dialog.setFilterExtensions(new String[] {"*.json"});
+      dialog.setFileName("previewer-diagnostics.json");
+      dialog.setOverwrite(true);
+      final String target = dialog.open();
+      if (target == null)
+         return;
+
+      try {
+         Files.writeString(Path.of(target), toJson(snapshot));
+      } catch (final IOException ex) {
+         Plugin.log().error(ex);
+         MessageDialog.openError(table.getShell(), "Export Previewer Diagnostics", "Cannot write [" + target + "]: " + ex.getMessage());
+      }
+   }
+
+   @Override
+   public void setFocus() {
+      table.setFocus();
+   }
+
+   private void addHistogramRow(final String metric, final Histogram.Snapshot histogram, final String details) {
+      addRow(metric, Long.toString(histogram.count()), Long.toString(histogram.avgMillis()), Long.toString(histogram.p50Millis()), Long
+         .toString(histogram.p95Millis()), Long.toString(histogram.p99Millis()), Long.toString(histogram.maxMillis()), details);
+   }
+
+   private void addRow(final String... values) {
+      new TableItem(table, SWT.NONE).setText(values);
+   }
+
+   private void show(final Snapshot snapshot) {
+      if (table.isDisposed())
+         return;
+
+      table.setRedraw(false);
+      try {
+         final int topIndex = table.getTopIndex();
+         table.removeAll();
+
+         addHistogramRow("Preview updates", snapshot.previewUpdateTimes, "incl. render cache hits");
+         snapshot.renderTimes.forEach((rendererId, histogram) -> {
+            addHistogramRow("Render: " + rendererId, histogram, "failed: " + snapshot.renderFailures.getOrDefault(rendererId, 0L));
+            final var firstPaintTimes = snapshot.firstPaintTimes.get(rendererId);
+            if (firstPaintTimes != null) {
+               addHistogramRow("First paint: " + rendererId, firstPaintTimes, "streamed renders, until the first chunk was sent");
+            }
+         });
+         snapshot.renderFailures.forEach((rendererId, failures) -> {
+            if (!snapshot.renderTimes.containsKey(rendererId)) {
+               addRow("Render: " + rendererId, "0", "", "", "", "", "", "failed: " + failures);
+            }
+         });
+         snapshot.externalProcessTimes.forEach((executable, histogram) -> addHistogramRow("Process: " + executable, histogram, ""));
+         addHistogramRow("Browser page loads", snapshot.pageLoadTimes, "");
+
+         final var scheduler = snapshot.scheduler;
+         addRow("Render queue", Long.toString(scheduler.executed()), Long.toString(scheduler.avgWaitMillis()), "", "", "", Long.toString(
+            scheduler.maxWaitMillis()), "waiting: " + scheduler.queueDepth() + ", dropped: " + scheduler.dropped() + ", cancelled: "
+                  + scheduler.cancelled() + ", waiting per cost class: " + snapshot.costClassQueueDepths);
+
+         snapshot.cacheStatistics.forEach((cacheFolderName, statistics) -> {
+            final var details = new StringBuilder("hit ratio: ").append(hitRatioPercent(statistics)).append(" % (memory: ") //
+               .append(statistics.memoryHits()).append(", disk: ").append(statistics.diskHits()).append(", misses: ") //
+               .append(statistics.misses()).append(')');
+            for (final var usage : snapshot.cacheUsage) {
+               if (usage.cacheFolderName().equals(cacheFolderName)) {
+                  details.append(", ").append(usage.entries()).append(" entries, ") //
+                     .append(FileUtils.byteCountToDisplaySize(usage.bytes())).append(" on disk");
+               }
+            }
+            addRow("Cache: " + cacheFolderName, Long.toString(statistics.lookups()), "", "", "", "", "", details.toString());
+         });
+
+         for (final var column : table.getColumns()) {
+            column.pack();
+         }
+         table.setTopIndex(topIndex);
+      } finally {
+         table.setRedraw(true);
+      }
+   }
+
+   private static long hitRatioPercent(final RenderCache.Statistics statistics) {
+      return statistics.lookups() == 0 ? 0 : (statistics.memoryHits() + statistics.diskHits()) * 100 / statistics.lookups();
+   }
+
+   private static String toJson(final Snapshot snapshot) {
+      final var json = new StringBuilder("{\n");
+      json.append("  \"collectedAt\": ").append(jsonString(snapshot.collectedAt.toString())).append(",\n");
+      json.append("  \"previewUpdates\": ").append(toJson(snapshot.previewUpdateTimes)).append(",\n");
+      json.append("  \"renders\": ").append(toJson(snapshot.renderTimes)).append(",\n");
+      json.append("  \"firstPaints\": ").append(toJson(snapshot.firstPaintTimes)).append(",\n");
+
+      final var renderFailures = new ArrayList<String>();
+      snapshot.renderFailures.forEach((rendererId, failures) -> renderFailures.add(jsonString(rendererId) + ": " + failures));
+      json.append("  \"renderFailures\": {").append(String.join(", ", renderFailures)).append("},\n");
+
+      json.append("  \"externalProcesses\": ").append(toJson(snapshot.externalProcessTimes)).append(",\n");
+      json.append("  \"pageLoads\": ").append(toJson(snapshot.pageLoadTimes)).append(",\n");
+
+      final var scheduler = snapshot.scheduler;
+      final var costClassQueueDepths = new ArrayList<String>();
+      snapshot.costClassQueueDepths.forEach((costClass, depth) -> costClassQueueDepths.add(jsonString(costClass) + ": " + depth));
+      json.append("  \"renderQueue\": {\"queueDepth\": ").append(scheduler.queueDepth()) //
+         .append(", \"executed\": ").append(scheduler.executed()) //
+         .append(", \"dropped\": ").append(scheduler.dropped()) //
+         .append(", \"cancelled\": ").append(scheduler.cancelled()) //
+         .append(", \"avgWaitMillis\": ").append(scheduler.avgWaitMillis()) //
+         .append(", \"maxWaitMillis\": ").append(scheduler.maxWaitMillis()) //
+         .append(", \"costClassQueueDepths\": {").append(String.join(", ", costClassQueueDepths)).append("}},\n");
+
+      final var caches = new ArrayList<String>();
+      snapshot.cacheStatistics.forEach((cacheFolderName, statistics) -> {
+         final var cache = new StringBuilder("    ").append(jsonString(cacheFolderName)) //
+            .append(": {\"memoryHits\": ").append(statistics.memoryHits()) //
+            .append(", \"diskHits\": ").append(statistics.diskHits()) //
+            .append(", \"misses\": ").append(statistics.misses()) //
+            .append(", \"hitRatioPercent\": ").append(hitRatioPercent(statistics));
+         for (final var usage : snapshot.cacheUsage) {
+            if (usage.cacheFolderName().equals(cacheFolderName)) {
+               cache.append(", \"entries\": ").append(usage.entries()).append(", \"bytesOnDisk\": ").append(usage.bytes());
+            }
+         }
+         caches.add(cache.append('}').toString());
+      });
+      json.append("  \"caches\": {\n").append(String.join(",\n", caches)).append("\n  }\n");
+      return json.append("}\n").toString();
+   }
+
+   private static String toJson(final Histogram.Snapshot histogram) {
+      return "{\"count\": " + histogram.count() //
+            + ", \"avgMillis\": " + histogram.avgMillis() //
+            + ", \"p50Millis\": " + histogram.p50Millis() //
+            + ", \"p95Millis\": " + histogram.p95Millis() //
+            + ", \"p99Millis\": " + histogram.p99Millis() //
+            + ", \"maxMillis\": " + histogram.maxMillis() + "}";
+   }
+
+   private static String toJson(final Map<String, Histogram.Snapshot> histograms) {
+      final var entries = new ArrayList<String>();
+      histograms.forEach((name, histogram) -> entries.add("    " + jsonString(name) + ": " + toJson(histogram)));
+      return entries.isEmpty() ? "{}" : "{\n" + String.join(",\n", entries) + "\n  }";
+   }
+
+   private static String jsonString(final String value) {
+      final var json = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0, len = value.length(); i < len; i++) {
+         final char ch = value.charAt(i);
+         switch (ch) {
+            case '"' -> json.append("\\\"");
+            case '\\' -> json.append("\\\\");
+            default -> {
+               if (ch < 0x20) {
+                  json.append(String.format("\\u%04x", (int) ch));
+               } else {
+                  json.append(ch);
+               }
+            }
+         }
+      }
+      return json.append('"').toString();
+   }
+}
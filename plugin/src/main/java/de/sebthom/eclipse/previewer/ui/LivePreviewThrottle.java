@@ -0,0 +1,87 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.ui;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.Plugin;
+
+/**
+ * Background job that passes the latest of a burst of events to a listener, at most once per interval.
+ * <p>
+ * Unlike a fixed throttle, the interval is determined per event, e.g. based on how long the re-render triggered by the
+ * event is expected to take. Events fired while the listener is running are delivered once the interval after the start
+ * of that run has passed.
+ *
+ * @author Sebastian Thomschke
+ */
+final class LivePreviewThrottle<T> extends Job {
+
+   private final ToLongFunction<T> intervalMillis;
+   private final Consumer<T> listener;
+   private final AtomicReference<@Nullable T> pendingEvent = new AtomicReference<>();
+   private volatile long lastRunStartedAt;
+   private volatile boolean isClosed;
+
+   LivePreviewThrottle(final ToLongFunction<T> intervalMillis, final Consumer<T> listener) {
+      super("Updating live preview");
+      this.intervalMillis = intervalMillis;
+      this.listener = listener;
+      setSystem(true);
+      setPriority(Job.INTERACTIVE);
+   }
+
+   void close() {
+      isClosed = true;
+      pendingEvent.set(null);
+      cancel();
+   }
+
+   void fire(final T event) {
+      pendingEvent.set(event);
+      // a waiting or sleeping job delivers the latest event anyway, a running job is re-scheduled once it finished
+      final int state = getState();
+      if (state == Job.NONE || state == Job.RUNNING) {
+         scheduleFor(event);
+      }
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      final T event = pendingEvent.getAndSet(null);
+      if (event == null)
+         return Status.OK_STATUS;
+      if (monitor.isCanceled())
+         return Status.CANCEL_STATUS;
+
+      lastRunStartedAt = System.currentTimeMillis();
+      try {
+         listener.accept(event);
+      } catch (final RuntimeException ex) {
+         Plugin.log().error(ex);
+      }
+      return Status.OK_STATUS;
+   }
+
+   private void scheduleFor(final T event) {
+      final long elapsedMillis = System.currentTimeMillis() - lastRunStartedAt;
+      schedule(Math.max(0, intervalMillis.applyAsLong(event) - elapsedMillis));
+   }
+
+   @Override
+   public boolean shouldSchedule() {
+      return !isClosed;
+   }
+}
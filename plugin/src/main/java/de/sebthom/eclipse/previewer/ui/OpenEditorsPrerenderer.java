@@ -0,0 +1,159 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.ui;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IWorkbenchPage;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
+import de.sebthom.eclipse.previewer.ui.editorsupport.CompareEditorSupport;
+import de.sebthom.eclipse.previewer.ui.editorsupport.EditorSupport;
+import de.sebthom.eclipse.previewer.ui.editorsupport.TextEditorSupport;
+
+/**
+ * Background job that renders the previews of all open text and compare editors into the render cache while the user is
+ * idle, so switching editor tabs results in cache hits.
+ * <p>
+ * The job pauses as soon as the user types and only resumes after {@link #IDLE_DELAY_MS}. To limit its CPU usage it
+ * waits proportionally to the time spent on each render before rendering the next source. A render in progress is
+ * aborted when the user becomes active and retried once the user is idle again.
+ *
+ * @author Sebastian Thomschke
+ */
+final class OpenEditorsPrerenderer extends Job {
+
+   private static final long IDLE_DELAY_MS = 2_000;
+
+   /**
+    * max share of the elapsed time spent pre-rendering
+    */
+   private static final double CPU_BUDGET = 0.25;
+
+   private final PreviewComposite renderPane;
+   private final List<EditorSupport> editorSupports = List.of(new TextEditorSupport(), new CompareEditorSupport());
+   private final Queue<ContentSource> pendingSources = new ConcurrentLinkedQueue<>();
+   private volatile long lastUserActivity;
+
+   /** cancellation token of the render in progress */
+   private volatile CancellationToken cancellation = new CancellationToken();
+
+   OpenEditorsPrerenderer(final PreviewComposite renderPane) {
+      super("Pre-rendering previews of open editors");
+      this.renderPane = renderPane;
+      setSystem(true);
+      setPriority(Job.DECORATE);
+   }
+
+   /**
+    * Collects the sources of all open editors except the given one and schedules them for pre-rendering once the user is
+    * idle. Must be called on the UI thread.
+    */
+   void prerenderOpenEditors(final IWorkbenchPage page, final @Nullable IEditorPart linkedEditor) {
+      pendingSources.clear();
+      if (!PluginPreferences.isPrerenderOpenEditors())
+         return;
+
+      for (final var editorRef : page.getEditorReferences()) {
+         // only consider editors that are already instantiated, i.e. do not restore editors just to pre-render them
+         final var editor = editorRef.getEditor(false);
+         if (editor == null || editor == linkedEditor) {
+            continue;
+         }
+         for (final var support : editorSupports) {
+            try (var editorContext = support.createFrom(editorRef)) {
+               if (editorContext != null) {
+                  final ContentSource source = editorContext.getSource();
+                  // the content of dirty editors must be captured on the UI thread
+                  pendingSources.add(source.isSynced() ? source : source.snapshot());
+                  break;
+               }
+            } catch (final IOException ex) {
+               Plugin.log().warn(ex, "Cannot read content of editor [" + editor.getTitle() + "].");
+            }
+         }
+      }
+
+      if (!pendingSources.isEmpty()) {
+         schedule(IDLE_DELAY_MS);
+      }
+   }
+
+   @Override
+   protected IStatus run(final IProgressMonitor monitor) {
+      ContentSource source;
+      while ((source = pendingSources.peek()) != null) {
+         if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
+
+         final long idleTime = System.currentTimeMillis() - lastUserActivity;
+         if (idleTime < IDLE_DELAY_MS) {
+            schedule(IDLE_DELAY_MS - idleTime);
+            return Status.OK_STATUS;
+         }
+
+         pendingSources.poll();
+         final var cancellation = new CancellationToken();
+         this.cancellation = cancellation;
+         if (System.currentTimeMillis() - lastUserActivity < IDLE_DELAY_MS) {
+            // the user became active in the meantime
+            cancellation.cancel();
+         }
+         final long startedAt = System.currentTimeMillis();
+         renderPane.prerender(source, cancellation);
+         if (cancellation.isCancelled()) {
+            pendingSources.add(source);
+            continue;
+         }
+         final long renderTime = System.currentTimeMillis() - startedAt;
+
+         final long pause = (long) (renderTime * (1 - CPU_BUDGET) / CPU_BUDGET);
+         if (pause > 0 && !pendingSources.isEmpty()) {
+            schedule(pause);
+            return Status.OK_STATUS;
+         }
+      }
+      return Status.OK_STATUS;
+   }
+
+   /**
+    * Pauses pre-rendering, e.g. while the user types in the linked editor.
+    */
+   void userActive() {
+      lastUserActivity = System.currentTimeMillis();
+      cancellation.cancel();
+      if (getState() == Job.RUNNING) {
+         cancel();
+         if (!pendingSources.isEmpty()) {
+            schedule(IDLE_DELAY_MS);
+         }
+      }
+   }
+
+   void dispose() {
+      pendingSources.clear();
+      cancellation.cancel();
+      cancel();
+   }
+
+   @Override
+   public boolean shouldSchedule() {
+      return !renderPane.isDisposed();
+   }
+}
@@ -8,9 +8,9 @@
 
 import java.net.URI;
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.commons.lang3.mutable.MutableFloat;
@@ -18,7 +18,9 @@
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IRegistryChangeListener;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.content.IContentTypeManager.IContentTypeChangeListener;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StackLayout;
@@ -33,13 +35,17 @@
 import de.sebthom.eclipse.commons.ui.UI;
 import de.sebthom.eclipse.previewer.Constants;
 import de.sebthom.eclipse.previewer.Plugin;
+import de.sebthom.eclipse.previewer.api.CancellationToken;
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.api.PreviewRenderer;
 import de.sebthom.eclipse.previewer.prefs.PluginPreferences;
 import de.sebthom.eclipse.previewer.renderer.PreviewRendererExtension;
+import de.sebthom.eclipse.previewer.renderer.RenderDispatchIndex;
+import de.sebthom.eclipse.previewer.renderer.RenderScheduler;
 import de.sebthom.eclipse.previewer.renderer.html.ExtensibleHtmlPreviewRenderer;
 import de.sebthom.eclipse.previewer.util.ContentSources;
 import de.sebthom.eclipse.previewer.util.MiscUtils;
+import de.sebthom.eclipse.previewer.util.RenderMetrics;
 import net.sf.jstuff.core.exception.Exceptions;
 
 /**
@@ -58,9 +64,28 @@ final class PreviewComposite extends Composite {
       4. Download/install a newer WebView2 version from: https://developer.microsoft.com/microsoft-edge/webview2
       """;
 
-   private final Map<PreviewRendererExtension<PreviewRenderer>, Composite> renderers = new LinkedHashMap<>();
+   /** replaced on the UI thread when the extension registry changes */
+   private volatile List<PreviewRendererExtension<PreviewRenderer>> renderers = List.of();
+   private volatile RenderDispatchIndex<PreviewRendererExtension<PreviewRenderer>> rendererIndex = new RenderDispatchIndex<>(List.of());
+
+   private final IRegistryChangeListener registryChangeListener = event -> {
+      if (event.getExtensionDeltas(Plugin.PLUGIN_ID, Constants.EXTENSION_POINT_RENDERERS).length > 0) {
+         UI.run(() -> {
+            if (!isDisposed()) {
+               loadRenderersFromExtensionPoints();
+            }
+         });
+      }
+   };
+   private final IContentTypeChangeListener contentTypeChangeListener = event -> rendererIndex.clearMemoized();
+
+   /**
+    * parent composites of the renderers whose UI was already created, only accessed from the UI thread
+    */
+   private final Map<PreviewRendererExtension<PreviewRenderer>, Composite> rendererParents = new HashMap<>();
    private final StackLayout stack = new StackLayout();
    private final boolean openPreviewableLinksInPreviewEditor;
+   private final RenderScheduler.Lane renderLane;
    private StyledText infoPanel;
 
    static PreviewComposite forPreviewEditor(final Composite parent, final int style) {
@@ -74,6 +99,7 @@ static PreviewComposite forPreviewView(final Composite parent, final int style)
    private PreviewComposite(final Composite parent, final int style, final boolean openPreviewableLinksInPreviewEditor) {
       super(parent, style);
       this.openPreviewableLinksInPreviewEditor = openPreviewableLinksInPreviewEditor;
+      renderLane = new RenderScheduler.Lane(openPreviewableLinksInPreviewEditor ? "Preview Editor" : "Preview View");
       setLayout(stack);
 
       infoPanel = new StyledText(this, SWT.NONE);
@@ -85,51 +111,91 @@ private PreviewComposite(final Composite parent, final int style, final boolean
       infoPanel.setCaret(null);
 
       loadRenderersFromExtensionPoints();
+      Platform.getExtensionRegistry().addRegistryChangeListener(registryChangeListener, Plugin.PLUGIN_ID);
+      Platform.getContentTypeManager().addContentTypeChangeListener(contentTypeChangeListener);
    }
 
    @Override
    public void dispose() {
-      renderers.keySet().forEach(ext -> ext.renderer.dispose());
-      renderers.clear();
+      renderLane.cancel();
+      Platform.getExtensionRegistry().removeRegistryChangeListener(registryChangeListener);
+      Platform.getContentTypeManager().removeContentTypeChangeListener(contentTypeChangeListener);
+      Plugin.log().debug("Render scheduler statistics: {0}", RenderScheduler.getStatistics());
+      // also dispose renderers instantiated without UI, e.g. for pre-rendering
+      for (final var rendererExt : renderers) {
+         final var renderer = rendererExt.getRendererIfInstantiated();
+         if (renderer != null) {
+            renderer.dispose();
+         }
+      }
+      rendererParents.clear();
+      renderers = List.of();
       super.dispose();
    }
 
    @SuppressWarnings("all")
    float getZoom() {
       final var zoom = new MutableFloat(1);
-      renderers.entrySet().stream() //
+      rendererParents.entrySet().stream() //
          .filter(e -> e.getValue() == stack.topControl) //
-         .findFirst().ifPresent(e -> zoom.setValue(e.getKey().renderer.getZoom()));
+         .findFirst().ifPresent(e -> zoom.setValue(e.getKey().getRenderer().getZoom()));
       return zoom.floatValue();
    }
 
+   /**
+    * (Re-)reads the renderers and rebuilds the dispatch index. Renderers that are no longer contributed, e.g. because their
+    * bundle was uninstalled, are disposed together with their UI. Must be called on the UI thread.
+    */
    private void loadRenderersFromExtensionPoints() {
-      for (final IConfigurationElement ce : Plugin.getExtensionConfigurations(Constants.EXTENSION_POINT_RENDERERS)) {
-         final String extensionName = ce.getName();
-         if ("previewRenderer".equals(extensionName)) {
-            try {
-               final var rendererExt = new PreviewRendererExtension<PreviewRenderer>(ce);
-               final var rendererParent = new Composite(this, SWT.NONE);
-               rendererParent.setLayout(new FillLayout());
-               rendererExt.renderer.init(rendererParent);
-               if (rendererExt.renderer instanceof final ExtensibleHtmlPreviewRenderer htmlRenderer) {
-                  htmlRenderer.setLocalFileLinkHandler(this::openLocalFileLink);
-               }
-               renderers.put(rendererExt, rendererParent);
-            } catch (final LinkageError | CoreException ex) {
-               Plugin.log().error(ex);
+      final var previousRenderers = renderers;
+      final var renderers = PreviewRendererExtension.loadAll("previewRenderer", previousRenderers);
+      rendererIndex = new RenderDispatchIndex<>(renderers);
+      this.renderers = renderers;
+
+      for (final var rendererExt : previousRenderers) {
+         if (renderers.contains(rendererExt)) {
+            continue;
+         }
+         Plugin.log().debug("Renderer [{0}] is no longer contributed.", rendererExt.rendererId);
+         final var renderer = rendererExt.getRendererIfInstantiated();
+         if (renderer != null) {
+            renderer.dispose();
+         }
+         final var rendererParent = rendererParents.remove(rendererExt);
+         if (rendererParent != null) {
+            if (stack.topControl == rendererParent) {
+               stack.topControl = infoPanel;
+               layout();
             }
+            rendererParent.dispose();
          }
       }
    }
 
+   /**
+    * Instantiates the given renderer and creates its UI if not done yet.
+    */
+   private PreviewRenderer initRenderer(final PreviewRendererExtension<PreviewRenderer> rendererExt) {
+      return UI.supply(() -> {
+         final var renderer = rendererExt.getRenderer();
+         if (!rendererParents.containsKey(rendererExt) && !isDisposed()) {
+            final var rendererParent = new Composite(this, SWT.NONE);
+            rendererParent.setLayout(new FillLayout());
+            renderer.init(rendererParent);
+            if (renderer instanceof final ExtensibleHtmlPreviewRenderer htmlRenderer) {
+               htmlRenderer.setLocalFileLinkHandler(this::openLocalFileLink);
+            }
+            rendererParents.put(rendererExt, rendererParent);
+         }
+         return renderer;
+      });
+   }
+
    private boolean canPreview(final ContentSource source) {
-      for (final var rendererExt : renderers.keySet()) {
-         final var renderer = rendererExt.renderer;
-         if (renderer instanceof final ExtensibleHtmlPreviewRenderer htmlRenderer) {
-            if (htmlRenderer.supports(source))
-               return true;
-         } else if (rendererExt.supports(source))
+      for (final var rendererExt : rendererIndex.findAll(source)) {
+         // the extensible HTML renderer is registered for all files but only supports those of its HTML renderers
+         if (!rendererExt.isRendererClass(ExtensibleHtmlPreviewRenderer.class) //
+               || rendererExt.getRenderer() instanceof final ExtensibleHtmlPreviewRenderer htmlRenderer && htmlRenderer.supports(source))
             return true;
       }
       return false;
@@ -187,38 +253,77 @@ private boolean openLocalFileLink(final Path path, final URI target) {
       }
    }
 
-   void render(final ContentSource source, final boolean forceCacheUpdate) {
-      if (UI.isUIThread()) {
-         CompletableFuture.runAsync(() -> render(source, forceCacheUpdate));
-         return;
+   /**
+    * Renders the given source into the render cache without displaying it. The render runs with lower priority than the
+    * renders of the displayed previews.
+    *
+    * @param cancellation aborts the render, e.g. once the user became active again
+    */
+   void prerender(final ContentSource source, final CancellationToken cancellation) {
+      for (final var rendererExt : rendererIndex.findAll(source)) {
+         // pre-rendering only fills the render cache, so the UI of the renderer is not created
+         if (rendererExt.isRendererClass(ExtensibleHtmlPreviewRenderer.class) //
+               && rendererExt.getRenderer() instanceof final ExtensibleHtmlPreviewRenderer htmlRenderer) {
+            try {
+               htmlRenderer.prerender(source, cancellation);
+            } catch (final LinkageError | StackOverflowError | Exception ex) {
+               if (!cancellation.isCancelled()) {
+                  Plugin.log().warn(ex, "Cannot pre-render [" + source.path() + "].");
+               }
+            }
+            return;
+         }
       }
+   }
 
-      for (final var entry : renderers.entrySet()) {
-         final var rendererExt = entry.getKey();
+   /**
+    * Renders the given source in this preview's render lane. A render still in progress is superseded.
+    */
+   void render(final ContentSource source, final boolean forceCacheUpdate) {
+      renderLane.submit(cancellation -> {
+         final long startedAt = System.currentTimeMillis();
+         renderInLane(source, forceCacheUpdate, cancellation);
+         if (!cancellation.isCancelled()) {
+            RenderMetrics.recordPreviewUpdate(System.currentTimeMillis() - startedAt);
+         }
+      });
+   }
+
+   private void renderInLane(final ContentSource source, final boolean forceCacheUpdate, final CancellationToken cancellation) {
+      for (final var rendererExt : rendererIndex.findAll(source)) {
+         if (cancellation.isCancelled())
+            return;
          try {
-            if (rendererExt.supports(source) && rendererExt.renderer.render(source, forceCacheUpdate)) {
+            if (initRenderer(rendererExt).render(source, forceCacheUpdate, cancellation)) {
+               if (cancellation.isCancelled())
+                  return;
                if (SystemUtils.IS_OS_WINDOWS && "edge".equals(PluginPreferences.getWebView())) {
                   showMessage(MARKDOWN_WEBVIEW_CRASHED);
                }
-               showStackElement(entry.getValue());
+               showRenderer(rendererExt);
                return;
             }
          } catch (final LinkageError | StackOverflowError | Exception ex) {
+            // a cancelled render fails with a CancellationException or an interrupted I/O operation
+            if (cancellation.isCancelled())
+               return;
             Plugin.log().error(ex);
             showMessage("Failed to render: **" + source.path() + "**\n" //
-                  + "Renderer: **" + rendererExt.renderer.getClass().getName() + "**\n" //
+                  + "Renderer: **" + rendererExt.rendererClassName + "**\n" //
                   + "Time: **" + MiscUtils.getCurrentTime() + "**\n" //
                   + "Reason:\n```" + Exceptions.getStackTrace(ex).replace("\t", "  ") + "```\n");
          }
       }
 
-      showMessage("No renderer found for: **" + source.path() + "**");
+      if (!cancellation.isCancelled()) {
+         showMessage("No renderer found for: **" + source.path() + "**");
+      }
    }
 
    void setZoom(final float zoom) {
-      renderers.entrySet().stream() //
+      rendererParents.entrySet().stream() //
          .filter(e -> e.getValue() == stack.topControl) //
-         .findFirst().ifPresent(e -> e.getKey().renderer.setZoom(zoom));
+         .findFirst().ifPresent(e -> e.getKey().getRenderer().setZoom(zoom));
    }
 
    void showMessage(final String markdown) {
@@ -230,6 +335,15 @@ void showMessage(final String markdown) {
       });
    }
 
+   private void showRenderer(final PreviewRendererExtension<PreviewRenderer> rendererExt) {
+      UI.run(() -> {
+         final var rendererParent = rendererParents.get(rendererExt);
+         if (rendererParent != null) {
+            showStackElement(rendererParent);
+         }
+      });
+   }
+
    private void showStackElement(final Control control) {
       UI.run(() -> {
          if (!isDisposed()) {
@@ -8,7 +8,6 @@
 
 import static net.sf.jstuff.core.validation.NullAnalysisHelper.lateNonNull;
 
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,12 +32,12 @@
 import de.sebthom.eclipse.previewer.api.ContentSource;
 import de.sebthom.eclipse.previewer.command.ToggleLivePreview;
 import de.sebthom.eclipse.previewer.command.TogglePinPreview;
+import de.sebthom.eclipse.previewer.renderer.RenderCostTracker;
 import de.sebthom.eclipse.previewer.ui.editorsupport.CompareEditorSupport;
 import de.sebthom.eclipse.previewer.ui.editorsupport.EditorSupport;
 import de.sebthom.eclipse.previewer.ui.editorsupport.PreviewEditorSupport;
 import de.sebthom.eclipse.previewer.ui.editorsupport.TextEditorSupport;
 import de.sebthom.eclipse.previewer.ui.editorsupport.TrackedEditorContext;
-import net.sf.jstuff.core.event.ThrottlingEventDispatcher;
 
 /**
  * Preview view that embeds the shared PreviewComposite and handles linking to editors.
@@ -50,11 +49,12 @@ public final class PreviewView extends ViewPart {
    public static final String ID = PreviewView.class.getName();
 
    private PreviewComposite renderPane = lateNonNull();
+   private OpenEditorsPrerenderer prerenderer = lateNonNull();
    private final List<EditorSupport> editorSupports = new ArrayList<>();
    private @Nullable TrackedEditorContext linkedEditorContext;
    private IPartService partService = lateNonNull();
-   private final ThrottlingEventDispatcher<TrackedEditorContext> editorTextModifiedEventDispatcher = ThrottlingEventDispatcher //
-      .builder(TrackedEditorContext.class, Duration.ofMillis(1_000)).build();
+   private final LivePreviewThrottle<TrackedEditorContext> editorTextModifiedThrottle = new LivePreviewThrottle<>( //
+      editorCtx -> RenderCostTracker.getLivePreviewIntervalMillis(editorCtx.file), this::onDocumentEdited);
 
    private final IPropertyListener editorDirtyStateListener = (source, propId) -> {
       if (propId == ISaveablePart.PROP_DIRTY && source instanceof final ISaveablePart saveable && !saveable.isDirty()) {
@@ -118,7 +118,8 @@ public void documentAboutToBeChanged(final DocumentEvent event) {
       public void documentChanged(final DocumentEvent event) {
          final var linkedEditorContext = PreviewView.this.linkedEditorContext;
          if (linkedEditorContext != null && linkedEditorContext.document == event.getDocument()) {
-            editorTextModifiedEventDispatcher.fire(linkedEditorContext);
+            prerenderer.userActive();
+            editorTextModifiedThrottle.fire(linkedEditorContext);
          }
       }
    };
@@ -130,10 +131,9 @@ public void createPartControl(final Composite parent) {
 
       parent.setLayout(new FillLayout());
       renderPane = PreviewComposite.forPreviewView(parent, SWT.NONE);
+      prerenderer = new OpenEditorsPrerenderer(renderPane);
       renderPane.showMessage("Open a **supported** file in a text or compare editor to see a rendered preview here.");
 
-      editorTextModifiedEventDispatcher.subscribe(this::onDocumentEdited);
-
       // register editor supports in precedence order
       editorSupports.add(new TextEditorSupport());
       editorSupports.add(new CompareEditorSupport());
@@ -146,7 +146,8 @@ public void createPartControl(final Composite parent) {
    @Override
    public void dispose() {
       partService.removePartListener(partListener);
-      editorTextModifiedEventDispatcher.close();
+      editorTextModifiedThrottle.close();
+      prerenderer.dispose();
 
       final var linkedEditorContext = this.linkedEditorContext;
       if (linkedEditorContext != null) {
@@ -207,10 +208,13 @@ private void linkToEditorContext(final TrackedEditorContext newEditorContext) {
       newEditorContext.document.addDocumentListener(editorTextModifiedListener);
       this.linkedEditorContext = newEditorContext;
       renderPane.render(newEditorContext.getSource(), false);
+      prerenderer.prerenderOpenEditors(getSite().getPage(), newEditorContext.editor);
    }
 
    private void onDocumentEdited(final TrackedEditorContext editorCtx) {
-      if (editorCtx == linkedEditorContext && ToggleLivePreview.isLivePreviewEnabled()) {
+      // sources exceeding the render budget are only re-rendered when saved
+      if (editorCtx == linkedEditorContext && ToggleLivePreview.isLivePreviewEnabled()
+            && !RenderCostTracker.isLivePreviewOnSaveOnly(editorCtx.file)) {
          renderPane.render(editorCtx.getSource(), false);
       }
    }
@@ -0,0 +1,197 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.osgi.framework.Bundle;
+
+import de.sebthom.eclipse.previewer.Plugin;
+import net.sf.jstuff.core.security.Hash;
+
+/**
+ * Content addressed store of the static assets referenced by rendered HTML, e.g. the scripts and stylesheets bundled with
+ * the renderer plugins.
+ * <p>
+ * An asset is extracted from its bundle on first use into a file named by the SHA-256 hash of its content, so every
+ * renderer referencing the asset gets the same stable URL and the browser can serve it from its HTTP cache between page
+ * loads. The hash is recorded per bundle version, so after an IDE restart an unchanged asset is resolved without reading
+ * it from the bundle again.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class AssetStore {
+
+   private static final String INDEX_FILE_NAME = "index.properties";
+
+   /** asset URIs resolved in this session by {@link #toKey(Bundle, String)} */
+   private static final Map<String, URI> RESOLVED = new HashMap<>();
+   private static volatile @Nullable Path storeDir;
+   private static @Nullable Properties index;
+
+   /**
+    * @param entryPath path of the asset within the bundle, e.g. {@code src/main/resources/mermaid/mermaid.js}
+    * @return the {@code file:} URI of the extracted asset
+    */
+   public static synchronized URI getUri(final Bundle bundle, final String entryPath) throws IOException {
+      final var key = toKey(bundle, entryPath);
+      var uri = RESOLVED.get(key);
+      if (uri == null) {
+         uri = resolve(bundle, entryPath, key).toUri();
+         RESOLVED.put(key, uri);
+      }
+      return uri;
+   }
+
+   /**
+    * @return true if the given file is an asset of this store, i.e. its content never changes
+    */
+   public static boolean isAsset(final Path file) {
+      final var storeDir = getStoreDir();
+      return file.toAbsolutePath().normalize().startsWith(storeDir) && !INDEX_FILE_NAME.equals(String.valueOf(file.getFileName()));
+   }
+
+   /**
+    * Extracts the given assets in the background, e.g. on activation of the bundle containing them, so the first render
+    * referencing them does not wait for the extraction.
+    */
+   public static void prefetch(final Bundle bundle, final String... entryPaths) {
+      final var job = new Job("Extracting previewer assets of " + bundle.getSymbolicName()) {
+         @Override
+         protected IStatus run(final IProgressMonitor monitor) {
+            for (final String entryPath : entryPaths) {
+               if (monitor.isCanceled())
+                  return Status.CANCEL_STATUS;
+               try {
+                  getUri(bundle, entryPath);
+               } catch (final IOException ex) {
+                  Plugin.log().warn(ex, "Cannot extract asset [" + entryPath + "] of bundle [" + bundle.getSymbolicName() + "].");
+               }
+            }
+            return Status.OK_STATUS;
+         }
+      };
+      job.setSystem(true);
+      job.setPriority(Job.DECORATE);
+      job.schedule();
+   }
+
+   private static Path resolve(final Bundle bundle, final String entryPath, final String key) throws IOException {
+      final var storeDir = getStoreDir();
+      final var index = getIndex();
+
+      // development builds do not change the bundle version when an asset changes
+      final boolean isReleaseVersion = !"qualifier".equals(bundle.getVersion().getQualifier());
+      final var indexedFileName = isReleaseVersion ? index.getProperty(key) : null;
+      if (indexedFileName != null) {
+         final var assetFile = storeDir.resolve(indexedFileName);
+         if (Files.isRegularFile(assetFile))
+            return assetFile;
+      }
+
+      final var entry = bundle.getEntry(entryPath);
+      if (entry == null)
+         throw new FileNotFoundException("Asset [" + entryPath + "] not found in bundle [" + bundle.getSymbolicName() + "].");
+      final byte[] content;
+      try (var in = entry.openStream()) {
+         content = in.readAllBytes();
+      }
+
+      final var hash = Hash.SHA256.hash(content);
+      final var assetFile = storeDir.resolve(hash + "." + FilenameUtils.getExtension(entryPath));
+      if (!Files.isRegularFile(assetFile) || Files.size(assetFile) != content.length) {
+         Files.createDirectories(storeDir);
+         final var tmpFile = Files.createTempFile(storeDir, hash, ".tmp");
+         try {
+            Files.write(tmpFile, content);
+            try {
+               Files.move(tmpFile, assetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException ex) {
+               Files.move(tmpFile, assetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+         } finally {
+            Files.deleteIfExists(tmpFile);
+         }
+         Plugin.log().debug("Extracted asset [{0}] of bundle [{1}] to [{2}].", entryPath, bundle.getSymbolicName(), assetFile);
+      }
+
+      if (!assetFile.getFileName().toString().equals(indexedFileName)) {
+         updateIndex(storeDir, index, bundle, entryPath, key, assetFile.getFileName().toString());
+      }
+      return assetFile;
+   }
+
+   /**
+    * Records the given asset file as the current version of the asset. The files of previous versions are kept, since
+    * rendered content in the render caches may still reference them.
+    */
+   private static void updateIndex(final Path storeDir, final Properties index, final Bundle bundle, final String entryPath,
+         final String key, final String assetFileName) {
+      final var otherVersionPrefix = bundle.getSymbolicName() + "_";
+      final var otherVersionSuffix = "/" + entryPath;
+      for (final String otherKey : index.stringPropertyNames()) {
+         if (otherKey.startsWith(otherVersionPrefix) && otherKey.endsWith(otherVersionSuffix) && !otherKey.equals(key)) {
+            index.remove(otherKey);
+         }
+      }
+      index.setProperty(key, assetFileName);
+
+      try (var out = Files.newOutputStream(storeDir.resolve(INDEX_FILE_NAME))) {
+         index.store(out, "asset files by bundle, bundle version and entry path");
+      } catch (final IOException ex) {
+         Plugin.log().warn(ex, "Cannot write asset index to [" + storeDir + "].");
+      }
+   }
+
+   private static synchronized Properties getIndex() {
+      var index = AssetStore.index;
+      if (index == null) {
+         index = AssetStore.index = new Properties();
+         final var indexFile = getStoreDir().resolve(INDEX_FILE_NAME);
+         if (Files.isRegularFile(indexFile)) {
+            try (var in = Files.newInputStream(indexFile)) {
+               index.load(in);
+            } catch (final IOException | IllegalArgumentException ex) {
+               Plugin.log().warn(ex, "Cannot read asset index [" + indexFile + "].");
+               index.clear();
+            }
+         }
+      }
+      return index;
+   }
+
+   private static Path getStoreDir() {
+      var storeDir = AssetStore.storeDir;
+      if (storeDir == null) {
+         storeDir = AssetStore.storeDir = Plugin.get().getStateLocation().append("assets").toFile().toPath().toAbsolutePath()
+            .normalize();
+      }
+      return storeDir;
+   }
+
+   private static String toKey(final Bundle bundle, final String entryPath) {
+      return bundle.getSymbolicName() + "_" + bundle.getVersion() + "/" + entryPath;
+   }
+
+   private AssetStore() {
+   }
+}
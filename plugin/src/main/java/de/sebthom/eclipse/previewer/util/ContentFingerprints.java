@@ -0,0 +1,125 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.util;
+
+/**
+ * Fast, non-cryptographic 128-bit content fingerprints used as render cache keys.
+ * <p>
+ * The fingerprint is a MurmurHash3 (x64, 128-bit) computed directly over the UTF-16 code units of the content, i.e. no
+ * intermediate byte encoding of the text is required.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class ContentFingerprints {
+
+   /**
+    * Prefix of every fingerprint identifying algorithm and input encoding. Must be changed whenever either changes, so that
+    * persisted fingerprints of older versions never match and the affected cache entries get re-rendered.
+    */
+   public static final String VERSION = "m3u16";
+
+   private static final long C1 = 0x87c37b91114253d5L;
+   private static final long C2 = 0x4cf5ad432745937fL;
+   private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+   private static long fmix64(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+   }
+
+   private static long getLongLE(final CharSequence chars, final int offset) {
+      return chars.charAt(offset) //
+            | (long) chars.charAt(offset + 1) << 16 //
+            | (long) chars.charAt(offset + 2) << 32 //
+            | (long) chars.charAt(offset + 3) << 48;
+   }
+
+   private static long getTailLE(final CharSequence chars, final int offset, final int end) {
+      long k = 0;
+      for (int i = end - 1; i >= offset; i--) {
+         k = k << 16 | chars.charAt(i);
+      }
+      return k;
+   }
+
+   /**
+    * @return the versioned fingerprint of the given content, e.g. {@code m3u16-0123456789abcdef0123456789abcdef}
+    */
+   public static String of(final CharSequence content) {
+      final int length = content.length();
+      final int blockEnd = length - length % 8;
+
+      long h1 = 0;
+      long h2 = 0;
+
+      // each block consists of 8 chars = 16 bytes
+      for (int i = 0; i < blockEnd; i += 8) {
+         long k1 = getLongLE(content, i);
+         long k2 = getLongLE(content, i + 4);
+
+         k1 *= C1;
+         k1 = Long.rotateLeft(k1, 31);
+         k1 *= C2;
+         h1 ^= k1;
+         h1 = Long.rotateLeft(h1, 27);
+         h1 += h2;
+         h1 = h1 * 5 + 0x52dce729;
+
+         k2 *= C2;
+         k2 = Long.rotateLeft(k2, 33);
+         k2 *= C1;
+         h2 ^= k2;
+         h2 = Long.rotateLeft(h2, 31);
+         h2 += h1;
+         h2 = h2 * 5 + 0x38495ab5;
+      }
+
+      final int tailLength = length - blockEnd;
+      if (tailLength > 4) {
+         long k2 = getTailLE(content, blockEnd + 4, length);
+         k2 *= C2;
+         k2 = Long.rotateLeft(k2, 33);
+         k2 *= C1;
+         h2 ^= k2;
+      }
+      if (tailLength > 0) {
+         long k1 = getTailLE(content, blockEnd, Math.min(blockEnd + 4, length));
+         k1 *= C1;
+         k1 = Long.rotateLeft(k1, 31);
+         k1 *= C2;
+         h1 ^= k1;
+      }
+
+      final long byteLength = 2L * length;
+      h1 ^= byteLength;
+      h2 ^= byteLength;
+      h1 += h2;
+      h2 += h1;
+      h1 = fmix64(h1);
+      h2 = fmix64(h2);
+      h1 += h2;
+      h2 += h1;
+
+      final var fingerprint = new StringBuilder(VERSION.length() + 1 + 32).append(VERSION).append('-');
+      appendHex(fingerprint, h1);
+      appendHex(fingerprint, h2);
+      return fingerprint.toString();
+   }
+
+   private static void appendHex(final StringBuilder sb, final long value) {
+      for (int shift = 60; shift >= 0; shift -= 4) {
+         sb.append(HEX_CHARS[(int) (value >>> shift) & 0xF]);
+      }
+   }
+
+   private ContentFingerprints() {
+   }
+}
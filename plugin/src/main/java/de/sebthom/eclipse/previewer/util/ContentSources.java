@@ -16,11 +16,13 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.input.CharSequenceInputStream;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.content.IContentType;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import de.sebthom.eclipse.commons.resources.Resources;
@@ -37,13 +39,20 @@ public static final class ContentSourceSnapshot implements ContentSource {
       private final Path path;
       private final String content;
       private final long lastModified;
-      private final List<IContentType> contentTypes;
-
-      public ContentSourceSnapshot(final Path path, final String content, final long lastModified, final List<IContentType> contentTypes) {
+      private @Nullable Supplier<List<IContentType>> contentTypesResolver;
+      private volatile @Nullable List<IContentType> contentTypes;
+      private volatile @Nullable String contentFingerprint;
+
+      /**
+       * @param contentTypesResolver resolves the content types on first access, since e.g. {@link ContentTypes#of(Path)}
+       *           may read the file and most snapshots are only rendered if the render cache has no entry for them
+       */
+      public ContentSourceSnapshot(final Path path, final String content, final long lastModified,
+            final Supplier<List<IContentType>> contentTypesResolver) {
          this.path = path;
          this.content = content;
          this.lastModified = lastModified;
-         this.contentTypes = List.copyOf(contentTypes);
+         this.contentTypesResolver = contentTypesResolver;
       }
 
       @Override
@@ -61,8 +70,28 @@ public String contentAsString() throws IOException {
          return content;
       }
 
+      @Override
+      public String contentFingerprint() {
+         var contentFingerprint = this.contentFingerprint;
+         if (contentFingerprint == null) {
+            contentFingerprint = this.contentFingerprint = ContentFingerprints.of(content);
+         }
+         return contentFingerprint;
+      }
+
       @Override
       public List<IContentType> contentTypes() {
+         var contentTypes = this.contentTypes;
+         if (contentTypes == null) {
+            synchronized (this) {
+               contentTypes = this.contentTypes;
+               if (contentTypes == null) {
+                  contentTypes = this.contentTypes = List.copyOf(asNonNull(contentTypesResolver).get());
+                  // releases the resolved source, e.g. an editor
+                  contentTypesResolver = null;
+               }
+            }
+         }
          return contentTypes;
       }
 
@@ -115,8 +144,10 @@ public Reader contentAsReader() throws IOException {
 
       @Override
       public String contentAsString() throws IOException {
+         final var event = new RenderEvents.SourceRead();
+         event.begin();
          try {
-            return Resources.readString(file);
+            return recordRead(event, this, Resources.readString(file));
          } catch (final CoreException ex) {
             throw new IOException(ex);
          }
@@ -167,7 +198,9 @@ public Reader contentAsReader() throws IOException {
 
       @Override
       public String contentAsString() throws IOException {
-         return Files.readString(path);
+         final var event = new RenderEvents.SourceRead();
+         event.begin();
+         return recordRead(event, this, Files.readString(path));
       }
 
       @Override
@@ -215,7 +248,9 @@ public Reader contentAsReader() {
 
       @Override
       public String contentAsString() {
-         return Editors.getText(editor);
+         final var event = new RenderEvents.SourceRead();
+         event.begin();
+         return recordRead(event, this, Editors.getText(editor));
       }
 
       @Override
@@ -244,6 +279,17 @@ public Path path() {
       }
    }
 
+   private static String recordRead(final RenderEvents.SourceRead event, final ContentSource source, final String content) {
+      event.end();
+      if (event.shouldCommit()) {
+         event.path = source.path().toString();
+         event.sourceClass = source.getClass();
+         event.chars = content.length();
+         event.commit();
+      }
+      return content;
+   }
+
    public static ContentSource of(final IFile file) {
       return new FileContentSource(file);
    }
@@ -264,7 +310,7 @@ public static ContentSource of(final String filePath, final String content) {
       // Keep the caller-provided virtual path because renderer matching and cache keys both depend on the path string.
       final Path virtualPath = Path.of(filePath);
       final long now = System.currentTimeMillis();
-      return new ContentSourceSnapshot(virtualPath, content, now, ContentTypes.of(virtualPath));
+      return new ContentSourceSnapshot(virtualPath, content, now, () -> ContentTypes.of(virtualPath));
    }
 
    private ContentSources() {
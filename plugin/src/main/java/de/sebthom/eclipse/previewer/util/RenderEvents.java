@@ -0,0 +1,202 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.sebthom.eclipse.previewer.api.ContentSource;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events covering the phases of the render pipeline, so that a recording of a user's IDE, e.g.
+ * started via {@code jcmd <pid> JFR.start}, shows which stage of a slow preview update took the time.
+ * <p>
+ * The events are only recorded while a recording with them enabled is running, otherwise creating them is close to free.
+ * Field values that are expensive to determine should therefore only be computed if {@link Event#shouldCommit()} returns
+ * true.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderEvents {
+
+   private static final String CATEGORY = "Previewer";
+
+   @Name("de.sebthom.eclipse.previewer.SourceRead")
+   @Label("Source Read")
+   @Description("Reading the content of a source, e.g. to take a snapshot of it")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class SourceRead extends Event {
+      @Label("Source Path")
+      public @Nullable String path;
+
+      @Label("Source Class")
+      public @Nullable Class<?> sourceClass;
+
+      @Label("Characters")
+      public long chars;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.RenderCacheLookup")
+   @Label("Render Cache Lookup")
+   @Description("Looking up the rendered content of a source in a render cache, including rendering it on a miss")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class RenderCacheLookup extends Event {
+      @Label("Source Path")
+      public @Nullable String path;
+
+      @Label("Cache Class")
+      public @Nullable Class<?> cacheClass;
+
+      @Label("Forced Update")
+      public boolean forceUpdate;
+
+      @Label("Hit")
+      public boolean hit;
+
+      @Label("Rendered Content Size")
+      @DataAmount
+      public long bytes;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.RenderCacheWrite")
+   @Label("Render Cache Write")
+   @Description("Writing rendered content into a render cache, including the rendering streamed into it")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class RenderCacheWrite extends Event {
+      @Label("Target")
+      public @Nullable String target;
+
+      @Label("Written")
+      @Description("False if the content was not rendered, in which case the cache entry is left untouched")
+      public boolean written;
+
+      @Label("Size")
+      @DataAmount
+      public long bytes;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.Render")
+   @Label("Render")
+   @Description("Execution of an HTML renderer, excluding the time waiting for a free thread of its cost class")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class Render extends Event {
+      @Label("Source Path")
+      public @Nullable String path;
+
+      @Label("Renderer Class")
+      public @Nullable Class<?> rendererClass;
+
+      @Label("Cost Class")
+      public @Nullable String costClass;
+
+      @Label("Source Size")
+      @Description("Size of the source content, -1 if unknown")
+      @DataAmount
+      public long sourceSize = -1;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.DiagramPreprocessing")
+   @Label("Diagram Preprocessing")
+   @Description("Rendering the diagrams embedded in a Markdown document")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class DiagramPreprocessing extends Event {
+      @Label("Source Path")
+      public @Nullable String path;
+
+      @Label("Source Characters")
+      public long chars;
+
+      @Label("Diagrams")
+      public int diagrams;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.ExternalProcess")
+   @Label("External Process")
+   @Description("Run of an external program, e.g. Graphviz or D2")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class ExternalProcess extends Event {
+      @Label("Command")
+      public @Nullable String command;
+
+      @Label("Input Size")
+      @DataAmount
+      public long inputBytes;
+
+      @Label("Output Characters")
+      public long outputChars;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.BrowserNavigation")
+   @Label("Browser Navigation")
+   @Description("Starting the navigation of the embedded browser to a rendered page")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class BrowserNavigation extends Event {
+      @Label("URL")
+      public @Nullable String url;
+   }
+
+   @Name("de.sebthom.eclipse.previewer.PageLoad")
+   @Label("Page Load")
+   @Description("Time from starting a browser navigation until the page finished loading")
+   @Category(CATEGORY)
+   @StackTrace(false)
+   public static final class PageLoad extends Event {
+      @Label("URL")
+      public @Nullable String url;
+
+      @Label("Completed")
+      @Description("False if the navigation was superseded or failed before the page finished loading")
+      public boolean completed;
+   }
+
+   /**
+    * @return the size of the given source, i.e. the length of a snapshot's content or the size of the file, or -1 if unknown
+    */
+   public static long sizeOf(final ContentSource source) {
+      if (source.isSnapshot()) {
+         try {
+            return source.contentAsString().length();
+         } catch (final IOException ex) {
+            return -1;
+         }
+      }
+      return sizeOf(source.path());
+   }
+
+   /**
+    * @return the size of the given file, or -1 if it is not a readable regular file
+    */
+   public static long sizeOf(final @Nullable Path file) {
+      if (file == null)
+         return -1;
+      try {
+         return Files.isRegularFile(file) ? Files.size(file) : -1;
+      } catch (final IOException ex) {
+         return -1;
+      }
+   }
+
+   private RenderEvents() {
+   }
+}
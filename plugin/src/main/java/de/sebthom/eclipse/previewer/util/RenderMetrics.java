@@ -0,0 +1,194 @@
+/*
+ * SPDX-FileCopyrightText: © Sebastian Thomschke and contributors.
+ * SPDX-FileContributor: Sebastian Thomschke
+ * SPDX-License-Identifier: EPL-2.0
+ * SPDX-ArtifactOfProjectHomePage: https://github.com/sebthom/previewer-eclipse-plugin
+ */
+package de.sebthom.eclipse.previewer.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free registry of render metrics of the current session, shown in the
+ * {@link de.sebthom.eclipse.previewer.ui.DiagnosticsView}.
+ * <p>
+ * Recording a value only updates atomic counters, so it can be done on every render without affecting the render
+ * latency. In contrast to the {@link RenderEvents} the metrics are always collected.
+ *
+ * @author Sebastian Thomschke
+ */
+public final class RenderMetrics {
+
+   /**
+    * Histogram of durations with exponentially growing buckets, so percentiles are accurate to about 10 % from one
+    * millisecond up to several minutes while the memory footprint stays constant.
+    */
+   public static final class Histogram {
+
+      /**
+       * @param p50Millis upper bound of the bucket containing the median
+       * @param p95Millis upper bound of the bucket containing the 95th percentile
+       * @param p99Millis upper bound of the bucket containing the 99th percentile
+       */
+      public record Snapshot(long count, long totalMillis, long maxMillis, long p50Millis, long p95Millis, long p99Millis) {
+
+         public long avgMillis() {
+            return count == 0 ? 0 : totalMillis / count;
+         }
+      }
+
+      private static final double BUCKET_GROWTH = 1.1;
+      private static final int BUCKET_COUNT = 200;
+      private static final long[] BUCKET_UPPER_BOUNDS = new long[BUCKET_COUNT];
+
+      static {
+         double upperBound = 1;
+         long previous = 0;
+         for (int i = 0; i < BUCKET_COUNT; i++) {
+            // every bucket covers at least one millisecond more than the previous one
+            previous = BUCKET_UPPER_BOUNDS[i] = Math.max(previous + 1, Math.round(upperBound));
+            upperBound *= BUCKET_GROWTH;
+         }
+      }
+
+      private static int bucketOf(final long millis) {
+         int low = 0;
+         int high = BUCKET_COUNT - 1;
+         while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (BUCKET_UPPER_BOUNDS[mid] < millis) {
+               low = mid + 1;
+            } else {
+               high = mid;
+            }
+         }
+         return low;
+      }
+
+      private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+      private final LongAdder totalMillis = new LongAdder();
+      private final AtomicLong maxMillis = new AtomicLong();
+
+      public void record(final long millis) {
+         final long value = Math.max(0, millis);
+         buckets.incrementAndGet(bucketOf(value));
+         totalMillis.add(value);
+         maxMillis.accumulateAndGet(value, Math::max);
+      }
+
+      public Snapshot snapshot() {
+         final var counts = new long[BUCKET_COUNT];
+         long total = 0;
+         for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+         }
+         final long max = maxMillis.get();
+         return new Snapshot(total, totalMillis.sum(), max, percentile(counts, total, 0.50, max), percentile(counts, total, 0.95, max),
+            percentile(counts, total, 0.99, max));
+      }
+
+      private static long percentile(final long[] counts, final long total, final double percentile, final long max) {
+         if (total == 0)
+            return 0;
+         final long rank = (long) Math.ceil(total * percentile);
+         long seen = 0;
+         for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+               // the last bucket is open-ended and bucket bounds may exceed the slowest recorded value
+               return Math.min(BUCKET_UPPER_BOUNDS[i], max);
+         }
+         return max;
+      }
+   }
+
+   private static final Map<String, Histogram> RENDER_TIMES = new ConcurrentHashMap<>();
+   private static final Map<String, Histogram> FIRST_PAINT_TIMES = new ConcurrentHashMap<>();
+   private static final Map<String, LongAdder> RENDER_FAILURES = new ConcurrentHashMap<>();
+   private static final Map<String, Histogram> EXTERNAL_PROCESS_TIMES = new ConcurrentHashMap<>();
+   private static final Histogram PREVIEW_UPDATE_TIMES = new Histogram();
+   private static final Histogram PAGE_LOAD_TIMES = new Histogram();
+
+   /**
+    * @return the durations of the runs of the external programs by executable
+    */
+   public static Map<String, Histogram.Snapshot> getExternalProcessTimes() {
+      return snapshot(EXTERNAL_PROCESS_TIMES);
+   }
+
+   /**
+    * @return the time from starting a streamed render until its first chunk was sent to the browser, by renderer
+    */
+   public static Map<String, Histogram.Snapshot> getFirstPaintTimes() {
+      return snapshot(FIRST_PAINT_TIMES);
+   }
+
+   /**
+    * @return the time from starting a browser navigation until the page finished loading
+    */
+   public static Histogram.Snapshot getPageLoadTimes() {
+      return PAGE_LOAD_TIMES.snapshot();
+   }
+
+   /**
+    * @return the time from starting the render of a preview until the preview was updated, including render cache hits
+    */
+   public static Histogram.Snapshot getPreviewUpdateTimes() {
+      return PREVIEW_UPDATE_TIMES.snapshot();
+   }
+
+   /**
+    * @return the number of failed renders by renderer
+    */
+   public static Map<String, Long> getRenderFailures() {
+      final var result = new TreeMap<String, Long>();
+      RENDER_FAILURES.forEach((rendererId, failures) -> result.put(rendererId, failures.sum()));
+      return result;
+   }
+
+   /**
+    * @return the durations of actual renders, i.e. excluding render cache hits, by renderer
+    */
+   public static Map<String, Histogram.Snapshot> getRenderTimes() {
+      return snapshot(RENDER_TIMES);
+   }
+
+   public static void recordExternalProcess(final String executable, final long millis) {
+      EXTERNAL_PROCESS_TIMES.computeIfAbsent(executable, k -> new Histogram()).record(millis);
+   }
+
+   public static void recordFirstPaint(final String rendererId, final long millis) {
+      FIRST_PAINT_TIMES.computeIfAbsent(rendererId, k -> new Histogram()).record(millis);
+   }
+
+   public static void recordPageLoad(final long millis) {
+      PAGE_LOAD_TIMES.record(millis);
+   }
+
+   public static void recordPreviewUpdate(final long millis) {
+      PREVIEW_UPDATE_TIMES.record(millis);
+   }
+
+   public static void recordRender(final String rendererId, final long millis) {
+      RENDER_TIMES.computeIfAbsent(rendererId, k -> new Histogram()).record(millis);
+   }
+
+   public static void recordRenderFailure(final String rendererId) {
+      RENDER_FAILURES.computeIfAbsent(rendererId, k -> new LongAdder()).increment();
+   }
+
+   private static Map<String, Histogram.Snapshot> snapshot(final Map<String, Histogram> histograms) {
+      final var result = new TreeMap<String, Histogram.Snapshot>();
+      histograms.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+      return result;
+   }
+
+   private RenderMetrics() {
+   }
+}